@@ -15,6 +15,8 @@ public class Config {
 	private ArrayList<Integer> playerColors;
 	private ArrayList<Integer> aiColors;
 	private int trackId;
+	private boolean mipmaps = true;
+	private boolean tiledRoad;
 	
 	public enum Key {
 		ACCEL(0), BRAKE(1), LEFT(2), RIGHT(3), MIRROR(4), ITEM(5);
@@ -115,6 +117,25 @@ public class Config {
 		return trackId;
 	}
 	
+	/** Sets whether textures that cover big areas, like the grass, are mipmapped. */
+	public void setMipmaps(boolean mipmaps) {
+		this.mipmaps = mipmaps;
+	}
+	public boolean mipmaps() {
+		return mipmaps;
+	}
+	
+	/**
+	 * Sets whether the road is drawn into textures instead of being built as
+	 * a mesh. Tracks that are already prepared keep the road they have.
+	 */
+	public void setTiledRoad(boolean tiledRoad) {
+		this.tiledRoad = tiledRoad;
+	}
+	public boolean tiledRoad() {
+		return tiledRoad;
+	}
+	
 	/** 
 	 * Searches for and returns an unoccupied color.
 	 * @param startId The color id to start looking from.
@@ -1,16 +1,36 @@
 package com.racer;
 
+import java.io.File;
 import java.util.ArrayList;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.racer.gui.HUD;
-import com.racer.item.ItemBoxGroup;
-import com.racer.item.ItemManager;
+import com.racer.sim.AIScheduler;
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.Driver;
+import com.racer.sim.Ghost;
+import com.racer.sim.GhostLibrary;
+import com.racer.sim.InputRecorder;
+import com.racer.sim.InputRecording;
+import com.racer.sim.JobPool;
+import com.racer.sim.RewindBuffer;
+import com.racer.sim.Simulation;
+import com.racer.sim.TickClock;
+import com.racer.sim.TrackData;
 import com.racer.track.Track;
 import com.racer.track.TrackLoader;
 
 public class GameScreen implements Screen{
+	// How many of the fastest laps on a track to keep and race against.
+	private static final int GHOSTS = 3;
+	// How far back the race can be rewound and how often a snapshot is taken.
+	private static final float REWIND_SECONDS = 10;
+	private static final int REWIND_INTERVAL = 6;
 	
 	private RacerGame game;
 	private Config config;
@@ -18,35 +38,71 @@ public class GameScreen implements Screen{
 	private Background bg;
 	private HUD hud;
 	private Race race;
-	private ItemManager items;
+	private Simulation sim;
+	private TickClock clock;
+	private JobPool jobs;
 	private ArrayList<Car> cars;
 	private ArrayList<Player> players;
-	private ArrayList<ItemBoxGroup> boxes;
+	
+	private GhostLibrary ghostLibrary;
+	private InputRecorder recorder;
+	private ArrayList<Ghost> ghosts;
+	private String trackName;
+	private RewindBuffer rewind;
+	private AIScheduler scheduler;
+	
+	// The track that is still being prepared before the race can start.
+	private PreparedTrack loading;
+	private SpriteBatch batch;
+	private BitmapFont font;
 	
 	//private boolean gameSetUp;
 	
 	public GameScreen(RacerGame game, Config config) {
 		this.game = game;
 		this.config = config;
-		ground = new Ground();
+		ground = new Ground(config.mipmaps());
 		bg = new Background();
-		items = new ItemManager(cars);
+		batch = new SpriteBatch();
+		font = new BitmapFont();
 		
+		CarStateBuffer states = new CarStateBuffer(8);
 		cars = new ArrayList<Car>();
 		for (int i=0; i < 8; i++) {
-			Car c = new Car(new Color(config.getColor(i)), i);
+			Car c = new Car(states, new Color(config.getColor(i)), i);
 			cars.add(c);
 		}
+		sim = new Simulation(states, cars);
+		jobs = JobPool.forProcessors();
+		sim.setJobPool(jobs);
+		clock = new TickClock();
+		
+		// The ghosts have cars of their own that aren't part of the race.
+		ghosts = sim.getGhosts();
+		for (int i=0; i < GHOSTS; i++) {
+			Car c = new Car(states, new Color(Color.WHITE), 0);
+			c.makeGhost();
+			ghosts.add(new Ghost(c));
+		}
+		ghostLibrary = new GhostLibrary(new File(".." + File.separatorChar + "ghosts"), GHOSTS);
+		recorder = new InputRecorder() {
+			@Override
+			protected void lapRecorded(Driver driver, InputRecording lap) {
+				if (driver.realPlayer()) ghostLibrary.offer(trackName, lap);
+			}
+		};
+		sim.setRecorder(recorder);
 	}
 	
-	public void setUpGame() {
-		Track track = TrackLoader.loadTrack(config.track());
-		
+	/**
+	 * Sets up a race on a track that has been prepared.
+	 */
+	public void setUpGame(PreparedTrack prepared) {
 		players = new ArrayList<Player>();
 		
-		ground.generateTrack(track);
-		boxes = ground.getBoxes();
-		items.setUp(boxes);
+		ground.setTrack(prepared);
+		Track track = ground.getTrack();
+		TrackData data = ground.getTrackData();
 		
 		// Set up the normal players.
 		for (int i=0; i < config.players(); i++) {
@@ -55,74 +111,174 @@ public class GameScreen implements Screen{
 			
 			p.setUpForSplitScreen(config.players(), i);
 			p.setControls(config.getControls(i));
-			p.getCar().setWalls(ground.getLeft(), ground.getRight(), ground.segments);
+			p.setGhosts(ghosts);
 		}
 		
 		// Set up the AI players.
 		for (int i=0; i < config.aiPlayers(); i++) {
 			Player p = new Player(true, ground, bg, cars, config.aiColorId());
 			players.add(p);
-			p.getCar().setWalls(ground.getLeft(), ground.getRight(), ground.segments);
 		}
 		
 		hud = new HUD(players);
 		race = new Race(game, hud);
 		hud.setRace(race, config.players());
-		hud.createMap(ground.minimap, ground.minimapV);
+		hud.createMap(prepared.getMinimap(), prepared.getMinimapView());
+		// Everything has been uploaded, so the prepared track isn't needed anymore.
+		prepared.dispose();
 		
-		race.beginNewRace(players, track.laps, ground.getGoalLineWidth());
+		sim.setUp(data, players, race);
+		scheduler = AIScheduler.forField(players.size());
+		sim.setScheduler(scheduler);
+		recorder.setUp(players);
+		for (int i=0; i < ghosts.size(); i++) {
+			ghosts.get(i).setLap(null);
+			ghosts.get(i).getCar().setTrack(data);
+		}
+		race.beginNewRace(players, track.laps, data.getGoalLineWidth());
+		if (rewind == null) {
+			rewind = new RewindBuffer(sim, REWIND_SECONDS, REWIND_INTERVAL);
+		}
+		rewind.clear();
+		clock.reset();
 	}
 	
+	/**
+	 * Runs as many ticks of the simulation as the time since the last frame
+	 * allows and then draws the cars between the last two ticks.
+	 */
 	@Override
 	public void render(float delta) {
-		for (Player p : players) {
-			p.updatePlayer();
-			p.renderPlayerView();
+		if (loading != null) {
+			if (!loading.isDone()) {
+				renderLoading();
+				return;
+			}
+			setUpGame(loading);
+			loading = null;
 		}
 		
-		// Collision test the cars with each other. Really sucks having to put this
-		// here in this otherwise clean function but don't know where else to.
-		int size = cars.size();
-		for (int i=0; i < size; ++i) {
-			Car iCar = cars.get(i);
-			
-			for (ItemBoxGroup box : boxes)
-				box.hitTestCar(iCar);
+		for (int i=0; i < players.size(); i++) {
+			players.get(i).handleInput();
+		}
+		updateVisibility();
+		int ticks = clock.advance(delta);
+		if (Gdx.input.isKeyPressed(Keys.BACKSPACE) && !race.finished()) {
+			// Go back one snapshot every frame while the key is held.
+			ticks = 0;
+			if (rewind.stepBack()) rewound();
+		}
+		for (int i=0; i < ticks; i++) {
+			sim.tick();
+			rewind.update();
+			ground.update();
 			
-			for (int j=i+1; j < size; ++j)
-				iCar.collideWith(cars.get(j));
+			// The ghosts start from the goal line together with the first player.
+			Player first = players.get(0);
+			if (first.getCar().completedLap() && !first.finished()) {
+				startGhosts();
+			}
+		}
+		
+		float alpha = clock.alpha();
+		for (int i=0; i < cars.size(); i++) {
+			cars.get(i).updateDecal(alpha);
+		}
+		for (int i=0; i < ghosts.size(); i++) {
+			((Car) ghosts.get(i).getCar()).updateDecal(alpha);
 		}
-		items.update();
-		race.update();
+		for (int i=0; i < players.size(); i++) {
+			players.get(i).renderPlayerView(delta);
+		}
+		race.handleInput();
 		
 		hud.render();
 	}
 	
+	/**
+	 * Shows how far the track has come while it is being prepared.
+	 */
+	private void renderLoading() {
+		batch.begin();
+		font.setColor(Color.WHITE);
+		font.draw(batch, "Preparing " + trackName + "... " + (int) (loading.getProgress() * 100) + "%",
+				20, Gdx.graphics.getHeight() / 2);
+		batch.end();
+	}
+	
+	/**
+	 * Tells the AI scheduler which cars are on the screen of a player,
+	 * since those cars should drive as well as they can.
+	 */
+	private void updateVisibility() {
+		for (int i=0; i < players.size(); i++) {
+			Car c = players.get(i).getCar();
+			boolean seen = false;
+			for (int j=0; j < players.size() && !seen; j++) {
+				Player p = players.get(j);
+				seen = p.realPlayer() && p.canSee(c);
+			}
+			scheduler.setVisible(c, seen);
+		}
+	}
+	
+	/**
+	 * Lets the ghosts drive the fastest laps that have been driven
+	 * on the track so far, starting from the goal line.
+	 */
+	private void startGhosts() {
+		ArrayList<InputRecording> laps = ghostLibrary.getLaps(trackName);
+		for (int i=0; i < ghosts.size(); i++) {
+			Ghost g = ghosts.get(i);
+			g.setLap((i < laps.size()) ? laps.get(i) : null);
+			g.start();
+		}
+	}
+	
+	/**
+	 * The laps that were being recorded and the laps that the ghosts
+	 * were driving don't match the race after it has been rewound.
+	 */
+	private void rewound() {
+		recorder.setUp(players);
+		for (int i=0; i < ghosts.size(); i++) {
+			ghosts.get(i).setLap(null);
+		}
+	}
+	
 	/** Called when this becomes the current screen. */
 	@Override
 	public void show() {
-		setUpGame();
+		// The track has usually been prepared while it was chosen in the
+		// menu. If it hasn't, the race starts once it has been.
+		trackName = TrackLoader.trackName(config.track());
+		loading = game.getTrackPreloader().take(TrackLoader.trackFile(config.track()));
 	}
 	
 	/** Called when this stops being the current screen. */
 	@Override
 	public void hide() {
+		if (loading != null) loading.cancel();
+		loading = null;
+		ghostLibrary.save();
 	}
-
+	
 	@Override
 	public void resize(int width, int height) {
 	}
-
+	
 	@Override
 	public void pause() {
 	}
-
+	
 	@Override
 	public void resume() {
 	}
-
+	
 	@Override
 	public void dispose() {
+		ghostLibrary.save();
+		jobs.dispose();
 	}
 
 }
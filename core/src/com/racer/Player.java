@@ -8,23 +8,28 @@ import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.graphics.g3d.decals.CameraGroupStrategy;
 import com.badlogic.gdx.graphics.g3d.decals.DecalBatch;
 import com.badlogic.gdx.math.Vector3;
+import com.racer.sim.Driver;
+import com.racer.sim.Ghost;
+import com.racer.sim.SimCar;
 
 /**
  * The Player class keeps track of a player. It's primary purpose is to render
  * everything from the players camera. This allows for easy split-screen game play.
+ * The driving itself is handled by Driver.
  */
-public class Player {
-	private Car car;
+public class Player extends Driver {
 	private DecalBatch decalBatch;
 	private PerspectiveCamera cam;
 	private float camHeight = 2;
 	private float camDist = 3;
 	private double camAngle;
+	// How fast the camera spins around the car after finishing, in radians per second.
+	private static final float CAM_SPIN_SPEED = 1.8f;
 	
 	private Ground ground;
 	private Background bg;
 	private ArrayList<Car> cars;
-	private int rank;
+	private ArrayList<Ghost> ghosts;
 	
 	// Each player has their separate keys for movement.
 	private int upKey;
@@ -34,24 +39,15 @@ public class Player {
 	private int mirrorKey;
 	private int itemKey;
 	
-	// Booleans to keep track if player is holding down a key.
-	private boolean up;
-	private boolean down;
-	private boolean left;
-	private boolean right;
+	// Boolean to keep track if player is holding down the mirror key.
 	private boolean mirror;
-	private boolean item;
 	
 	// Fields used for split screen
 	private int players;
-	private int id;
 	
 	// Vector that can be used as a temporary vector
 	private Vector3 vec;
 	
-	private AIcontroller ai;
-	private boolean possessed;
-	
 	/**
 	 * Create a new player.
 	 * @param ground A reference to the ground.
@@ -60,16 +56,14 @@ public class Player {
 	 * @param playerCar The index of the car that the player should control.
 	 */
 	public Player(boolean isAI, Ground ground, Background bg, ArrayList<Car> cars, int playerCar) {
+		super(isAI, cars.get(playerCar), ground.getTrackData());
 		this.ground = ground;
 		this.cars = cars;
 		this.bg = bg;
-		car = cars.get(playerCar);
-		car.setPlayer(this);
 		
 		vec = new Vector3();
 		
 		if (isAI) {
-			ai = new AIcontroller(car, ground.segments);
 			return; // The AI won't need an actual graphical view using a camera.
 		}
 		
@@ -82,54 +76,17 @@ public class Player {
 		decalBatch = new DecalBatch(new CameraGroupStrategy(cam));
 	}
 	
-	public boolean aiControlled() {
-		return ai != null;
-	}
-	/** 
-	 * Returns true if this is or was a real player (before it got possessed).
-	 */
-	public boolean realPlayer() {
-		return (!aiControlled() || possessed);
-	}
-	
+	@Override
 	public Car getCar() {
-		return car;
-	}
-	public int getId() {
-		return id;
-	}
-	public String getName() {
-		if (!realPlayer()) return "CPU";
-		return "Player " + id;
+		return (Car) car;
 	}
 	
-	public boolean finished() {
-		return rank > 0;
-	}
-	public int finalRank() {
-		return rank;
-	}
-	public void setRank(int rank) {
-		this.rank = rank;
-	}
+	@Override
 	public void reset() {
-		rank = 0;
+		super.reset();
 		camAngle = 0;
 	}
 	
-	/**
-	 * Possess this player by making it controlled by the AI.
-	 */
-	public void possess() {
-		ai = new AIcontroller(car, ground.segments);
-		possessed = true;
-	}
-	public void removePossession() {
-		if (!possessed) return;
-		ai = null;
-		possessed = false;
-	}
-	
 	/**
 	 * Returns the angle of the camera. It is different depending on
 	 * if the players has finished the race or not.
@@ -137,31 +94,41 @@ public class Player {
 	private float cameraAngle() {
 		float angle = (float)camAngle;
 		if (!finished()) {
-			angle += car.getAngle();
+			angle += getCar().getRenderAngle();
 		}
 		return angle;
 	}
 	
 	/**
 	 * Centers the player camera right behind the car.
+	 * @param delta The time since the last frame in seconds.
 	 */
-	private void centerCamera() {
+	private void centerCamera(float delta) {
 		// If the mirror key is down, add pi to the angle so that you look backwards instead.
 		if (mirror) camAngle = Math.PI;
 		else if (!finished()) camAngle = 0;
-		else camAngle += 0.03f;
+		else camAngle += CAM_SPIN_SPEED * delta;
 		
 		float angle = cameraAngle();
 		cam.position.set((float)Math.cos(angle)*camDist, camHeight,
 		                 (float)Math.sin(angle)*camDist);
-		cam.position.add(car.getPosition());
+		cam.position.add(getCar().getPosition());
 		// There's a high chance that the camera rotates in other directions during
 		// the calculations, therefore we need to reset the UP vector.
 		cam.up.set(0, 1, 0);
-		cam.lookAt(vec.set(car.getPosition()).add(0, 0.5f, 0));
+		cam.lookAt(vec.set(getCar().getPosition()).add(0, 0.5f, 0));
 		cam.update();
 	}
 	
+	/**
+	 * Returns true if a car is inside the view of this players camera.
+	 * The AI has no camera and sees nothing.
+	 */
+	public boolean canSee(Car c) {
+		if (cam == null) return false;
+		return cam.frustum.sphereInFrustum(c.getPosition(), SimCar.RADIUS);
+	}
+	
 	/**
 	 * Sets up the player camera for split screen.
 	 * @param players The amount players to display. Maximum of 4 players.
@@ -199,6 +166,13 @@ public class Player {
 		}
 	}
 	
+	/**
+	 * Sets the ghosts that are drawn together with the cars.
+	 */
+	public void setGhosts(ArrayList<Ghost> ghosts) {
+		this.ghosts = ghosts;
+	}
+	
 	/**
 	 * Sets the controls for this player.
 	 */
@@ -211,44 +185,41 @@ public class Player {
 		itemKey = controls[5];
 	}
 	/*
-	 * Update the key states for this player.
+	 * Update the key states for this player. The car is then
+	 * moved with them the next time the simulation ticks.
 	 */
-	private void handleInput(){
+	public void handleInput(){
+		if (aiControlled()) return;
 		Input input = Gdx.input;
-		up = input.isKeyPressed(upKey);
-		down = input.isKeyPressed(downKey);
-		left = input.isKeyPressed(leftKey);
-		right = input.isKeyPressed(rightKey);
+		setInput(input.isKeyPressed(upKey), input.isKeyPressed(downKey),
+		         input.isKeyPressed(leftKey), input.isKeyPressed(rightKey),
+		         input.isKeyPressed(itemKey));
 		mirror = input.isKeyPressed(mirrorKey);
-		item = input.isKeyPressed(itemKey);
-	}
-	
-	public void updatePlayer() {
-		if (aiControlled()) {
-			boolean[] k = ai.useBrain();
-			car.move(k[0], k[1], k[2], k[3]);
-		} else {
-			handleInput();
-			car.move(up, down, left, right);
-			if (item) car.useItem();
-		}
 	}
 	
 	/**
 	 * Renders this specific players camera. All of the Decals will
 	 * turn towards the camera before being rendered.
+	 * @param delta The time since the last frame in seconds.
 	 */
-	public void renderPlayerView() {
+	public void renderPlayerView(float delta) {
 		if (!realPlayer()) return;
 		
 		setScreenRegion();
-		centerCamera();
+		centerCamera(delta);
 		
 		bg.render(cameraAngle());
 		ground.render(cam);
 		
 		decalBatch.add(ground.goal);
-		for (Car c : cars) {
+		for (int i=0; i < cars.size(); i++) {
+			Car c = cars.get(i);
+			c.lookAtCamera(cam, this, mirror);
+			c.addToBatch(decalBatch);
+		}
+		for (int i=0; ghosts != null && i < ghosts.size(); i++) {
+			if (!ghosts.get(i).playing()) continue;
+			Car c = (Car) ghosts.get(i).getCar();
 			c.lookAtCamera(cam, this, mirror);
 			c.addToBatch(decalBatch);
 		}
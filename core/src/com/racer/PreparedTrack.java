@@ -0,0 +1,533 @@
+package com.racer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g3d.utils.MeshBuilder;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ShortArray;
+import com.racer.sim.JobPool;
+import com.racer.sim.RoadTiles;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackCache;
+import com.racer.track.TrackLoader;
+
+/**
+ * PreparedTrack is everything about a track that can be made without OpenGL:
+ * the TrackData, the vertices of the road and the walls and the minimap drawn
+ * into a pixmap. It is prepared on a TrackPreloader thread while the menu is open,
+ * and the Ground then only has to upload it.
+ * <p>
+ * The road can also be drawn into textures, for looks that a mesh can't give.
+ * It is then drawn into the RoadTiles that it covers, one pixmap per tile, and
+ * the tiles are drawn in parallel.
+ * <p>
+ * A track that has been compiled since it was last changed is read from its
+ * TrackCache, and otherwise it is generated and then compiled.
+ */
+public class PreparedTrack {
+	private static final int PIXMAP_SIZE = TrackData.PIXMAP_SIZE;
+	private static final float SCALE = TrackData.SCALE;
+	private static final int MAP_SIZE = 180;
+	
+	private static final float WALL_WIDTH = 0.8f;
+	private static final float WALL_HEIGHT = 0.35f;
+	// The indices of a mesh are shorts, so the walls of a long track are
+	// split into parts. A new part is started once a part has this many
+	// vertices, which leaves room for the box that is added last.
+	private static final int WALL_PART_VERTICES = 30000;
+	// How high the road is above the ground, and how many floats every
+	// vertex of it has: its position, normal and packed color.
+	private static final float ROAD_HEIGHT = 0.005f;
+	private static final int ROAD_VERTEX_SIZE = 7;
+	// The size of a tile of a road that is drawn into textures, in pixmap
+	// coordinates, and how many floats every vertex of the tiles has: its
+	// position, normal and texture coordinates.
+	private static final int ROAD_TILE_SIZE = 256;
+	private static final int TILE_VERTEX_SIZE = 8;
+	
+	// The sections of a TrackCache that the graphics are written to. The road
+	// isn't written, it is built from the TrackData faster than it is read.
+	private static final int MINIMAP = TrackCache.GAME_TAGS;
+	private static final int MINIMAP_VIEW = TrackCache.GAME_TAGS + 1;
+	private static final int WALL_VERTICES = TrackCache.GAME_TAGS + 2;
+	private static final int WALL_INDICES = TrackCache.GAME_TAGS + 3;
+	private static final int WALL_PARTS = TrackCache.GAME_TAGS + 4;
+	private static final int[] SECTIONS = { MINIMAP, MINIMAP_VIEW, WALL_VERTICES, WALL_INDICES, WALL_PARTS };
+	
+	private final File file;
+	private final boolean tiledRoad;
+	private JobPool jobs;
+	private Track track;
+	private TrackData data;
+	private float[] roadVertices;
+	private RoadTiles tiles;
+	private Pixmap[] roadTiles;
+	private float[] tileVertices;
+	private Pixmap minimap;
+	private float[] minimapV;
+	private float[] wallVertices;
+	private short[] wallIndices;
+	private int[] wallParts;
+	
+	// Read by the render thread while the track is prepared.
+	private volatile float progress;
+	private volatile boolean cancelled;
+	private boolean done;
+	private RuntimeException error;
+	
+	/**
+	 * Creates a track that is yet to be prepared.
+	 * @param file The .track file of the track.
+	 * @param tiledRoad Whether the road is drawn into textures, one for every
+	 *                  tile that it covers, instead of being built as a mesh.
+	 */
+	public PreparedTrack(File file, boolean tiledRoad) {
+		this.file = file;
+		this.tiledRoad = tiledRoad;
+		minimapV = new float[5];
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	public boolean isTiledRoad() {
+		return tiledRoad;
+	}
+	/** Returns how much of the track has been prepared, from 0 to 1. */
+	public float getProgress() {
+		return progress;
+	}
+	/** Returns true once the track has been prepared, or failed to be. */
+	public synchronized boolean isDone() {
+		return done;
+	}
+	
+	/**
+	 * Stops preparing the track, which isn't going to be used. The pixmaps are
+	 * freed as soon as the track is no longer being prepared.
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		if (done) dispose();
+	}
+	
+	/** Frees the pixmaps, once they have been uploaded. */
+	public synchronized void dispose() {
+		if (minimap != null) minimap.dispose();
+		minimap = null;
+		if (roadTiles != null) {
+			for (int i=0; i < roadTiles.length; i++) {
+				if (roadTiles[i] != null) roadTiles[i].dispose();
+			}
+		}
+		roadTiles = null;
+	}
+	
+	public Track getTrack() {
+		check();
+		return track;
+	}
+	public TrackData getData() {
+		check();
+		return data;
+	}
+	/**
+	 * Returns the position, normal and packed color of every vertex of the
+	 * road, three vertices for every triangle, or null if the road is tiled.
+	 */
+	public float[] getRoadVertices() {
+		check();
+		return roadVertices;
+	}
+	/** Returns the road drawn into tiles, or null if it isn't tiled. */
+	public Pixmap[] getRoadTiles() {
+		check();
+		return roadTiles;
+	}
+	/**
+	 * Returns the position, normal and texture coordinates of the corners
+	 * of every road tile, six vertices for every tile in the same order as
+	 * getRoadTiles.
+	 */
+	public float[] getTileVertices() {
+		check();
+		return tileVertices;
+	}
+	public Pixmap getMinimap() {
+		check();
+		return minimap;
+	}
+	/** Returns the scale, offset and goal width of the minimap, see Minimap.createMap. */
+	public float[] getMinimapView() {
+		check();
+		return minimapV;
+	}
+	/**
+	 * Returns the position and normal of every vertex of the walls, one
+	 * part after the other.
+	 */
+	public float[] getWallVertices() {
+		check();
+		return wallVertices;
+	}
+	/**
+	 * Returns the indices of the walls, one part after the other. The
+	 * indices of a part start from the first vertex of the part.
+	 */
+	public short[] getWallIndices() {
+		check();
+		return wallIndices;
+	}
+	/**
+	 * Returns how many vertices and indices every part of the walls has,
+	 * two ints per part.
+	 */
+	public int[] getWallParts() {
+		check();
+		return wallParts;
+	}
+	
+	/**
+	 * Throws if the track isn't prepared yet, or rethrows what went
+	 * wrong while preparing it on the other thread.
+	 */
+	private synchronized void check() {
+		if (!done) throw new IllegalStateException(file.getName() + " hasn't been prepared yet");
+		if (cancelled) throw new IllegalStateException(file.getName() + " was cancelled");
+		if (error != null) throw error;
+	}
+	
+	/**
+	 * Prepares the track on the calling thread. It returns early if the
+	 * track is cancelled in the middle.
+	 * @param jobs The threads that a tiled road is drawn on.
+	 */
+	public void prepare(JobPool jobs) {
+		this.jobs = jobs;
+		try {
+			TrackCache cache = TrackCache.open(file);
+			minimap = new Pixmap(MAP_SIZE, MAP_SIZE, Format.RGBA4444);
+			if (cache != null && isCompiled(cache)) {
+				read(cache);
+			} else {
+				generate();
+			}
+			progress = 1;
+		} catch (RuntimeException e) {
+			error = e;
+		} finally {
+			synchronized (this) {
+				done = true;
+				if (cancelled) dispose();
+			}
+		}
+	}
+	
+	/** Returns true if a cache has everything that a track is compiled into. */
+	private static boolean isCompiled(TrackCache cache) {
+		if (!cache.has(TrackCache.TRACK) || !TrackData.isIn(cache)) return false;
+		for (int i=0; i < SECTIONS.length; i++) {
+			if (!cache.has(SECTIONS[i])) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Generates the track from its file and draws the road, walls and minimap.
+	 */
+	private void generate() {
+		track = TrackLoader.loadTrack(file);
+		if (track == null) throw new IllegalArgumentException("Could not load " + file);
+		data = new TrackData(track);
+		progress = 0.5f;
+		
+		buildRoad();
+		if (cancelled) return;
+		generateWalls(data.getLeft(), data.getRight());
+		progress = 0.7f;
+		
+		// Draw the road onto the minimap, scaled and moved
+		// to be as big as possible on it.
+		Vector2 blCorner = data.getBottomLeft();
+		Vector2 urCorner = data.getUpperRight();
+		int mapSize = MAP_SIZE;
+		float mapWidth = urCorner.x - blCorner.x;
+		float mapHeight = urCorner.y - blCorner.y;
+		float biggestLen = (mapWidth > mapHeight) ? mapWidth : mapHeight;
+		int xOff = (int) ((mapSize/2)- mapSize/2 *mapWidth/biggestLen);
+		int yOff = (int) ((mapSize/2)- mapSize/2 *mapHeight/biggestLen);
+		float mapScale = mapSize/biggestLen;
+		
+		float[] tris = data.getRoadTriangles();
+		for (int i=0; i < data.roadTriangles(); i++) {
+			int t = i*6;
+			minimap.setColor(data.getRoadColor(i));
+			minimap.fillTriangle((int) (xOff + (tris[t]   - blCorner.x)*mapScale), (int) (yOff + (tris[t+1] - blCorner.y)*mapScale),
+			                     (int) (xOff + (tris[t+2] - blCorner.x)*mapScale), (int) (yOff + (tris[t+3] - blCorner.y)*mapScale),
+			                     (int) (xOff + (tris[t+4] - blCorner.x)*mapScale), (int) (yOff + (tris[t+5] - blCorner.y)*mapScale));
+		}
+		minimapV[0] = SCALE*mapScale;
+		minimapV[1] = xOff - (blCorner.x - PIXMAP_SIZE/2) *mapScale;
+		minimapV[2] = yOff + (urCorner.y - PIXMAP_SIZE/2) *mapScale;
+		minimapV[3] = data.getGoalLineWidth() * minimapV[0];
+		progress = 0.9f;
+		
+		if (!cancelled) compile();
+	}
+	
+	/**
+	 * Builds the vertices of the road from its triangles, or draws the road
+	 * into tiles. Every triangle has the color of its segment, which
+	 * alternates between light and dark.
+	 */
+	private void buildRoad() {
+		if (tiledRoad) {
+			drawRoadTiles();
+			return;
+		}
+		float[] tris = data.getRoadTriangles();
+		int count = data.roadTriangles();
+		roadVertices = new float[count * 3 * ROAD_VERTEX_SIZE];
+		Vector2[] corners = { new Vector2(), new Vector2(), new Vector2() };
+		Color color = new Color();
+		int v = 0;
+		for (int i=0; i < count; i++) {
+			int t = i*6;
+			Vector2 a = data.toGround(tris[t], tris[t+1], corners[0]);
+			Vector2 b = data.toGround(tris[t+2], tris[t+3], corners[1]);
+			Vector2 c = data.toGround(tris[t+4], tris[t+5], corners[2]);
+			// The triangles have to be counter-clockwise seen from above, or
+			// they are culled. Ground y is the z axis of the world.
+			if ((b.y - a.y)*(c.x - a.x) - (b.x - a.x)*(c.y - a.y) < 0) {
+				Vector2 swap = b;
+				b = c;
+				c = swap;
+			}
+			Color.rgba8888ToColor(color, data.getRoadColor(i));
+			float bits = color.toFloatBits();
+			v = putRoadVertex(v, a, bits);
+			v = putRoadVertex(v, b, bits);
+			v = putRoadVertex(v, c, bits);
+		}
+	}
+	
+	private int putRoadVertex(int v, Vector2 pos, float color) {
+		roadVertices[v++] = pos.x;
+		roadVertices[v++] = ROAD_HEIGHT;
+		roadVertices[v++] = pos.y;
+		roadVertices[v++] = 0;
+		roadVertices[v++] = 1;
+		roadVertices[v++] = 0;
+		roadVertices[v++] = color;
+		return v;
+	}
+	
+	/**
+	 * Draws the road into the tiles that it covers, and builds a square for
+	 * every tile for the Ground to put the texture of the tile on.
+	 */
+	private void drawRoadTiles() {
+		tiles = new RoadTiles(data, ROAD_TILE_SIZE);
+		// Every tile is drawn on its own pixmap, so the jobs share nothing.
+		// A tile that was skipped because the track was cancelled stays null.
+		roadTiles = new Pixmap[tiles.size()];
+		jobs.run(new JobPool.Job() {
+			@Override
+			public void run(int worker, int from, int to) {
+				for (int i=from; i < to; i++) {
+					if (cancelled) return;
+					roadTiles[i] = drawTile(i);
+				}
+			}
+		}, tiles.size(), 1);
+		
+		tileVertices = new float[tiles.size() * 6 * TILE_VERTEX_SIZE];
+		int size = tiles.getTileSize();
+		Vector2 pos = new Vector2();
+		int v = 0;
+		for (int i=0; i < tiles.size(); i++) {
+			int x = tiles.getX(i);
+			int y = tiles.getY(i);
+			// Wound the same way as the road triangles, which are turned
+			// around in buildRoad when they need to be.
+			v = putTileVertex(v, data.toGround(x, y, pos), 0, 0);
+			v = putTileVertex(v, data.toGround(x + size, y + size, pos), 1, 1);
+			v = putTileVertex(v, data.toGround(x + size, y, pos), 1, 0);
+			v = putTileVertex(v, data.toGround(x, y, pos), 0, 0);
+			v = putTileVertex(v, data.toGround(x, y + size, pos), 0, 1);
+			v = putTileVertex(v, data.toGround(x + size, y + size, pos), 1, 1);
+		}
+	}
+	
+	/**
+	 * Draws the triangles that overlap a tile, moved so that the tile
+	 * starts at the corner of its pixmap.
+	 */
+	private Pixmap drawTile(int tile) {
+		int size = tiles.getTileSize();
+		int x = tiles.getX(tile);
+		int y = tiles.getY(tile);
+		Pixmap pixmap = new Pixmap(size, size, Format.RGBA8888);
+		float[] tris = data.getRoadTriangles();
+		for (int n=0; n < tiles.triangles(tile); n++) {
+			int i = tiles.getTriangle(tile, n);
+			int t = i*6;
+			pixmap.setColor(data.getRoadColor(i));
+			pixmap.fillTriangle((int) tris[t]   - x, (int) tris[t+1] - y,
+			                    (int) tris[t+2] - x, (int) tris[t+3] - y,
+			                    (int) tris[t+4] - x, (int) tris[t+5] - y);
+		}
+		return pixmap;
+	}
+	
+	private int putTileVertex(int v, Vector2 pos, float u, float tv) {
+		tileVertices[v++] = pos.x;
+		tileVertices[v++] = ROAD_HEIGHT;
+		tileVertices[v++] = pos.y;
+		tileVertices[v++] = 0;
+		tileVertices[v++] = 1;
+		tileVertices[v++] = 0;
+		tileVertices[v++] = u;
+		tileVertices[v++] = tv;
+		return v;
+	}
+	
+	/**
+	 * Generate 3D walls on the track.
+	 * @param left  An array of vectors that define the left wall.
+	 * @param right An array of vectors that define the right wall.
+	 */
+	private void generateWalls(ArrayList<Vector2> left, ArrayList<Vector2> right) {
+		// The meshes are only built here, they are created by the Ground.
+		FloatArray vertices = new FloatArray();
+		ShortArray indices = new ShortArray();
+		IntArray parts = new IntArray();
+		MeshBuilder mb = beginWallPart();
+		
+		float len, h = WALL_HEIGHT;
+		
+		// Once for each wall
+		for (int w=0; w < 2; w++) {
+			ArrayList<Vector2> nodes;
+			if (w==0) {
+				nodes = left;
+				len = -WALL_WIDTH;
+			}
+			else {
+				nodes = right;
+				len = WALL_WIDTH;
+			}
+			
+			Vector2 prev = new Vector2(nodes.get(0));
+			for (int i=1; i < nodes.size(); i++) {
+				Vector2 next = nodes.get(i), n1, n2;
+				// The left and right walls need to draw the box in different orders.
+				if (w==0) {
+					n1 = next;
+					n2 = prev;
+				} else {
+					n1 = prev;
+					n2 = next;
+				}
+				double a = Math.atan2(prev.y-next.y, prev.x-next.x) - Math.PI/2;
+				
+				float dx = (float)Math.cos(a)*len;
+				float dy = (float)Math.sin(a)*len;
+				if (mb.getNumVertices() >= WALL_PART_VERTICES) {
+					endWallPart(mb, vertices, indices, parts);
+					mb = beginWallPart();
+				}
+				mb.box(new Vector3(n1.x, 0, n1.y), new Vector3(n1.x, h, n1.y),
+					   new Vector3(n2.x, 0, n2.y), new Vector3(n2.x, h, n2.y),
+					   new Vector3(n1.x+dx, 0, n1.y+dy), new Vector3(n1.x+dx, h, n1.y+dy),
+					   new Vector3(n2.x+dx, 0, n2.y+dy), new Vector3(n2.x+dx, h, n2.y+dy));
+				prev.set(next);
+			}
+		}
+		endWallPart(mb, vertices, indices, parts);
+		wallVertices = vertices.toArray();
+		wallIndices = indices.toArray();
+		wallParts = parts.toArray();
+	}
+	
+	private static MeshBuilder beginWallPart() {
+		MeshBuilder mb = new MeshBuilder();
+		mb.begin(Usage.Position | Usage.Normal);
+		mb.part("walls", GL20.GL_TRIANGLES);
+		return mb;
+	}
+	
+	/**
+	 * Adds the vertices and indices of a part of the walls to the ones
+	 * of the parts before it.
+	 */
+	private static void endWallPart(MeshBuilder mb, FloatArray vertices, ShortArray indices, IntArray parts) {
+		float[] v = new float[mb.getNumVertices() * mb.getFloatsPerVertex()];
+		mb.getVertices(v, 0);
+		short[] i = new short[mb.getNumIndices()];
+		mb.getIndices(i, 0);
+		vertices.addAll(v);
+		indices.addAll(i);
+		parts.add(mb.getNumVertices());
+		parts.add(mb.getNumIndices());
+		mb.clear();
+	}
+	
+	/**
+	 * Writes the track that was just generated next to its file. A track
+	 * that can't be written is generated again the next time instead.
+	 */
+	private void compile() {
+		try {
+			TrackCache.Writer out = new TrackCache.Writer(file);
+			out.putTrack(track);
+			data.write(out);
+			
+			out.put(MINIMAP, minimap.getPixels().duplicate());
+			out.putFloats(MINIMAP_VIEW, minimapV, minimapV.length);
+			out.putFloats(WALL_VERTICES, wallVertices, wallVertices.length);
+			ByteBuffer indices = TrackCache.Writer.allocate(wallIndices.length * 2);
+			indices.asShortBuffer().put(wallIndices);
+			out.put(WALL_INDICES, indices);
+			out.putInts(WALL_PARTS, wallParts, wallParts.length);
+			
+			out.write(TrackCache.fileFor(file));
+		} catch (IOException e) {
+			System.err.println("Could not compile " + file + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Reads the track, and copies the road, walls and minimap, from the
+	 * compiled version of it.
+	 */
+	private void read(TrackCache cache) {
+		track = cache.readTrack();
+		data = new TrackData(track, cache);
+		buildRoad();
+		progress = 0.9f;
+		
+		minimap.getPixels().duplicate().put(cache.get(MINIMAP));
+		float[] view = cache.getFloats(MINIMAP_VIEW);
+		System.arraycopy(view, 0, minimapV, 0, minimapV.length);
+		
+		wallVertices = cache.getFloats(WALL_VERTICES);
+		ShortBuffer indices = cache.get(WALL_INDICES).asShortBuffer();
+		wallIndices = new short[indices.remaining()];
+		indices.get(wallIndices);
+		wallParts = cache.getInts(WALL_PARTS);
+	}
+}
@@ -10,11 +10,13 @@ public class RacerGame extends Game {
 	private GameScreen game;
 	private MenuScreen menu;
 	private Config config;
+	private TrackPreloader preloader;
 	
 	@Override
 	public void create () {
 		Car.loadTexture();
 		config = new Config();
+		preloader = new TrackPreloader(config);
 		menu = new MenuScreen(this, config);
 		game = new GameScreen(this, config);
 		
@@ -33,10 +35,15 @@ public class RacerGame extends Game {
 		}
 	}
 	
+	/** Returns the thread that prepares the tracks before a race. */
+	public TrackPreloader getTrackPreloader() {
+		return preloader;
+	}
+	
 	public void quitGame() {
 		Gdx.app.exit();
 	}
-
+	
 	@Override
 	public void render () {
 		Gdx.gl.glClearColor(0, 0, 0, 1);
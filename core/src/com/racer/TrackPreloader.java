@@ -0,0 +1,85 @@
+package com.racer;
+
+import java.io.File;
+
+import com.racer.sim.JobPool;
+
+/**
+ * TrackPreloader prepares tracks on a thread of its own, so that a track can
+ * be prepared while it is highlighted in the menu and the race can start right
+ * away once it is chosen. Only the track that was asked for last is prepared,
+ * a track that is no longer wanted is cancelled.
+ * <p>
+ * A road that is drawn into tiles is drawn on a JobPool of its own, which
+ * the worker shares with nobody else.
+ */
+public class TrackPreloader {
+	private Thread worker;
+	private JobPool jobs;
+	private Config config;
+	// The track that was asked for last, and the one that the worker hasn't
+	// started on yet. Both are guarded by this.
+	private PreparedTrack latest;
+	private PreparedTrack pending;
+	
+	/**
+	 * @param config Tells whether the road of a track is drawn into textures
+	 *               when it is requested, see PreparedTrack.
+	 */
+	public TrackPreloader(Config config) {
+		this.config = config;
+		jobs = JobPool.forProcessors();
+		worker = new Thread("track-preloader") {
+			@Override
+			public void run() {
+				work();
+			}
+		};
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	/**
+	 * Starts preparing a track, unless it is already being prepared.
+	 * @param file The .track file of the track.
+	 * @return The track, which is prepared on the worker.
+	 */
+	public synchronized PreparedTrack request(File file) {
+		boolean tiledRoad = config.tiledRoad();
+		if (latest != null && latest.getFile().equals(file) && latest.isTiledRoad() == tiledRoad) return latest;
+		if (latest != null) latest.cancel();
+		latest = new PreparedTrack(file, tiledRoad);
+		pending = latest;
+		notifyAll();
+		return latest;
+	}
+	
+	/**
+	 * Hands over a track to be used, requesting it if it hasn't been. The
+	 * preloader forgets about it, so it isn't cancelled by the next request
+	 * and the caller has to dispose it.
+	 */
+	public synchronized PreparedTrack take(File file) {
+		PreparedTrack track = request(file);
+		latest = null;
+		return track;
+	}
+	
+	private void work() {
+		while (true) {
+			PreparedTrack next;
+			synchronized (this) {
+				while (pending == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				next = pending;
+				pending = null;
+			}
+			next.prepare(jobs);
+		}
+	}
+}
@@ -11,9 +11,10 @@ import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.racer.Car;
 import com.racer.Player;
 import com.racer.Race;
+import com.racer.sim.SimCar;
 
 public class HUD {
-	// How many frames it should take to show each player in the score board.
+	// How many ticks it should take to show each player in the score board.
 	public static final int TIME_PER_PLAYER = 30;
 	
 	private static final int ITEM_WIDTH = 20;
@@ -37,6 +38,12 @@ public class HUD {
 	// pos saves results from calcPos()
 	private float[] pos;
 	
+	// The texts that are drawn every frame are built once and kept, so
+	// that drawing the HUD doesn't create any garbage.
+	private String[] rankTexts;
+	private String[] lapTexts;
+	private StringBuilder timeText;
+	
 	private int screenW;
 	private int screenH;
 	
@@ -47,6 +54,9 @@ public class HUD {
 		batch = new SpriteBatch();
 		font = new BitmapFont();
 		pos = new float[2];
+		rankTexts = new String[8];
+		lapTexts = new String[8];
+		timeText = new StringBuilder();
 		map = new Minimap(players);
 		items = new Texture(Gdx.files.internal("items.png"));
 		
@@ -112,8 +122,7 @@ public class HUD {
 			font.draw(batch, formatRank(rank), pos[0], pos[1]);
 			
 			// Show laps left when player passes goal line.
-			if (lapsLeft[i*2] > 0) {
-				lapsLeft[i*2] -= 1;
+			if (lapsLeft[i*2] > race.getElapsedTime()) {
 				calcPos(i, 0.5f, 0.8f);
 				font.setColor(1, 1, 0, 1);
 				font.draw(batch, formatLaps(lapsLeft[i*2+1]), pos[0] - 130, pos[1]);
@@ -163,7 +172,7 @@ public class HUD {
 	}
 	
 	private void renderRaceResults() {
-		ArrayList<Car> cars = race.getCarsInGoal();
+		ArrayList<SimCar> cars = race.getCarsInGoal();
 		int[] times = race.getFinishTimes();
 		
 		batch.begin();
@@ -177,9 +186,9 @@ public class HUD {
 			if (TIME_PER_PLAYER * i > race.timeSinceFinish())
 				break;
 				
-			Car c = cars.get(i);
+			Car c = (Car) cars.get(i);
 			font.setColor(c.color);
-			font.draw(batch, c.getPlayer().getName(), leftX, textY);
+			font.draw(batch, c.getDriver().getName(), leftX, textY);
 			font.draw(batch, formatTime(times[i]), rightX - 100, textY);
 			textY -= 38;
 		}
@@ -199,8 +208,9 @@ public class HUD {
 	 * @param laps How many laps left to show.
 	 */
 	public void showLapsLeft(int playerId, int laps) {
-		// Display the laps left for 3 seconds.
-		lapsLeft[playerId*2] = 180;
+		// Display the laps left for 3 seconds. The time is saved as the
+		// race time when it should stop showing, so that it follows the ticks.
+		lapsLeft[playerId*2] = race.getElapsedTime() + 180;
 		lapsLeft[playerId*2+1] = laps;
 	}
 	
@@ -223,16 +233,29 @@ public class HUD {
 	 * @param rank The rank to format.
 	 */
 	private String formatRank(int rank) {
+		if (rank >= rankTexts.length) {
+			String[] texts = new String[rank + 1];
+			System.arraycopy(rankTexts, 0, texts, 0, rankTexts.length);
+			rankTexts = texts;
+		}
+		if (rankTexts[rank] != null) return rankTexts[rank];
+		
+		String text;
 		switch (rank) {
 		case 1:
-			return rank + "st";
+			text = rank + "st";
+			break;
 		case 2:
-			return rank + "nd";
+			text = rank + "nd";
+			break;
 		case 3:
-			return rank + "rd";
+			text = rank + "rd";
+			break;
 		default:
-			return rank + "th";
+			text = rank + "th";
 		}
+		rankTexts[rank] = text;
+		return text;
 	}
 	
 	/**
@@ -240,28 +263,42 @@ public class HUD {
 	 * @param lapsLeft The amount of laps left to format.
 	 */
 	private String formatLaps(int lapsLeft) {
+		if (lapsLeft >= lapTexts.length) {
+			String[] texts = new String[lapsLeft + 1];
+			System.arraycopy(lapTexts, 0, texts, 0, lapTexts.length);
+			lapTexts = texts;
+		}
+		if (lapTexts[lapsLeft] != null) return lapTexts[lapsLeft];
+		
+		String text;
 		switch (lapsLeft) {
 		case 1:
-			return "FINAL LAP";
+			text = "FINAL LAP";
+			break;
 		default:
-			return lapsLeft + " LAPS LEFT";
+			text = lapsLeft + " LAPS LEFT";
 		}
+		lapTexts[lapsLeft] = text;
+		return text;
 	}
 	
 	/**
-	 * Returns a string in the form m'ss''x (minutes' seconds'' centiseconds).
-	 * @param frames The time in frames.
+	 * Writes a time in the form m'ss''x (minutes' seconds'' centiseconds).
+	 * The same builder is reused by every call.
+	 * @param frames The time in ticks.
 	 */
-	private String formatTime(int frames) {
+	private CharSequence formatTime(int frames) {
 		int minutes = (frames/3600);
 		int seconds = (frames/60);
 		int hundredths = ((int)(frames/6.0f)) - seconds*10;
 		seconds %= 60;
 		
-		String sPad = "";
-		if (seconds < 10) sPad = "0";
-		
-		return minutes + "'" + sPad + seconds + "''" + hundredths;
+		StringBuilder text = timeText;
+		text.setLength(0);
+		text.append(minutes).append('\'');
+		if (seconds < 10) text.append('0');
+		text.append(seconds).append("''").append(hundredths);
+		return text;
 	}
 	
 	private String format321() {
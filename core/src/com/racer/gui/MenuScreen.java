@@ -15,7 +15,10 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.racer.Car;
 import com.racer.Config;
 import com.racer.Config.Key;
+import com.racer.PreparedTrack;
 import com.racer.RacerGame;
+import com.racer.sim.TrackData;
+import com.racer.track.TrackCatalog;
 import com.racer.track.TrackLoader;
 
 public class MenuScreen implements Screen {
@@ -58,6 +61,7 @@ public class MenuScreen implements Screen {
 	// The dimensions of the track choosing window.
 	private static final int TW_WIDTH = 300;
 	private static final int TW_HEIGHT = 200;
+	private static final int THUMB_SIZE = 60;
 	private boolean choosingTrack;
 	private int curTrack;
 	
@@ -87,7 +91,7 @@ public class MenuScreen implements Screen {
 		public void reset() {
 			keyWasPressed = false;
 		}
-
+		
 		// We are forced to "implement" all the methods of InputProcessor.
 		public boolean keyUp(int keycode) {return false;}
 		public boolean keyTyped(char character) {return false;}
@@ -334,7 +338,7 @@ public class MenuScreen implements Screen {
 					playerChanging = -1;
 				}
 			}
-		} 
+		}
 		else if (!choosingTrack){
 			int p = config.players();
 			if (input.isKeyJustPressed(Keys.NUM_1)) {
@@ -370,10 +374,32 @@ public class MenuScreen implements Screen {
 		String s = "";
 		if (tracks != 1) s = "s";
 		
+		// Everything about the track comes from the catalog, so nothing
+		// has to be loaded to show it.
+		TrackCatalog.Entry info = null;
+		if (curTrack >= 1 && curTrack <= tracks) {
+			info = TrackLoader.getCatalog().get(curTrack - 1);
+			float[] thumb = info.thumbnail;
+			int tx = wx + TW_WIDTH - THUMB_SIZE - 10;
+			int ty = wy + TW_HEIGHT - THUMB_SIZE - 10;
+			sr.begin(ShapeType.Line);
+			sr.setColor(0.6f, 0.6f, 0.6f, 1);
+			for (int i=2; i < thumb.length; i += 2) {
+				sr.line(tx + thumb[i-2]*THUMB_SIZE, ty + thumb[i-1]*THUMB_SIZE,
+				        tx + thumb[i]*THUMB_SIZE, ty + thumb[i+1]*THUMB_SIZE);
+			}
+			sr.end();
+		}
+		
 		batch.begin();
 		font.setColor(0.8f, 0.8f, 0, 1);
 		font.draw(batch, tracks + " track" + s + " available", textX, wy + TW_HEIGHT - 40);
 		font.draw(batch, curTrack+"/"+tracks+": " + tName, textX, wy + TW_HEIGHT/2 + 20);
+		if (info != null) {
+			font.setColor(0.6f, 0.6f, 0.6f, 1);
+			font.draw(batch, info.laps + " laps, " + info.segments + " segments, "
+					+ (int) (info.length / TrackData.SCALE) + " m", textX, wy + TW_HEIGHT/2 - 25);
+		}
 		
 		font.setColor(0.9f, 0.9f, 0.9f, 1);
 		font.draw(batch, "LEFT / RIGHT: Choose track\n"
@@ -388,6 +414,13 @@ public class MenuScreen implements Screen {
 		if (curTrack > tracks) curTrack = 1;
 		else if (curTrack < 1) curTrack = tracks;
 		
+		// Start preparing the highlighted track, so that the race can start
+		// as soon as it is chosen.
+		PreparedTrack prepared = game.getTrackPreloader().request(TrackLoader.trackFile(curTrack - 1));
+		font.setColor(0.6f, 0.6f, 0.6f, 1);
+		font.draw(batch, prepared.isDone() ? "Ready"
+				: "Preparing " + (int) (prepared.getProgress() * 100) + "%", textX, wy + TW_HEIGHT/2 - 5);
+		
 		// Choose the selected track and go on to the game.
 		if (input.isKeyJustPressed(Keys.ENTER)) {
 			config.setTrack(curTrack - 1);
@@ -16,40 +16,39 @@ import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
 import com.badlogic.gdx.math.Vector2;
-import com.racer.Car;
 
-public class ItemBoxGroup {
+/**
+ * Draws the boxes of an ItemBoxGroup. The boxes spin around and shrink
+ * when they are picked up, and grow back when they respawn.
+ */
+public class ItemBoxView {
 	private static Model BOX_MODEL;
 	private static BlendingAttribute BOX_ALPHA;
 	private static Random RAND;
-	private static final float BOX_SIZE = 1.2f;
-	private static final float BOX_RAD2 = BOX_SIZE * BOX_SIZE * 0.2f;
-	private static final float BOX_MARGIN = 1f;
+	private static final float BOX_SIZE = ItemBoxGroup.BOX_SIZE;
 	
-	private ItemManager im;
+	private ItemBoxGroup group;
 	private ArrayList<Box> boxes;
-	private Vector2 position;
-	private float radius;
 	
 	private class Box extends ModelInstance {
-		public Vector2 pos;
+		private int index;
 		private float rotX;
 		private float rotY;
 		private float rotZ;
 		private float scale;
 		private int direction;
-		private int respawnTime;
 		
-		public Box(float x, float y) {
+		public Box(int index, float x, float y) {
 			super(BOX_MODEL, x, BOX_SIZE/1.2f, y);
+			this.index = index;
 			materials.get(0).set(BOX_ALPHA);
 			randomizeRotation();
-			pos = new Vector2(x, y);
 			scale = 1f;
 		}
 		
 		public void update() {
-			if (--respawnTime == 0) {
+			int respawnTime = group.getRespawnTime(index);
+			if (respawnTime == 0) {
 				randomizeRotation();
 			} else if (scale < 1 && respawnTime < 0) {
 				scale(0.01f);
@@ -73,14 +72,6 @@ public class ItemBoxGroup {
 			direction = RAND.nextBoolean() ? -1 : 1;
 		}
 		
-		public void kill() {
-			respawnTime = 120;
-		}
-		
-		public boolean pickable() {
-			return respawnTime < -40;
-		}
-		
 		/** Returns true if this box should be rendered. */
 		public boolean render() {
 			return scale > 0.001f;
@@ -88,26 +79,15 @@ public class ItemBoxGroup {
 	}
 	
 	/**
-	 * Creates a new group of item boxes. The boxes will be added in a line
-	 * between pos and pos2. If they don't fit on one line, they will
-	 * overflow to a new one.
+	 * Creates the boxes for a group of item boxes.
 	 */
-	public ItemBoxGroup(int boxAmount, Vector2 pos, Vector2 pos2) {
+	public ItemBoxView(ItemBoxGroup group) {
+		this.group = group;
 		boxes = new ArrayList<Box>();
-		float dx = pos2.x - pos.x;
-		float dy = pos2.y - pos.y;
-		float len = (float) Math.sqrt(dx*dx + dy*dy);
-		float groupLen = boxAmount * BOX_SIZE + (boxAmount-1) * BOX_MARGIN;
-		float linePos = (len - groupLen) / 2;
-		
-		for (int i=0; i < boxAmount; i++) {
-			float lerp = linePos/len;
-			boxes.add(new Box(pos.x + dx*lerp, pos.y + dy*lerp));
-			linePos += BOX_SIZE + BOX_MARGIN;
+		for (int i=0; i < group.size(); i++) {
+			Vector2 pos = group.getBoxPosition(i);
+			boxes.add(new Box(i, pos.x, pos.y));
 		}
-		
-		radius = groupLen/2 + BOX_SIZE;
-		position = new Vector2(pos).add(dx * 0.5f, dy * 0.5f);
 	}
 	
 	public static void initiateBoxModel() {
@@ -132,38 +112,13 @@ public class ItemBoxGroup {
 		}
 	}
 	
-	public void update() {
-		for (Box box : boxes) {
-			box.update();
-		}
-	}
-	
 	/**
-	 * Tests the boxes in this group against a car for collision. It will first
-	 * see if the car is inside of the group and only then test every box individually.
+	 * Animates the boxes. Should be called once every
+	 * tick, after the item boxes have been updated.
 	 */
-	public boolean hitTestCar(Car car) {
-		Vector2 carPos = car.getPosition2();
-		float dist2 = carPos.dst2(position);
-		float carRad2 = Car.RADIUS_SQRD;
-		float radius2 = carRad2 + radius * radius;
-		if (dist2 > radius2) return false;
-		
+	public void update() {
 		for (Box box : boxes) {
-			if (!box.pickable()) continue;
-			
-			dist2 = carPos.dst2(box.pos);
-			radius2 = carRad2 + BOX_RAD2;
-			if (dist2 <= radius2) {
-				box.kill();
-				im.giveItemTo(car);
-				return true;
-			}
+			box.update();
 		}
-		return false;
-	}
-	
-	public void setManager(ItemManager im) {
-		this.im = im;
 	}
 }
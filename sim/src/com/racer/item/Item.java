@@ -0,0 +1,78 @@
+package com.racer.item;
+
+import com.racer.sim.SimCar;
+
+/**
+ * Defines an Item in the game. An Item could give both passive effects,
+ * such as boosts, and also spawn objects such as traps and projectiles.
+ */
+public abstract class Item {
+	private ItemType type;
+	protected SimCar car;
+	protected int timeElapsed;
+	private boolean activated;
+	
+	/**
+	 * Creates a new item that isn't held by any car yet. Items are created
+	 * by their ItemType and given to a car with reset.
+	 */
+	public Item(ItemType type) {
+		this.type = type;
+	}
+	
+	/**
+	 * Makes an expired item ready to be given out again, as if it was new.
+	 * @param car The car that gets the item.
+	 */
+	public void reset(SimCar car) {
+		this.car = car;
+		timeElapsed = 0;
+		activated = false;
+	}
+	
+	/**
+	 * Puts the item back in a state it had earlier, when a race is restored.
+	 */
+	void restore(SimCar car, int timeElapsed, boolean activated) {
+		this.car = car;
+		this.timeElapsed = timeElapsed;
+		this.activated = activated;
+	}
+	
+	/** Returns the car that has the item. */
+	public SimCar getCar() {
+		return car;
+	}
+	
+	/** Returns the index of the icon of the item in the item texture. */
+	public int getId() {
+		return type.getIcon();
+	}
+	
+	public ItemType type() {
+		return type;
+	}
+	
+	/** Activate triggers when the players uses this item. */
+	public void activate() {
+		activated = true;
+	}
+	/** Returns true if this item has been used. */
+	public boolean activated() {
+		return activated;
+	}
+	
+	/**
+	 * Update the effects of this item.
+	 * @return True if this item should expire.
+	 */
+	public boolean update() {
+		timeElapsed++;
+		return false;
+	}
+	
+	/**
+	 * Expires the effects of this item.
+	 */
+	public abstract void expire();
+}
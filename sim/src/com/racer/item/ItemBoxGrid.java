@@ -0,0 +1,165 @@
+package com.racer.item;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+import com.racer.sim.SimCar;
+
+/**
+ * ItemBoxGrid is a uniform grid over the item boxes of a track. It is built once
+ * when the track is generated, and every cell knows which boxes a car whose
+ * middle is in the cell could hit. A car then only has to look at the boxes
+ * of one cell, no matter how many rows of boxes there are on the track.
+ * <p>
+ * The boxes of a cell are sorted by their group and their place in the group,
+ * so they are tested in the same order as if every group had been tested.
+ */
+public class ItemBoxGrid {
+	private static final float CELL_SIZE = 4f;
+	// How close the middle of a car has to be to a box to hit it.
+	private static final float REACH2 = SimCar.RADIUS_SQRD + ItemBoxGroup.BOX_RAD2;
+	
+	private ArrayList<ItemBoxGroup> groups;
+	private float minX;
+	private float minY;
+	private int cols;
+	private int rows;
+	
+	// The boxes of cell c are found between cellStart[c] and cellStart[c+1],
+	// as the index of their group and their index in the group. Where the
+	// boxes are is copied here too, so that most tests never touch a group.
+	private int[] cellStart;
+	private int[] cellGroups;
+	private int[] cellBoxes;
+	private float[] cellX;
+	private float[] cellY;
+	
+	/**
+	 * Builds a grid over the boxes of every group.
+	 */
+	public ItemBoxGrid(ArrayList<ItemBoxGroup> groups) {
+		this.groups = groups;
+		float reach = (float) Math.sqrt(REACH2);
+		
+		// Find the bounds of the boxes and pad them with the reach of a car.
+		minX = Float.MAX_VALUE;
+		minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int g=0; g < groups.size(); g++) {
+			ItemBoxGroup group = groups.get(g);
+			for (int b=0; b < group.size(); b++) {
+				Vector2 v = group.getBoxPosition(b);
+				if (v.x < minX) minX = v.x;
+				if (v.x > maxX) maxX = v.x;
+				if (v.y < minY) minY = v.y;
+				if (v.y > maxY) maxY = v.y;
+			}
+		}
+		if (minX > maxX) {
+			// There are no boxes, so one empty cell is enough.
+			minX = minY = maxX = maxY = 0;
+		}
+		minX -= reach;
+		minY -= reach;
+		cols = (int) ((maxX + reach - minX) / CELL_SIZE) + 1;
+		rows = (int) ((maxY + reach - minY) / CELL_SIZE) + 1;
+		
+		// First count how many boxes every cell has...
+		cellStart = new int[cols*rows + 1];
+		for (int pass=0; pass < 2; pass++) {
+			int[] fill = new int[cols*rows];
+			for (int g=0; g < groups.size(); g++) {
+				ItemBoxGroup group = groups.get(g);
+				for (int b=0; b < group.size(); b++) {
+					Vector2 v = group.getBoxPosition(b);
+					int x0 = col(v.x - reach);
+					int x1 = col(v.x + reach);
+					int y0 = row(v.y - reach);
+					int y1 = row(v.y + reach);
+					for (int y=y0; y <= y1; y++) {
+						for (int x=x0; x <= x1; x++) {
+							int c = y*cols + x;
+							if (pass == 0) {
+								cellStart[c + 1]++;
+							} else {
+								// ...and then fill them. The boxes are added
+								// in order, which keeps every cell sorted.
+								int i = cellStart[c] + fill[c]++;
+								cellGroups[i] = g;
+								cellBoxes[i] = b;
+								cellX[i] = v.x;
+								cellY[i] = v.y;
+							}
+						}
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int c=0; c < cols*rows; c++) {
+					cellStart[c+1] += cellStart[c];
+				}
+				cellGroups = new int[cellStart[cols*rows]];
+				cellBoxes = new int[cellStart[cols*rows]];
+				cellX = new float[cellStart[cols*rows]];
+				cellY = new float[cellStart[cols*rows]];
+			}
+		}
+	}
+	
+	private int col(float x) {
+		int c = (int) Math.floor((x - minX) / CELL_SIZE);
+		if (c < 0) return 0;
+		if (c >= cols) return cols - 1;
+		return c;
+	}
+	private int row(float y) {
+		int r = (int) Math.floor((y - minY) / CELL_SIZE);
+		if (r < 0) return 0;
+		if (r >= rows) return rows - 1;
+		return r;
+	}
+	
+	/**
+	 * Tests a car against the boxes near it. A car picks up at most one box from
+	 * every group in a tick, the first one in the group that it touches.
+	 * @return True if the car hit a box.
+	 */
+	public boolean hitTestCar(SimCar car) {
+		Vector2 pos = car.getPosition2();
+		return hitTest(pos.x, pos.y, car);
+	}
+	
+	/**
+	 * Tests a car against the boxes near a position, as if the car was there.
+	 * @return True if the car hit a box.
+	 */
+	public boolean hitTest(float x, float y, SimCar car) {
+		if (x < minX || y < minY || x >= minX + cols*CELL_SIZE || y >= minY + rows*CELL_SIZE) return false;
+		
+		int c = row(y)*cols + col(x);
+		boolean hit = false;
+		int lastGroup = -1;
+		for (int i=cellStart[c]; i < cellStart[c+1]; i++) {
+			float dx = cellX[i] - x;
+			float dy = cellY[i] - y;
+			if (dx*dx + dy*dy > REACH2) continue;
+			
+			int g = cellGroups[i];
+			if (g == lastGroup) continue;
+			ItemBoxGroup group = groups.get(g);
+			int b = cellBoxes[i];
+			if (group.pickable(b)) {
+				group.pickUp(b, car);
+				lastGroup = g;
+				hit = true;
+			}
+		}
+		return hit;
+	}
+	
+	/** Returns how many cells there are in the grid. */
+	public int cells() {
+		return cols * rows;
+	}
+}
@@ -0,0 +1,110 @@
+package com.racer.item;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+import com.racer.sim.SimCar;
+import com.racer.sim.SnapshotBuffer;
+
+/**
+ * A group of item boxes lying in a line across the track. This class only keeps
+ * track of where the boxes are and when they can be picked up again, the boxes
+ * are drawn by an ItemBoxView.
+ */
+public class ItemBoxGroup {
+	public static final float BOX_SIZE = 1.2f;
+	static final float BOX_RAD2 = BOX_SIZE * BOX_SIZE * 0.2f;
+	private static final float BOX_MARGIN = 1f;
+	
+	private ItemManager im;
+	private ArrayList<Box> boxes;
+	
+	private class Box {
+		public Vector2 pos;
+		private int respawnTime;
+		
+		public Box(float x, float y) {
+			pos = new Vector2(x, y);
+		}
+		
+		public void update() {
+			--respawnTime;
+		}
+		
+		public void kill() {
+			respawnTime = 120;
+		}
+		
+		public boolean pickable() {
+			return respawnTime < -40;
+		}
+	}
+	
+	/**
+	 * Creates a new group of item boxes. The boxes will be added in a line
+	 * between pos and pos2. If they don't fit on one line, they will
+	 * overflow to a new one.
+	 */
+	public ItemBoxGroup(int boxAmount, Vector2 pos, Vector2 pos2) {
+		boxes = new ArrayList<Box>();
+		float dx = pos2.x - pos.x;
+		float dy = pos2.y - pos.y;
+		float len = (float) Math.sqrt(dx*dx + dy*dy);
+		float groupLen = boxAmount * BOX_SIZE + (boxAmount-1) * BOX_MARGIN;
+		float linePos = (len - groupLen) / 2;
+		
+		for (int i=0; i < boxAmount; i++) {
+			float lerp = linePos/len;
+			boxes.add(new Box(pos.x + dx*lerp, pos.y + dy*lerp));
+			linePos += BOX_SIZE + BOX_MARGIN;
+		}
+	}
+	
+	/** Returns how many boxes there are in this group. */
+	public int size() {
+		return boxes.size();
+	}
+	public Vector2 getBoxPosition(int box) {
+		return boxes.get(box).pos;
+	}
+	/**
+	 * Returns the amount of ticks left before a box respawns. The
+	 * number keeps going down into negatives after it has respawned.
+	 */
+	public int getRespawnTime(int box) {
+		return boxes.get(box).respawnTime;
+	}
+	
+	public void update() {
+		for (int i=0; i < boxes.size(); i++) {
+			boxes.get(i).update();
+		}
+	}
+	
+	/** Returns true if a box is there and can be picked up. */
+	boolean pickable(int box) {
+		return boxes.get(box).pickable();
+	}
+	
+	/** Removes a box for a while and gives the car that hit it an item. */
+	void pickUp(int box, SimCar car) {
+		boxes.get(box).kill();
+		im.giveItemTo(car);
+	}
+	
+	/** Writes when every box respawns to a snapshot. */
+	public void writeState(SnapshotBuffer out) {
+		for (int i=0; i < boxes.size(); i++) {
+			out.putInt(boxes.get(i).respawnTime);
+		}
+	}
+	public void readState(SnapshotBuffer in) {
+		for (int i=0; i < boxes.size(); i++) {
+			boxes.get(i).respawnTime = in.getInt();
+		}
+	}
+	
+	public void setManager(ItemManager im) {
+		this.im = im;
+	}
+}
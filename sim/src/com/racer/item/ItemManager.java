@@ -0,0 +1,190 @@
+package com.racer.item;
+
+import java.util.ArrayList;
+
+import com.racer.sim.SimCar;
+import com.racer.sim.SnapshotBuffer;
+
+/**
+ * ItemManager manages all of the currently activated items. It provides functions
+ * for randomizing items and it also handles the item boxes on the track.
+ * <p>
+ * The items that are held or active are kept together at the start of an
+ * array, and an item that expires is replaced by the last one. Expired items
+ * are kept in a pool for their ItemType and given out again, so that picking
+ * up items doesn't create any garbage during a race.
+ */
+public class ItemManager {
+	private ArrayList<ItemBoxGroup> boxes;
+	// The items that are held or active. Only the first count are used.
+	private Item[] items;
+	private int count;
+	// Items that have expired and can be given out again, one pool per type.
+	private ArrayList<ArrayList<Item>> pools;
+	
+	public ItemManager() {
+		items = new Item[16];
+		pools = new ArrayList<ArrayList<Item>>();
+	}
+	
+	public void update() {
+		// Update the items that have been activated. An item that expires is
+		// replaced by the last item, which is then updated in its place.
+		int i = 0;
+		while (i < count) {
+			Item item = items[i];
+			if (item.activated() && item.update()) {
+				item.expire();
+				free(item);
+				items[i] = items[--count];
+				items[count] = null;
+			} else {
+				i++;
+			}
+		}
+		
+		// Update the item boxes on the track.
+		for (int b=0; b < boxes.size(); b++) {
+			boxes.get(b).update();
+		}
+	}
+	
+	/**
+	 * Sets up the manager for a new track.
+	 * @param boxes The item boxes on the track.
+	 * @param cars How many cars that race on the track.
+	 */
+	public void setUp(ArrayList<ItemBoxGroup> boxes, int cars) {
+		this.boxes = boxes;
+		for (ItemBoxGroup box : boxes)
+			box.setManager(this);
+		clear();
+		
+		// Create the items up front so that none are created during the race.
+		int capacity = 0;
+		while (pools.size() < ItemType.count()) {
+			pools.add(new ArrayList<Item>());
+		}
+		for (int t=0; t < ItemType.count(); t++) {
+			ItemType type = ItemType.get(t);
+			ArrayList<Item> pool = pools.get(t);
+			int wanted = cars * type.getPerCar();
+			while (pool.size() < wanted) {
+				pool.add(type.create());
+			}
+			capacity += wanted;
+		}
+		if (items.length < capacity) items = new Item[capacity];
+	}
+	
+	/** Returns how many items are held or active. */
+	public int size() {
+		return count;
+	}
+	/** Returns an item that is held or active, for 0 <= i < size. */
+	public Item get(int i) {
+		return items[i];
+	}
+	
+	/** Gives a random item to the specified car. */
+	public void giveItemTo(SimCar car) {
+		// A car can only hold one item at a time.
+		if (car.hasItem()) return;
+		
+		// Boosters are the only item so far.
+		Item item = newItem(ItemType.BOOSTER);
+		item.reset(car);
+		add(item);
+		car.giveItem(item);
+	}
+	
+	/**
+	 * Returns how many bytes writeState needs for the items and boxes.
+	 */
+	public int stateSize() {
+		int size = 4 + count*16;
+		for (int i=0; i < boxes.size(); i++) {
+			size += boxes.get(i).size()*4;
+		}
+		return size;
+	}
+	
+	/**
+	 * Writes the items that are held or active and when the boxes
+	 * respawn to a snapshot. Cars are stored as their index in the
+	 * car state buffer.
+	 */
+	public void writeState(SnapshotBuffer out) {
+		out.putInt(count);
+		for (int i=0; i < count; i++) {
+			Item item = items[i];
+			out.putInt(item.type().getId());
+			out.putInt(item.getCar().getIndex());
+			out.putInt(item.timeElapsed);
+			out.putBoolean(item.activated());
+		}
+		for (int i=0; i < boxes.size(); i++) {
+			boxes.get(i).writeState(out);
+		}
+	}
+	
+	/**
+	 * Reads a snapshot that was written by writeState on the same track.
+	 * The items are taken from the pools, just like when they are given out.
+	 * @param byIndex The cars of the race at their index in the state buffer.
+	 */
+	public void readState(SnapshotBuffer in, SimCar[] byIndex) {
+		clear();
+		for (int i=0; i < byIndex.length; i++) {
+			if (byIndex[i] != null) byIndex[i].setItem(null);
+		}
+		
+		int count = in.getInt();
+		for (int i=0; i < count; i++) {
+			ItemType type = ItemType.get(in.getInt());
+			SimCar car = byIndex[in.getInt()];
+			int time = in.getInt();
+			boolean activated = in.getBoolean();
+			
+			Item item = newItem(type);
+			item.restore(car, time, activated);
+			add(item);
+			// An item that hasn't been used is the one the car is holding.
+			if (!activated) car.setItem(item);
+		}
+		for (int i=0; i < boxes.size(); i++) {
+			boxes.get(i).readState(in);
+		}
+	}
+	
+	/** Puts an item last among the items that are held or active. */
+	private void add(Item item) {
+		if (count == items.length) {
+			Item[] grown = new Item[count * 2];
+			System.arraycopy(items, 0, grown, 0, count);
+			items = grown;
+		}
+		items[count++] = item;
+	}
+	
+	/** Puts every item that is held or active back in its pool. */
+	private void clear() {
+		for (int i=0; i < count; i++) {
+			free(items[i]);
+			items[i] = null;
+		}
+		count = 0;
+	}
+	
+	/** Takes an item of a type from its pool, or creates one if it is empty. */
+	private Item newItem(ItemType type) {
+		ArrayList<Item> pool = pools.get(type.getId());
+		if (pool.isEmpty()) return type.create();
+		return pool.remove(pool.size()-1);
+	}
+	
+	/** Keeps an expired item so that it can be given out again. */
+	private void free(Item item) {
+		pools.get(item.type().getId()).add(item);
+	}
+}
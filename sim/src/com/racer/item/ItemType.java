@@ -0,0 +1,83 @@
+package com.racer.item;
+
+import java.util.ArrayList;
+
+/**
+ * ItemType describes a kind of item and creates the items of that kind. Every
+ * type is registered once and gets an id, which is what snapshots store and
+ * what ItemManager keeps a pool of items for. A new kind of item only needs a
+ * new type here, the manager handles it like all of the others.
+ */
+public abstract class ItemType {
+	private static final ArrayList<ItemType> types = new ArrayList<ItemType>();
+	
+	// A car can have one booster that is active and one that it is holding, and
+	// a third for when it picks one up while the previous is expiring.
+	public static final ItemType BOOSTER = register(new ItemType("Booster", 1, 3) {
+		@Override
+		protected Item create() {
+			return new Booster();
+		}
+	});
+	
+	private int id;
+	private final String name;
+	private final int icon;
+	private final int perCar;
+	
+	/**
+	 * Creates a new type. It has to be registered before it is used.
+	 * @param name The name of the type.
+	 * @param icon The index of the icon of the type in the item texture.
+	 * @param perCar How many items of the type to create for every car before
+	 *               a race, so that none have to be created during it.
+	 */
+	protected ItemType(String name, int icon, int perCar) {
+		this.name = name;
+		this.icon = icon;
+		this.perCar = perCar;
+	}
+	
+	/**
+	 * Adds a type to the registry and gives it the next id.
+	 * @return The type.
+	 */
+	public static ItemType register(ItemType type) {
+		type.id = types.size();
+		types.add(type);
+		return type;
+	}
+	
+	/** Returns the type with an id. */
+	public static ItemType get(int id) {
+		if (id < 0 || id >= types.size()) {
+			throw new IllegalArgumentException("Unknown item type " + id);
+		}
+		return types.get(id);
+	}
+	/** Returns how many types there are. The ids go from 0 to count-1. */
+	public static int count() {
+		return types.size();
+	}
+	
+	/** Creates a new item of this type, which isn't given to any car yet. */
+	protected abstract Item create();
+	
+	public int getId() {
+		return id;
+	}
+	public String getName() {
+		return name;
+	}
+	public int getIcon() {
+		return icon;
+	}
+	public int getPerCar() {
+		return perCar;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
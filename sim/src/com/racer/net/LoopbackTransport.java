@@ -0,0 +1,126 @@
+package com.racer.net;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * LoopbackTransport links a client and a server in the same process. The ends
+ * are created in pairs and a message sent on one end is received by the other.
+ * It never loses a message, which makes it possible to test and load test the
+ * server on one machine without any network.
+ * <p>
+ * A link can also pretend to be a slow network. Messages are then held back
+ * for a number of ticks, which are counted by calling tick, and some of them
+ * can be lost. Since the delay is counted in ticks instead of real time, a
+ * test that uses it turns out the same every time it is run.
+ */
+public class LoopbackTransport implements Transport {
+	private LoopbackTransport peer;
+	private Wire wire;
+	private ArrayList<Message> inbox;
+	// Messages that have been received and can be used again, so that a
+	// link that sends every tick doesn't create garbage every tick.
+	private ArrayList<Message> free;
+	private boolean closed;
+	
+	private static class Message {
+		byte[] data = new byte[MAX_MESSAGE];
+		int length;
+		// The tick when the message arrives.
+		int arrival;
+	}
+	
+	/**
+	 * What the two ends of a link share: the time and how the network behaves.
+	 */
+	private static class Wire {
+		int now;
+		int latency;
+		int jitter;
+		float loss;
+		Random random = new Random(0);
+	}
+	
+	private LoopbackTransport(Wire wire) {
+		this.wire = wire;
+		inbox = new ArrayList<Message>();
+		free = new ArrayList<Message>();
+	}
+	
+	/**
+	 * Creates the two ends of a link.
+	 * @return The client end. The server end is returned by getPeer.
+	 */
+	public static LoopbackTransport create() {
+		Wire wire = new Wire();
+		LoopbackTransport client = new LoopbackTransport(wire);
+		LoopbackTransport server = new LoopbackTransport(wire);
+		client.peer = server;
+		server.peer = client;
+		return client;
+	}
+	
+	/** Returns the other end of the link. */
+	public LoopbackTransport getPeer() {
+		return peer;
+	}
+	
+	/**
+	 * Makes messages take some time to arrive, in both directions.
+	 * @param ticks How many ticks every message is held back.
+	 * @param jitter Up to how many more ticks a message is held back, picked at
+	 *               random for every message. Messages can pass each other.
+	 */
+	public void setLatency(int ticks, int jitter) {
+		wire.latency = ticks;
+		wire.jitter = jitter;
+	}
+	
+	/**
+	 * Makes some of the messages get lost, in both directions.
+	 * @param loss How many of the messages that are lost, between 0 and 1.
+	 */
+	public void setLoss(float loss) {
+		wire.loss = loss;
+	}
+	
+	/**
+	 * Lets one tick pass for the link. Held back messages arrive once enough
+	 * ticks have passed. It only needs to be called on one of the ends.
+	 */
+	public void tick() {
+		wire.now++;
+	}
+	
+	@Override
+	public void send(byte[] data, int length) {
+		if (closed || peer.closed) return;
+		if (wire.loss > 0 && wire.random.nextFloat() < wire.loss) return;
+		Message m = (free.isEmpty()) ? new Message() : free.remove(free.size()-1);
+		System.arraycopy(data, 0, m.data, 0, length);
+		m.length = length;
+		m.arrival = wire.now + wire.latency;
+		if (wire.jitter > 0) m.arrival += wire.random.nextInt(wire.jitter + 1);
+		peer.inbox.add(m);
+	}
+	
+	@Override
+	public int receive(byte[] buffer) {
+		for (int i=0; i < inbox.size(); i++) {
+			Message m = inbox.get(i);
+			if (m.arrival > wire.now) continue;
+			inbox.remove(i);
+			System.arraycopy(m.data, 0, buffer, 0, m.length);
+			// The message came from the other end, so it goes back to its pool.
+			peer.free.add(m);
+			return m.length;
+		}
+		return -1;
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		inbox.clear();
+	}
+}
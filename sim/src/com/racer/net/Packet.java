@@ -0,0 +1,119 @@
+package com.racer.net;
+
+/**
+ * Packet writes and reads the values of a message in an array of bytes. Small
+ * numbers are common in the messages, so most ints are written as varints,
+ * seven bits per byte with the high bit telling if more bytes follow.
+ * <p>
+ * Messages come from the network and can be cut short or made up, so reading
+ * past the end of a message doesn't throw. It reads zeros instead and marks
+ * the message as bad, which is checked once the values have been read.
+ */
+public class Packet {
+	// The types of the messages. The type is always the first byte.
+	public static final int JOIN = 1;
+	public static final int WELCOME = 2;
+	public static final int INPUT = 3;
+	public static final int SNAPSHOT = 4;
+	
+	/** The most bytes that a varint takes. */
+	public static final int MAX_VARINT = 5;
+	
+	private byte[] data;
+	private int pos;
+	private int length;
+	private boolean bad;
+	
+	public Packet() {
+		data = new byte[Transport.MAX_MESSAGE];
+	}
+	
+	/** Returns the array that the packet is written to and read from. */
+	public byte[] data() {
+		return data;
+	}
+	/** Returns how many bytes have been written. */
+	public int length() {
+		return pos;
+	}
+	
+	/** Starts writing a new message of a type. */
+	public void begin(int type) {
+		pos = 0;
+		writeByte(type);
+	}
+	
+	/**
+	 * Starts reading a message that has been received into the array.
+	 * @param length The length of the message.
+	 * @return The type of the message.
+	 */
+	public int read(int length) {
+		this.length = length;
+		pos = 0;
+		bad = false;
+		return readByte();
+	}
+	
+	/** Returns true if there is more of the message to read. */
+	public boolean hasMore() {
+		return pos < length;
+	}
+	/** Returns how many bytes of the message are left to read. */
+	public int remaining() {
+		return Math.max(0, length - pos);
+	}
+	/**
+	 * Returns true if more was read than the message has, or a varint was
+	 * longer than MAX_VARINT bytes. What was read from a bad message should
+	 * be dropped.
+	 */
+	public boolean isBad() {
+		return bad;
+	}
+	
+	public void writeByte(int value) {
+		data[pos++] = (byte) value;
+	}
+	public int readByte() {
+		if (pos >= length) {
+			bad = true;
+			return 0;
+		}
+		return data[pos++] & 0xFF;
+	}
+	
+	public void writeInt(int value) {
+		data[pos++] = (byte) (value >>> 24);
+		data[pos++] = (byte) (value >>> 16);
+		data[pos++] = (byte) (value >>> 8);
+		data[pos++] = (byte) value;
+	}
+	public int readInt() {
+		return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+	}
+	
+	/** Writes an int as an unsigned varint, from one to five bytes. */
+	public void writeVarInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			data[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[pos++] = (byte) value;
+	}
+	public int readVarInt() {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift == MAX_VARINT * 7) {
+				bad = true;
+				return 0;
+			}
+			b = readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -0,0 +1,326 @@
+package com.racer.net;
+
+import java.util.ArrayList;
+
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.SimCar;
+import com.racer.sim.TrackData;
+
+/**
+ * RaceClient is the client side of a race on a RaceServer. It asks for a seat,
+ * sends the keys that are held down and keeps a copy of every car.
+ * <p>
+ * The snapshots from the server are always a bit old when they arrive, so the
+ * client doesn't wait for them to move its own car. It is moved right away with
+ * the same code as on the server, which is called predicting it. Every input
+ * is numbered and kept together with where the car ended up. When a snapshot
+ * says which input the server had used last, the car in the snapshot is compared
+ * with where it was predicted to be after that input. If they differ, because
+ * of a crash with another car or an input that came too late, the car is put
+ * where the server says and the inputs the server hasn't used yet are replayed.
+ * <p>
+ * The other cars are drawn a few ticks back in time instead, between two
+ * snapshots that have already arrived, so that they move smoothly even when a
+ * snapshot is late or lost.
+ */
+public class RaceClient {
+	// How many inputs are kept to be replayed. It limits how many ticks
+	// the snapshots can take to come back.
+	private static final int INPUT_HISTORY = 128;
+	// How many of the newest inputs every input message repeats.
+	private static final int REPEATED_INPUTS = 4;
+	// How many ticks behind the newest snapshot the other cars are drawn.
+	private static final int VIEW_DELAY = 3;
+	// If the view is this far from where it should be, it jumps there.
+	private static final int MAX_VIEW_DRIFT = 30;
+	
+	private Transport link;
+	private TrackData track;
+	private Packet packet;
+	
+	private int seat = -1;
+	private int laps;
+	private CarStateBuffer states;
+	private ArrayList<SimCar> cars;
+	private SnapshotHistory history;
+	// The tick of the newest snapshot, or -1 before the first one.
+	private int snapshotTick = -1;
+	// The number of the last input that the server had used in that snapshot.
+	private int ackedInput;
+	
+	private int inputSeq;
+	private int input;
+	private int[] inputs;
+	// Where the car was predicted to be after every input, with the number
+	// of the input as tick.
+	private SnapshotHistory predicted;
+	// The tick that the other cars are drawn at.
+	private int viewTick = -1;
+	
+	private int corrections;
+	private int checkedSnapshots;
+	private float correctionDistance;
+	private int replayedTicks;
+	private long replayNanos;
+	private long maxReplayNanos;
+	
+	/**
+	 * Creates a client that joins the race on the other end of a link.
+	 * @param link The client end of the link to the server.
+	 * @param track The track of the race, loaded from the same file as on the server.
+	 */
+	public RaceClient(Transport link, TrackData track) {
+		this.link = link;
+		this.track = track;
+		packet = new Packet();
+		cars = new ArrayList<SimCar>();
+		inputs = new int[INPUT_HISTORY];
+		predicted = new SnapshotHistory(1, INPUT_HISTORY);
+	}
+	
+	/** Returns the seat of this client, or -1 if it hasn't gotten one yet. */
+	public int getSeat() {
+		return seat;
+	}
+	public int getLaps() {
+		return laps;
+	}
+	/**
+	 * Returns the cars of the race. The car of this client is where it has been
+	 * predicted to be, the others are where they were a few ticks ago.
+	 */
+	public ArrayList<SimCar> getCars() {
+		return cars;
+	}
+	/** Returns the car of this client, or null if it hasn't gotten one yet. */
+	public SimCar getCar() {
+		return (seat < 0) ? null : cars.get(seat);
+	}
+	public CarStateBuffer getStates() {
+		return states;
+	}
+	/** Returns the tick of the newest snapshot, or -1 if none has arrived. */
+	public int getSnapshotTick() {
+		return snapshotTick;
+	}
+	/** Returns the number of the newest input that the server had used in the snapshot. */
+	public int getAckedInput() {
+		return ackedInput;
+	}
+	/** Returns the number of the last input that was sent. */
+	public int getInputSeq() {
+		return inputSeq;
+	}
+	
+	/** Returns how many snapshots have been compared with the predicted car. */
+	public int getCheckedSnapshots() {
+		return checkedSnapshots;
+	}
+	/** Returns how many times the predicted car had to be corrected. */
+	public int getCorrections() {
+		return corrections;
+	}
+	/** Returns how far the predicted car was from the server's car, summed over all corrections. */
+	public float getCorrectionDistance() {
+		return correctionDistance;
+	}
+	/** Returns how many ticks have been simulated again after corrections. */
+	public int getReplayedTicks() {
+		return replayedTicks;
+	}
+	/** Returns the total time spent replaying inputs, in nanoseconds. */
+	public long getReplayNanos() {
+		return replayNanos;
+	}
+	/** Returns the longest time a single correction took, in nanoseconds. */
+	public long getMaxReplayNanos() {
+		return maxReplayNanos;
+	}
+	
+	/**
+	 * Sets the keys that are held down. They are used the next time the client updates.
+	 * @param bits The UP, DOWN, LEFT, RIGHT and ITEM bits of the CarStateBuffer.
+	 */
+	public void setInput(int bits) {
+		input = bits;
+	}
+	
+	/**
+	 * Runs one tick on the client. It reads the messages from the server,
+	 * moves the car of this client with the keys that are held down and sends
+	 * them to the server, and moves the other cars one tick forward in time.
+	 * Until the client has a seat it asks the server for one instead.
+	 */
+	public void update() {
+		receive();
+		
+		if (seat < 0) {
+			packet.begin(Packet.JOIN);
+			link.send(packet.data(), packet.length());
+			return;
+		}
+		
+		inputSeq++;
+		inputs[inputSeq % INPUT_HISTORY] = input;
+		if (snapshotTick >= 0) {
+			SimCar car = cars.get(seat);
+			predict(car, input);
+			predicted.capture(inputSeq, 0, car);
+			car.updateSegment();
+		}
+		
+		int count = Math.min(REPEATED_INPUTS, inputSeq);
+		packet.begin(Packet.INPUT);
+		packet.writeVarInt(inputSeq);
+		packet.writeVarInt(snapshotTick + 1);
+		packet.writeVarInt(count);
+		for (int k=inputSeq - count + 1; k <= inputSeq; k++) {
+			packet.writeByte(inputs[k % INPUT_HISTORY]);
+		}
+		link.send(packet.data(), packet.length());
+		
+		updateView();
+	}
+	
+	/**
+	 * Moves a car one tick like the server would. Items are left to the server.
+	 */
+	private void predict(SimCar car, int bits) {
+		car.move((bits & CarStateBuffer.UP) != 0, (bits & CarStateBuffer.DOWN) != 0,
+				(bits & CarStateBuffer.LEFT) != 0, (bits & CarStateBuffer.RIGHT) != 0);
+	}
+	
+	private void receive() {
+		int length;
+		while ((length = link.receive(packet.data())) >= 0) {
+			int type = packet.read(length);
+			if (type == Packet.WELCOME) {
+				int seat = packet.readVarInt();
+				int numCars = packet.readVarInt();
+				int laps = packet.readVarInt();
+				// A seat that is out of range would leave the client unseated,
+				// and every later welcome would add more cars.
+				boolean fits = numCars > 0 && numCars <= RaceServer.maxSeats() && seat >= 0 && seat < numCars;
+				if (!packet.isBad() && fits) welcome(seat, numCars, laps);
+			} else if (type == Packet.SNAPSHOT && seat >= 0) {
+				int tick = packet.readVarInt();
+				int distance = packet.readVarInt();
+				int seq = packet.readVarInt();
+				// Snapshots that arrive after a newer one are of no use.
+				if (packet.isBad() || tick <= snapshotTick) continue;
+				int base = (distance == 0) ? -1 : tick - distance;
+				if (!history.readDelta(packet, tick, base)) continue;
+				
+				snapshotTick = tick;
+				ackedInput = seq;
+				reconcile();
+			}
+		}
+	}
+	
+	/**
+	 * Compares the car of this client in the newest snapshot with where it
+	 * was predicted to be, and corrects the prediction if they differ.
+	 */
+	private void reconcile() {
+		SimCar car = cars.get(seat);
+		boolean wasPredicted = ackedInput > 0 && predicted.has(ackedInput);
+		if (wasPredicted) {
+			checkedSnapshots++;
+			if (history.sameMovement(snapshotTick, seat, predicted, ackedInput, 0)) {
+				// The prediction was right, but the laps and the rank are only
+				// known by the server.
+				car.rank = history.getRank(snapshotTick, seat);
+				car.setLaps(history.getLaps(snapshotTick, seat));
+				return;
+			}
+			corrections++;
+			correctionDistance += history.distance(snapshotTick, seat, predicted, ackedInput, 0);
+		}
+		
+		long start = System.nanoTime();
+		history.apply(snapshotTick, seat, car);
+		// The inputs that have been sent after the one in the snapshot are
+		// simulated again, starting from where the server says the car was.
+		int from = Math.max(ackedInput + 1, inputSeq - INPUT_HISTORY + 1);
+		for (int k=from; k <= inputSeq; k++) {
+			predict(car, inputs[k % INPUT_HISTORY]);
+			predicted.capture(k, 0, car);
+		}
+		if (from <= inputSeq) car.updateSegment();
+		if (!wasPredicted) return;
+		
+		long time = System.nanoTime() - start;
+		replayedTicks += inputSeq - from + 1;
+		replayNanos += time;
+		if (time > maxReplayNanos) maxReplayNanos = time;
+	}
+	
+	/**
+	 * Moves the view of the other cars one tick forward. They are set to where
+	 * they were at the view tick, which is kept a little behind the newest
+	 * snapshot. A tick that no snapshot arrived for is interpolated from the
+	 * snapshots around it.
+	 */
+	private void updateView() {
+		if (snapshotTick < 0) return;
+		int target = snapshotTick - VIEW_DELAY;
+		if (viewTick < 0 || Math.abs(viewTick - target) > MAX_VIEW_DRIFT) {
+			viewTick = target;
+		} else if (viewTick < target - VIEW_DELAY) {
+			// The view has fallen far behind, so it catches up a tick.
+			viewTick += 2;
+		} else if (viewTick < snapshotTick) {
+			viewTick++;
+		}
+		// Otherwise no snapshot has arrived after the view, so it waits for one.
+		
+		int from = viewTick;
+		while (from > snapshotTick - SnapshotHistory.SIZE && !history.has(from)) {
+			from--;
+		}
+		int to = viewTick;
+		while (to < snapshotTick && !history.has(to)) {
+			to++;
+		}
+		if (!history.has(from)) from = to;
+		if (!history.has(to)) return;
+		
+		float t = (to == from) ? 1 : (float)(viewTick - from) / (to - from);
+		for (int i=0; i < cars.size(); i++) {
+			if (i == seat) continue;
+			history.interpolate(from, to, t, i, cars.get(i));
+			cars.get(i).rank = history.getRank(snapshotTick, i);
+		}
+	}
+	
+	/**
+	 * Sets up the copies of the cars once the server has given a seat.
+	 */
+	private void welcome(int seat, int numCars, int laps) {
+		if (this.seat >= 0) return;
+		this.seat = seat;
+		this.laps = laps;
+		states = new CarStateBuffer(numCars);
+		for (int i=0; i < numCars; i++) {
+			SimCar c = createCar(states, i);
+			c.setTrack(track);
+			cars.add(c);
+		}
+		history = new SnapshotHistory(numCars);
+	}
+	
+	/**
+	 * Creates one of the copies of the cars. It can be overridden to create
+	 * cars that can be drawn.
+	 * @param states The state buffer that the car should be added to.
+	 * @param index Which car of the race it is.
+	 */
+	protected SimCar createCar(CarStateBuffer states, int index) {
+		return new SimCar(states);
+	}
+	
+	public void close() {
+		link.close();
+	}
+}
@@ -0,0 +1,331 @@
+package com.racer.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.Driver;
+import com.racer.sim.RaceState;
+import com.racer.sim.SimCar;
+import com.racer.sim.Simulation;
+import com.racer.sim.TickClock;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * RaceServer runs a race without a window and is the one that decides what
+ * happens in it. Every car is a seat that a client can take. The clients send
+ * the keys they hold down, and the server sends them the state of all of the
+ * cars back, as the difference to the last snapshot that they said they got.
+ * Seats that no client has are driven by the AI.
+ */
+public class RaceServer {
+	// A client that hasn't sent anything for this many ticks has left.
+	private static final int TIMEOUT = TickClock.TICKS_PER_SECOND * 5;
+	// How many inputs a client can be ahead of the server. The oldest are
+	// skipped if more arrive, so that the delay doesn't keep growing.
+	private static final int MAX_QUEUED = 8;
+	// How far ahead of the newest queued input an input can be. A client
+	// that has been quiet for longer than this has timed out anyway.
+	private static final int MAX_AHEAD = TIMEOUT;
+	// The type and the three varints that a snapshot starts with.
+	private static final int SNAPSHOT_HEADER = 1 + 3 * Packet.MAX_VARINT;
+	
+	private TrackData track;
+	private int laps;
+	private CarStateBuffer states;
+	private ArrayList<SimCar> cars;
+	private ArrayList<Driver> drivers;
+	private RaceState race;
+	private Simulation sim;
+	private boolean started;
+	
+	private Client[] seats;
+	private SnapshotHistory history;
+	private Packet packet;
+	private int tick;
+	// How many ticks there are between the snapshots that are sent.
+	private int sendInterval = 1;
+	private long bytesSent;
+	
+	/**
+	 * A client that has taken a seat.
+	 */
+	private static class Client {
+		Transport link;
+		// The newest snapshot that the client has said it got, or -1.
+		int ack = -1;
+		// The number of the newest input that has been used.
+		int inputSeq;
+		int lastHeard;
+		
+		// The inputs that have arrived but not been used yet. Every tick
+		// uses one of them, in the order they were sent.
+		int[] queuedSeq = new int[MAX_QUEUED];
+		int[] queuedBits = new int[MAX_QUEUED];
+		int first;
+		int queued;
+		// The number of the newest input that has been queued.
+		int lastQueued;
+		
+		Client(Transport link, int tick) {
+			this.link = link;
+			lastHeard = tick;
+		}
+		
+		void queue(int seq, int bits) {
+			if (seq <= lastQueued) return;
+			if (queued == MAX_QUEUED) {
+				first = (first + 1) % MAX_QUEUED;
+				queued--;
+			}
+			int slot = (first + queued) % MAX_QUEUED;
+			queuedSeq[slot] = seq;
+			queuedBits[slot] = bits;
+			queued++;
+			lastQueued = seq;
+		}
+	}
+	
+	/**
+	 * Creates a server for a race.
+	 * @param track The track to race on.
+	 * @param laps How many laps the race is.
+	 * @param numSeats How many cars there are in the race. A snapshot of all
+	 *                 of them has to fit in one message, see maxSeats.
+	 */
+	public RaceServer(TrackData track, int laps, int numSeats) {
+		if (numSeats > maxSeats()) {
+			throw new IllegalArgumentException(numSeats + " seats don't fit in a snapshot, the most is " + maxSeats());
+		}
+		this.track = track;
+		this.laps = laps;
+		states = new CarStateBuffer(numSeats);
+		cars = new ArrayList<SimCar>();
+		drivers = new ArrayList<Driver>();
+		for (int i=0; i < numSeats; i++) {
+			SimCar c = new SimCar(states);
+			cars.add(c);
+			drivers.add(new Driver(false, c, track));
+		}
+		race = new RaceState();
+		sim = new Simulation(states, cars);
+		sim.setUp(track, drivers, race);
+		
+		seats = new Client[numSeats];
+		history = new SnapshotHistory(numSeats);
+		packet = new Packet();
+	}
+	
+	/**
+	 * Returns the most seats that a race can have. A snapshot that is sent
+	 * whole has to fit in Transport.MAX_MESSAGE even when every car has moved.
+	 */
+	public static int maxSeats() {
+		int seats = 0;
+		while (SNAPSHOT_HEADER + SnapshotHistory.maxDeltaSize(seats + 1) <= Transport.MAX_MESSAGE) {
+			seats++;
+		}
+		return seats;
+	}
+	
+	public Simulation getSimulation() {
+		return sim;
+	}
+	public RaceState getRace() {
+		return race;
+	}
+	/** Returns the number of the last tick that has been simulated. */
+	public int getTick() {
+		return tick;
+	}
+	/** Returns how many bytes have been sent to the clients in total. */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+	
+	/**
+	 * Sets how often snapshots are sent.
+	 * @param ticks How many ticks there should be between the snapshots.
+	 */
+	public void setSendInterval(int ticks) {
+		sendInterval = ticks;
+	}
+	
+	/**
+	 * Gives a client a free seat.
+	 * @param link The server end of the link to the client.
+	 * @return The seat, or -1 if the race is full.
+	 */
+	public int connect(Transport link) {
+		for (int s=0; s < seats.length; s++) {
+			if (seats[s] == null) {
+				seats[s] = new Client(link, tick);
+				if (started) race.addPlayer(drivers.get(s));
+				return s;
+			}
+		}
+		link.close();
+		return -1;
+	}
+	
+	/** Returns how many clients have a seat. */
+	public int clients() {
+		int count = 0;
+		for (int s=0; s < seats.length; s++) {
+			if (seats[s] != null) count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Starts the race. The seats that no client has are driven by the AI
+	 * until someone takes them.
+	 */
+	public void start() {
+		race.beginNewRace(drivers, laps, track.getGoalLineWidth());
+		for (int s=0; s < seats.length; s++) {
+			if (seats[s] == null) race.removePlayer(drivers.get(s));
+		}
+		started = true;
+	}
+	
+	/**
+	 * Reads what the clients have sent and, if the race has started,
+	 * simulates one tick and sends the clients a snapshot of it.
+	 */
+	public void update() {
+		receive();
+		if (!started) return;
+		
+		for (int s=0; s < seats.length; s++) {
+			Client c = seats[s];
+			if (c == null || c.queued == 0) continue;
+			// The car keeps the keys it had if no input has arrived in time.
+			int bits = c.queuedBits[c.first];
+			c.inputSeq = c.queuedSeq[c.first];
+			c.first = (c.first + 1) % MAX_QUEUED;
+			c.queued--;
+			drivers.get(s).setInput((bits & CarStateBuffer.UP) != 0,
+					(bits & CarStateBuffer.DOWN) != 0, (bits & CarStateBuffer.LEFT) != 0,
+					(bits & CarStateBuffer.RIGHT) != 0, (bits & CarStateBuffer.ITEM) != 0);
+		}
+		sim.tick();
+		tick++;
+		history.capture(tick, cars);
+		if (tick % sendInterval == 0) {
+			for (int s=0; s < seats.length; s++) {
+				if (seats[s] != null) sendSnapshot(seats[s]);
+			}
+		}
+	}
+	
+	private void receive() {
+		byte[] data = packet.data();
+		for (int s=0; s < seats.length; s++) {
+			Client c = seats[s];
+			if (c == null) continue;
+			
+			int length;
+			while ((length = c.link.receive(data)) >= 0) {
+				c.lastHeard = tick;
+				int type = packet.read(length);
+				if (type == Packet.JOIN) {
+					// The welcome may have been lost, so it is sent every time.
+					packet.begin(Packet.WELCOME);
+					packet.writeVarInt(s);
+					packet.writeVarInt(seats.length);
+					packet.writeVarInt(laps);
+					c.link.send(data, packet.length());
+				} else if (type == Packet.INPUT) {
+					int seq = packet.readVarInt();
+					int ack = packet.readVarInt() - 1;
+					int count = packet.readVarInt();
+					// A message that is cut short or makes no sense is dropped.
+					if (packet.isBad() || count < 0 || count > packet.remaining()
+							|| seq - c.lastQueued > MAX_AHEAD || ack > tick) continue;
+					if (ack > c.ack) c.ack = ack;
+					// Every message repeats the last few inputs in case one was
+					// lost. The ones that have already been queued are skipped,
+					// and only the last MAX_QUEUED could be queued at all.
+					int skip = Math.max(0, count - MAX_QUEUED);
+					for (int k=0; k < count; k++) {
+						int bits = packet.readByte();
+						if (k >= skip) c.queue(seq - count + 1 + k, bits);
+					}
+				}
+			}
+			if (tick - c.lastHeard > TIMEOUT) disconnect(s);
+		}
+	}
+	
+	private void disconnect(int seat) {
+		seats[seat].link.close();
+		seats[seat] = null;
+		if (started) race.removePlayer(drivers.get(seat));
+	}
+	
+	private void sendSnapshot(Client c) {
+		int base = (c.ack >= 0 && tick - c.ack < SnapshotHistory.SIZE && history.has(c.ack)) ? c.ack : -1;
+		packet.begin(Packet.SNAPSHOT);
+		packet.writeVarInt(tick);
+		packet.writeVarInt((base < 0) ? 0 : tick - base);
+		packet.writeVarInt(c.inputSeq);
+		history.writeDelta(packet, tick, base);
+		c.link.send(packet.data(), packet.length());
+		bytesSent += packet.length();
+	}
+	
+	/**
+	 * Runs a race server on the LAN. Clients can join until the race is
+	 * full or the time to wait for them has passed, and then it starts.
+	 * Arguments: [track file] [port] [seats] [seconds to wait for clients]
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File file = new File(args.length > 0 ? args[0] : "tracks/Test Track.track");
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : UdpHost.DEFAULT_PORT;
+		int numSeats = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int wait = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+		
+		Track t = TrackLoader.loadTrack(file);
+		if (t == null) {
+			System.err.println("Could not load " + file);
+			System.exit(1);
+		}
+		RaceServer server = new RaceServer(new TrackData(t), t.laps, numSeats);
+		UdpHost host = new UdpHost(port);
+		System.out.println("Waiting for clients on port " + port);
+		
+		long tickNanos = 1000000000L / TickClock.TICKS_PER_SECOND;
+		long startAt = System.nanoTime() + wait * 1000000000L;
+		long next = System.nanoTime();
+		while (!server.started || !server.race.finished()) {
+			Transport link;
+			while ((link = host.accept()) != null) {
+				int seat = server.connect(link);
+				if (seat < 0) {
+					host.deny(link);
+					System.out.println("A client was turned away, the race is full");
+				} else {
+					System.out.println("A client took seat " + seat);
+				}
+			}
+			if (!server.started && (server.clients() == numSeats || System.nanoTime() > startAt)) {
+				System.out.println("Starting with " + server.clients() + " clients");
+				server.start();
+			}
+			server.update();
+			if (server.started && server.clients() == 0) {
+				System.out.println("Every client has left");
+				break;
+			}
+			
+			next += tickNanos;
+			long sleep = next - System.nanoTime();
+			if (sleep > 0) Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+		}
+		host.close();
+	}
+}
@@ -0,0 +1,254 @@
+package com.racer.net;
+
+import java.util.ArrayList;
+
+import com.racer.sim.SimCar;
+
+/**
+ * SnapshotHistory keeps the state of every car for the last few snapshots that
+ * were sent or received. A snapshot is sent as the difference to an older one
+ * that the client has said it got, so both ends need to keep the old ones.
+ * <p>
+ * Every value of a car is kept as the bits of an int. A car is written as a
+ * mask of the values that differ from the base snapshot, followed by those
+ * values xored with the base. Cars that stand still cost a single byte, and a
+ * value that only changed a little has zeros in its high bits, which makes
+ * its varint shorter.
+ */
+public class SnapshotHistory {
+	/** How many snapshots are kept if nothing else is said. */
+	public static final int SIZE = 32;
+	
+	private static final int POS_X = 0;
+	private static final int POS_Y = 1;
+	private static final int VEL_X = 2;
+	private static final int VEL_Y = 3;
+	private static final int ANGLE = 4;
+	private static final int SPEED = 5;
+	private static final int TURNING_FRAME = 6;
+	private static final int SEG = 7;
+	private static final int LAPS = 8;
+	private static final int RANK = 9;
+	private static final int LOCKED = 10;
+	private static final int FIELDS = 11;
+	
+	private int cars;
+	private int size;
+	private int[] ticks;
+	private int[][] values;
+	// The values of a snapshot that is written without a base.
+	private int[] zeros;
+	
+	/**
+	 * Creates a history of the last SIZE snapshots for a number of cars.
+	 */
+	public SnapshotHistory(int cars) {
+		this(cars, SIZE);
+	}
+	
+	/**
+	 * Creates a history for a number of cars.
+	 * @param size How many snapshots to keep.
+	 */
+	public SnapshotHistory(int cars, int size) {
+		this.cars = cars;
+		this.size = size;
+		ticks = new int[size];
+		values = new int[size][cars * FIELDS];
+		zeros = new int[cars * FIELDS];
+		for (int i=0; i < size; i++) {
+			ticks[i] = -1;
+		}
+	}
+	
+	/** Returns true if the snapshot of a tick is still kept. */
+	public boolean has(int tick) {
+		return tick >= 0 && ticks[tick % size] == tick;
+	}
+	
+	/** Forgets every snapshot. */
+	public void clear() {
+		for (int i=0; i < size; i++) {
+			ticks[i] = -1;
+		}
+	}
+	
+	/**
+	 * Stores the state of the cars as the snapshot of a tick.
+	 */
+	public void capture(int tick, ArrayList<? extends SimCar> cars) {
+		for (int i=0; i < this.cars; i++) {
+			capture(tick, i, cars.get(i));
+		}
+	}
+	
+	/**
+	 * Stores the state of a single car in the snapshot of a tick. The
+	 * other cars in the snapshot keep what they had.
+	 * @param car The index of the car in the snapshot.
+	 */
+	public void capture(int tick, int car, SimCar c) {
+		int slot = tick % size;
+		int[] v = values[slot];
+		int k = car * FIELDS;
+		v[k + POS_X] = Float.floatToRawIntBits(c.getPosition2().x);
+		v[k + POS_Y] = Float.floatToRawIntBits(c.getPosition2().y);
+		v[k + VEL_X] = Float.floatToRawIntBits(c.getVelocity().x);
+		v[k + VEL_Y] = Float.floatToRawIntBits(c.getVelocity().y);
+		v[k + ANGLE] = Float.floatToRawIntBits(c.getAngle());
+		v[k + SPEED] = Float.floatToRawIntBits(c.getSpeed());
+		v[k + TURNING_FRAME] = c.getTurningFrame();
+		v[k + SEG] = c.getSeg();
+		v[k + LAPS] = c.getTrueLaps();
+		v[k + RANK] = c.rank;
+		v[k + LOCKED] = c.isLocked() ? 1 : 0;
+		ticks[slot] = tick;
+	}
+	
+	/** Returns the rank of a car in a snapshot. */
+	public int getRank(int tick, int car) {
+		return values[tick % size][car * FIELDS + RANK];
+	}
+	/** Returns how many laps a car had driven in a snapshot. */
+	public int getLaps(int tick, int car) {
+		return values[tick % size][car * FIELDS + LAPS];
+	}
+	
+	/**
+	 * Sets the cars to the state of a snapshot.
+	 */
+	public void apply(int tick, ArrayList<? extends SimCar> cars) {
+		for (int i=0; i < this.cars; i++) {
+			apply(tick, i, cars.get(i));
+		}
+	}
+	
+	/**
+	 * Sets a single car to its state in a snapshot.
+	 * @param car The index of the car in the snapshot.
+	 */
+	public void apply(int tick, int car, SimCar c) {
+		int[] v = values[tick % size];
+		int k = car * FIELDS;
+		c.setState(Float.intBitsToFloat(v[k + POS_X]), Float.intBitsToFloat(v[k + POS_Y]),
+				Float.intBitsToFloat(v[k + VEL_X]), Float.intBitsToFloat(v[k + VEL_Y]),
+				Float.intBitsToFloat(v[k + ANGLE]), Float.intBitsToFloat(v[k + SPEED]),
+				v[k + TURNING_FRAME], v[k + SEG], v[k + LAPS], v[k + LOCKED] != 0);
+		c.rank = v[k + RANK];
+	}
+	
+	/**
+	 * Sets a single car to a state between two snapshots. The position,
+	 * velocity and angle are interpolated and the rest is taken from the
+	 * snapshot that is nearest.
+	 * @param from The earlier snapshot.
+	 * @param to The later snapshot.
+	 * @param t How far between the two the state is, between 0 and 1.
+	 * @param car The index of the car in the snapshots.
+	 */
+	public void interpolate(int from, int to, float t, int car, SimCar c) {
+		int[] a = values[from % size];
+		int[] b = values[to % size];
+		int[] near = (t < 0.5f) ? a : b;
+		int k = car * FIELDS;
+		c.setState(lerp(a, b, k + POS_X, t), lerp(a, b, k + POS_Y, t),
+				lerp(a, b, k + VEL_X, t), lerp(a, b, k + VEL_Y, t),
+				lerp(a, b, k + ANGLE, t), lerp(a, b, k + SPEED, t),
+				near[k + TURNING_FRAME], near[k + SEG], near[k + LAPS], near[k + LOCKED] != 0);
+	}
+	
+	private static float lerp(int[] a, int[] b, int field, float t) {
+		float from = Float.intBitsToFloat(a[field]);
+		return from + (Float.intBitsToFloat(b[field]) - from) * t;
+	}
+	
+	/**
+	 * Checks if a car moves exactly the same way in two snapshots, which can
+	 * be kept in different histories. The lap and the rank are not compared
+	 * since they don't change how the car moves.
+	 * @return True if the position, velocity, speed, angle, turning and lock are the same.
+	 */
+	public boolean sameMovement(int tick, int car, SnapshotHistory other, int otherTick, int otherCar) {
+		int[] v = values[tick % size];
+		int[] o = other.values[otherTick % other.size];
+		int k = car * FIELDS;
+		int ok = otherCar * FIELDS;
+		for (int f=POS_X; f <= TURNING_FRAME; f++) {
+			if (v[k + f] != o[ok + f]) return false;
+		}
+		return v[k + LOCKED] == o[ok + LOCKED];
+	}
+	
+	/**
+	 * Returns the distance between where a car is in two snapshots, which
+	 * can be kept in different histories.
+	 */
+	public float distance(int tick, int car, SnapshotHistory other, int otherTick, int otherCar) {
+		int[] v = values[tick % size];
+		int[] o = other.values[otherTick % other.size];
+		int k = car * FIELDS;
+		int ok = otherCar * FIELDS;
+		float dx = Float.intBitsToFloat(v[k + POS_X]) - Float.intBitsToFloat(o[ok + POS_X]);
+		float dy = Float.intBitsToFloat(v[k + POS_Y]) - Float.intBitsToFloat(o[ok + POS_Y]);
+		return (float)Math.sqrt(dx*dx + dy*dy);
+	}
+	
+	/**
+	 * Returns the most bytes that writeDelta can write for a number of cars,
+	 * which is when every value of every car has changed.
+	 */
+	public static int maxDeltaSize(int cars) {
+		int mask = (FIELDS + 6) / 7;
+		return Packet.MAX_VARINT + cars * (mask + FIELDS * Packet.MAX_VARINT);
+	}
+	
+	/**
+	 * Writes a snapshot as the difference to an older one.
+	 * @param tick The snapshot to write.
+	 * @param base The snapshot to write it against, or -1 to write all of it.
+	 */
+	public void writeDelta(Packet out, int tick, int base) {
+		int[] v = values[tick % size];
+		int[] b = (base < 0) ? zeros : values[base % size];
+		out.writeVarInt(cars);
+		for (int i=0; i < cars; i++) {
+			int k = i * FIELDS;
+			int mask = 0;
+			for (int f=0; f < FIELDS; f++) {
+				if (v[k + f] != b[k + f]) mask |= 1 << f;
+			}
+			out.writeVarInt(mask);
+			for (int f=0; f < FIELDS; f++) {
+				if ((mask & (1 << f)) != 0) out.writeVarInt(v[k + f] ^ b[k + f]);
+			}
+		}
+	}
+	
+	/**
+	 * Reads a snapshot that was written by writeDelta and stores it.
+	 * @param tick The tick of the snapshot.
+	 * @param base The snapshot it was written against, or -1 if it was written whole.
+	 * @return False if the base is no longer kept, which means it can't be read,
+	 *         or if the message was cut short.
+	 */
+	public boolean readDelta(Packet in, int tick, int base) {
+		if (base >= 0 && !has(base)) return false;
+		if (in.readVarInt() != cars) return false;
+		
+		int slot = tick % size;
+		int[] v = values[slot];
+		int[] b = (base < 0) ? zeros : values[base % size];
+		// The slot is only kept if all of the snapshot could be read.
+		ticks[slot] = -1;
+		for (int i=0; i < cars; i++) {
+			int k = i * FIELDS;
+			int mask = in.readVarInt();
+			for (int f=0; f < FIELDS; f++) {
+				v[k + f] = ((mask & (1 << f)) != 0) ? in.readVarInt() ^ b[k + f] : b[k + f];
+			}
+		}
+		if (in.isBad()) return false;
+		ticks[slot] = tick;
+		return true;
+	}
+}
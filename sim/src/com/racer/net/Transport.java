@@ -0,0 +1,29 @@
+package com.racer.net;
+
+/**
+ * A Transport is one end of a link between a client and the server. Messages
+ * are sent and received whole, but like packets on a real network they may be
+ * late, lost or arrive out of order, so nothing that is sent over it can
+ * depend on another message having arrived.
+ */
+public interface Transport {
+	/** The largest message that can be sent, in bytes. */
+	public static final int MAX_MESSAGE = 8192;
+	
+	/**
+	 * Sends a message. The data is copied, so the array can be reused right away.
+	 * @param data The message.
+	 * @param length The length of the message in bytes.
+	 */
+	void send(byte[] data, int length);
+	
+	/**
+	 * Takes the next message that has arrived, without waiting for one.
+	 * @param buffer The array to copy the message to. It must fit MAX_MESSAGE bytes.
+	 * @return The length of the message, or -1 if there was none.
+	 */
+	int receive(byte[] buffer);
+	
+	/** Closes the link. Nothing can be sent or received after it. */
+	void close();
+}
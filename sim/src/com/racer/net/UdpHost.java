@@ -0,0 +1,205 @@
+package com.racer.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * UdpHost lets clients on the network reach a server over UDP. All clients send
+ * to the same port, and every address that asks to join becomes a link of its
+ * own. Anything else from an address that has no link is dropped, so stray
+ * packets don't take a seat. Like UDP itself, it doesn't resend messages that
+ * are lost.
+ */
+public class UdpHost {
+	public static final int DEFAULT_PORT = 27960;
+	// How long an address that has been turned away is ignored.
+	private static final long DENY_NANOS = 10 * 1000000000L;
+	
+	private DatagramChannel channel;
+	private ByteBuffer buffer;
+	private HashMap<SocketAddress, Link> links;
+	private ArrayList<Link> accepted;
+	// The addresses that are ignored, and until when.
+	private HashMap<SocketAddress, Long> denied;
+	
+	/**
+	 * The server end of the link to one client.
+	 */
+	private class Link implements Transport {
+		private SocketAddress address;
+		private ArrayDeque<byte[]> inbox = new ArrayDeque<byte[]>();
+		private boolean closed;
+		
+		Link(SocketAddress address) {
+			this.address = address;
+		}
+		
+		@Override
+		public void send(byte[] data, int length) {
+			if (closed) return;
+			UdpHost.this.send(address, data, length);
+		}
+		
+		@Override
+		public int receive(byte[] data) {
+			poll();
+			byte[] message = inbox.poll();
+			if (message == null) return -1;
+			System.arraycopy(message, 0, data, 0, message.length);
+			return message.length;
+		}
+		
+		@Override
+		public void close() {
+			closed = true;
+			links.remove(address);
+		}
+	}
+	
+	/**
+	 * Starts listening for clients.
+	 * @param port The UDP port to listen on.
+	 */
+	public UdpHost(int port) throws IOException {
+		channel = DatagramChannel.open();
+		channel.socket().bind(new InetSocketAddress(port));
+		channel.configureBlocking(false);
+		buffer = ByteBuffer.allocateDirect(Transport.MAX_MESSAGE);
+		links = new HashMap<SocketAddress, Link>();
+		accepted = new ArrayList<Link>();
+		denied = new HashMap<SocketAddress, Long>();
+	}
+	
+	/**
+	 * Returns a link to a client that has asked to join, or null if there is
+	 * none. The join message can be read from the link.
+	 */
+	public Transport accept() {
+		poll();
+		return (accepted.isEmpty()) ? null : accepted.remove(0);
+	}
+	
+	/** Moves the messages that have arrived to the links they were sent to. */
+	private void poll() {
+		try {
+			SocketAddress from;
+			while ((from = channel.receive(buffer)) != null) {
+				buffer.flip();
+				byte[] message = new byte[buffer.remaining()];
+				buffer.get(message);
+				buffer.clear();
+				
+				Link link = links.get(from);
+				if (link == null) {
+					if (message.length == 0 || message[0] != Packet.JOIN || isDenied(from)) continue;
+					link = new Link(from);
+					links.put(from, link);
+					accepted.add(link);
+				}
+				link.inbox.add(message);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Closes a link that has been turned away and ignores its address for a
+	 * while, so that a client that keeps asking isn't let in and turned away
+	 * again on every message.
+	 */
+	public void deny(Transport link) {
+		link.close();
+		long now = System.nanoTime();
+		Iterator<Long> it = denied.values().iterator();
+		while (it.hasNext()) {
+			if (it.next() - now < 0) it.remove();
+		}
+		denied.put(((Link) link).address, now + DENY_NANOS);
+	}
+	
+	private boolean isDenied(SocketAddress address) {
+		Long until = denied.get(address);
+		if (until == null) return false;
+		if (until - System.nanoTime() > 0) return true;
+		denied.remove(address);
+		return false;
+	}
+	
+	private void send(SocketAddress to, byte[] data, int length) {
+		buffer.clear();
+		buffer.put(data, 0, length);
+		buffer.flip();
+		try {
+			channel.send(buffer, to);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		buffer.clear();
+	}
+	
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Connects to a server on the network.
+	 * @param host The name or address of the server.
+	 * @param port The port that the server listens on.
+	 * @return The client end of the link.
+	 */
+	public static Transport connect(String host, int port) throws IOException {
+		final DatagramChannel channel = DatagramChannel.open();
+		channel.connect(new InetSocketAddress(host, port));
+		channel.configureBlocking(false);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(Transport.MAX_MESSAGE);
+		
+		return new Transport() {
+			@Override
+			public void send(byte[] data, int length) {
+				buffer.clear();
+				buffer.put(data, 0, length);
+				buffer.flip();
+				try {
+					channel.write(buffer);
+				} catch (IOException e) {
+					// Nothing is listening yet. The message is lost, like any other.
+				}
+			}
+			
+			@Override
+			public int receive(byte[] data) {
+				buffer.clear();
+				try {
+					if (channel.read(buffer) <= 0) return -1;
+				} catch (IOException e) {
+					return -1;
+				}
+				buffer.flip();
+				int length = buffer.remaining();
+				buffer.get(data, 0, length);
+				return length;
+			}
+			
+			@Override
+			public void close() {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+}
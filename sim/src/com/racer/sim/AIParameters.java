@@ -0,0 +1,51 @@
+package com.racer.sim;
+
+/**
+ * AIParameters holds the constants that decide how the AIcontroller steers.
+ * The defaults are the values that the AI was tuned with.
+ */
+public class AIParameters {
+	/** The parameters that every AIcontroller uses unless it is given others. */
+	public static final AIParameters DEFAULT = new AIParameters(10, 8, 1, 0.4f);
+	
+	private final float lookAhead;
+	private final float lookAheadTime;
+	private final float pace;
+	private final float boosterThreshold;
+	
+	/**
+	 * Creates a set of parameters.
+	 * @param lookAhead How far ahead on the racing line the car steers
+	 *                  towards when it stands still, in ground units.
+	 * @param lookAheadTime How many ticks of its velocity the car looks further
+	 *                      ahead when it is moving.
+	 * @param pace How much of the speed of the racing line to drive at.
+	 * @param boosterThreshold A booster is used when the speed drops below this
+	 *                         part of the max speed.
+	 */
+	public AIParameters(float lookAhead, float lookAheadTime, float pace, float boosterThreshold) {
+		this.lookAhead = lookAhead;
+		this.lookAheadTime = lookAheadTime;
+		this.pace = pace;
+		this.boosterThreshold = boosterThreshold;
+	}
+	
+	public float getLookAhead() {
+		return lookAhead;
+	}
+	public float getLookAheadTime() {
+		return lookAheadTime;
+	}
+	public float getPace() {
+		return pace;
+	}
+	public float getBoosterThreshold() {
+		return boosterThreshold;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("lookAhead %.2f, lookAheadTime %.2f, pace %.3f, booster %.3f",
+				lookAhead, lookAheadTime, pace, boosterThreshold);
+	}
+}
@@ -0,0 +1,132 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+/**
+ * AIScheduler decides which of the AI cars think in a tick. A car that doesn't
+ * think keeps holding the keys that it held the tick before, which are kept in
+ * the CarStateBuffer. The cars think every interval ticks, each at a different
+ * tick so that the work is spread out, but every boostedInterval ticks when
+ * they are close to a wall or another car, or when a player can see them.
+ * <p>
+ * What a car does only depends on the tick of the race and the state of the
+ * cars, so a race that is rewound or replayed turns out the same as long as
+ * the same cars are seen by the players.
+ */
+public class AIScheduler {
+	// How close a car has to be to a wall, or to another car along the
+	// track, to think more often.
+	private static final float NEAR_WALL = 3f;
+	private static final float NEAR_CAR = 3f;
+	
+	private int interval;
+	private int boostedInterval;
+	private TrackProgress progress;
+	private int tick;
+	
+	// Indexed by the index of the car in the state buffer.
+	private boolean[] boosted;
+	private boolean[] visible;
+	
+	/**
+	 * Creates a new scheduler.
+	 * @param interval How many ticks there are between the times a car thinks.
+	 * @param boostedInterval How many ticks there are between the times a car
+	 *                        that is close to something or seen thinks.
+	 */
+	public AIScheduler(int interval, int boostedInterval) {
+		this.interval = Math.max(1, interval);
+		this.boostedInterval = Math.max(1, boostedInterval);
+		boosted = new boolean[0];
+		visible = new boolean[0];
+	}
+	
+	/**
+	 * Returns a scheduler for a field of AI cars. Up to 20 cars think every
+	 * tick. Bigger fields think less often, so that the cars that aren't close
+	 * to anything think about as often in total as 20 cars would.
+	 * @param cars How many cars there are.
+	 */
+	public static AIScheduler forField(int cars) {
+		int interval = Math.max(1, cars / 20);
+		return new AIScheduler(interval, Math.max(1, interval / 2));
+	}
+	
+	public int getInterval() {
+		return interval;
+	}
+	public int getBoostedInterval() {
+		return boostedInterval;
+	}
+	
+	/**
+	 * Tells the scheduler if a player can see a car.
+	 * @param car The car.
+	 * @param seen True if it is on the screen of any player.
+	 */
+	public void setVisible(SimCar car, boolean seen) {
+		int i = car.getIndex();
+		if (i >= visible.length) {
+			boolean[] grown = new boolean[i + 1];
+			System.arraycopy(visible, 0, grown, 0, visible.length);
+			visible = grown;
+		}
+		visible[i] = seen;
+	}
+	
+	/**
+	 * Finds out which cars are close to something. Called once every tick,
+	 * before any of the cars think.
+	 * @param tick The tick of the race, see RaceState.getTicks.
+	 * @param ranking The cars sorted by how far they have driven, see RaceState.getRanking.
+	 * @param track The track the cars drive on.
+	 */
+	public void update(int tick, ArrayList<? extends SimCar> ranking, TrackData track) {
+		this.tick = tick;
+		progress = track.getProgress();
+		int size = ranking.size();
+		for (int i=0; i < size; i++) {
+			int index = ranking.get(i).getIndex();
+			if (index >= boosted.length) boosted = new boolean[index + 1];
+		}
+		
+		for (int i=0; i < size; i++) {
+			SimCar c = ranking.get(i);
+			boosted[c.getIndex()] = nearWall(c);
+		}
+		// The cars are already sorted along the track, so a car can
+		// only be close to the cars just before and after it.
+		for (int i=1; i < size; i++) {
+			SimCar a = ranking.get(i-1);
+			SimCar b = ranking.get(i);
+			if (a.getProgress() - b.getProgress() < NEAR_CAR) {
+				boosted[a.getIndex()] = true;
+				boosted[b.getIndex()] = true;
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if a car is closer to one of the ends of the
+	 * line at the end of its segment than NEAR_WALL.
+	 */
+	private boolean nearWall(SimCar car) {
+		int line = car.getSeg();
+		float x = car.getPosition2().x - progress.getStartX(line);
+		float y = car.getPosition2().y - progress.getStartY(line);
+		float length = progress.getLength(line);
+		if (length == 0) return true;
+		float along = (x*progress.getDeltaX(line) + y*progress.getDeltaY(line)) / length;
+		return along < NEAR_WALL || along > length - NEAR_WALL;
+	}
+	
+	/**
+	 * Returns true if the AI of a car should think this tick.
+	 */
+	public boolean shouldThink(SimCar car) {
+		int i = car.getIndex();
+		boolean boost = (i < boosted.length && boosted[i]) || (i < visible.length && visible[i]);
+		int every = boost ? boostedInterval : interval;
+		return (tick + i) % every == 0;
+	}
+}
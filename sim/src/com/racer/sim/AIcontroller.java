@@ -0,0 +1,185 @@
+package com.racer.sim;
+
+import java.util.Random;
+
+import com.badlogic.gdx.math.Vector2;
+import com.racer.item.ItemType;
+
+/**
+ * AIcontroller uses the current state of the track, items and cars to
+ * very smartly control AI cars.
+ *
+ */
+public class AIcontroller {
+	// The state of the random generator. It is the same generator as
+	// java.util.Random, but its state can be saved in a snapshot. Every
+	// thread has its own, so that races that are run on different threads
+	// at the same time don't change each other.
+	private static final ThreadLocal<long[]> seed = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { (new Random().nextLong() ^ 0x5DEECE66DL) & ((1L << 48) - 1) };
+		}
+	};
+	
+	// The turning frame that the car steers at when it is off by one radian.
+	private static final float STEERING = 40;
+	// How many ticks ahead the speed of the line is looked at, since the car
+	// takes a while to slow down after it starts to brake.
+	private static final float BRAKE_TICKS = 15;
+	
+	private SimCar car;
+	private TrackProgress progress;
+	private RacingLine line;
+	private AIParameters params;
+	private boolean[] keys;
+	
+	private Vector2 target;
+	
+	/**
+	 * Creates a new AI controller.
+	 * @param car The car to control.
+	 * @param track The track, whose racing line the car follows.
+	 */
+	public AIcontroller(SimCar car, TrackData track) {
+		this(car, track, AIParameters.DEFAULT);
+	}
+	
+	/**
+	 * Creates a new AI controller that steers with other parameters than the default.
+	 * @param car The car to control.
+	 * @param track The track, whose racing line the car follows.
+	 * @param params The constants to steer with.
+	 */
+	public AIcontroller(SimCar car, TrackData track, AIParameters params) {
+		this.car = car;
+		this.progress = track.getProgress();
+		this.line = track.getRacingLine();
+		this.params = params;
+		keys = new boolean[4];
+		
+		target = new Vector2();
+	}
+	
+	/**
+	 * Calculates how the car should move. The car steers towards a point a bit
+	 * ahead of it on the racing line and drives at the speed of the line.
+	 * @return An array, [up, down, left, right], telling which keys to press.
+	 */
+	public boolean[] useBrain() {
+		int seg = car.getSeg();
+		Vector2 pos = car.getPosition2();
+		float speed = car.getVelocity().len();
+		float d = line.distanceOf(progress, seg, pos.x, pos.y);
+		
+		// The point to steer towards is further ahead the faster the car goes.
+		line.pointAt(seg, d + params.getLookAhead() + params.getLookAheadTime()*speed, target);
+		float dx = target.x - pos.x;
+		float dy = target.y - pos.y;
+		float len = (float) Math.sqrt(dx*dx + dy*dy);
+		
+		// The car drives towards -(cos, sin) of its angle. The cross product
+		// is the sine of the angle from the car to the point, and it is
+		// positive if the point is counter clockwise from the car.
+		float angle = car.getAngle();
+		float fx = -(float) Math.cos(angle);
+		float fy = -(float) Math.sin(angle);
+		float cross = (len == 0) ? 0 : (fx*dy - fy*dx) / len;
+		if (fx*dx + fy*dy < 0) cross = (cross < 0) ? -1 : 1;
+		
+		// Turning left makes the angle smaller, which turns the car
+		// clockwise, so the frame to steer at has the opposite sign.
+		int wanted = Math.round(-cross * STEERING);
+		int frame = car.getTurningFrame();
+		if (wanted > frame) {
+			turnLeft();
+		} else if (wanted < frame) {
+			turnRight();
+		} else {
+			stopTurning();
+		}
+		
+		// Look up the speed where the car will be when a brake would take hold.
+		int ahead = line.pointAt(seg, d + speed*BRAKE_TICKS, target);
+		if (car.speedRatio() < 0.15f || speed < line.getSpeed(ahead) * params.getPace()) {
+			accel();
+		} else if (line.isBrakeZone(ahead)) {
+			brake();
+		} else {
+			slowDown();
+		}
+		
+		handleItem();
+		return keys;
+	}
+	
+	/** Seeds the random generator so that a race can be repeated exactly. */
+	public static void setSeed(long seed) {
+		AIcontroller.seed.get()[0] = (seed ^ 0x5DEECE66DL) & ((1L << 48) - 1);
+	}
+	
+	/** Returns the state of the random generator, so that it can be saved. */
+	public static long getRandomState() {
+		return seed.get()[0];
+	}
+	/** Puts the random generator back in a state from getRandomState. */
+	public static void setRandomState(long state) {
+		seed.get()[0] = state;
+	}
+	
+	/** Returns a random boost used for the start of every race. */
+	public static float randomStartBoost() {
+		float val = nextFloat() * 1.8f;
+		return (val > 1) ? 1 : val;
+	}
+	
+	/** Works exactly like Random.nextFloat. */
+	private static float nextFloat() {
+		long[] s = seed.get();
+		s[0] = (s[0] * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+		return (int)(s[0] >>> 24) / ((float)(1 << 24));
+	}
+	
+	private void handleItem() {
+		if (!car.hasItem()) return;
+		if (car.getItem() == ItemType.BOOSTER) {
+			if (car.speedRatio() < params.getBoosterThreshold())
+				car.useItem();
+		}
+	}
+	
+	/**
+	 * Methods for easily setting how the car should move.
+	 * @param b If the car should do the action or not.
+	 */
+	private void accel() {
+		keys[0] = true;
+		keys[1] = false;
+	}
+	private void brake() {
+		keys[0] = false;
+		keys[1] = true;
+	}
+	private void turnLeft() {
+		keys[2] = true;
+		keys[3] = false;
+	}
+	private void turnRight() {
+		keys[2] = false;
+		keys[3] = true;
+	}
+	private void stopTurning() {
+		keys[2] = false;
+		keys[3] = false;
+	}
+	
+	private boolean turning() {
+		return (keys[2] || keys[3]);
+	}
+	
+	/** Slow down without actually breaking. */
+	private void slowDown() {
+		keys[0] = false;
+		keys[1] = false;
+	}
+}
@@ -0,0 +1,463 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * CarStateBuffer holds the simulated state of many cars in parallel arrays, one
+ * array for every value. A SimCar is only a view over one index in the buffer.
+ * Keeping the state together like this means that moving all of the cars reads
+ * the memory from start to end instead of jumping between objects.
+ */
+public class CarStateBuffer {
+	// The bits of the input byte. They tell which keys a driver holds down.
+	public static final int UP = 1;
+	public static final int DOWN = 2;
+	public static final int LEFT = 4;
+	public static final int RIGHT = 8;
+	public static final int ITEM = 16;
+	
+	private static final float MAX_VEL = 0.35f;
+	static final float MAX_SPEED = -0.04f;
+	private static final float MAX_BACKING_SPEED = 0.01f;
+	private static final float TURN_SPEED = 0.03f;
+	
+	private static final float ACCELERATION = 0.00015f;
+	private static final float BACKING_ACCELERATION = 0.0001f;
+	
+	private static final float FRICTION = 0.992f;
+	private static final float BREAK_FRICTION = 0.986f;
+	private static final float BACK_BREAK_FRICTION = 0.8f;
+	
+	// The amount of frames it takes to reach max turning speed.
+	private static final int FRAMES_FOR_TURNING = 10;
+	// The distance between the front and back wheels.
+	private static final float WHEEL_DIST = 0.2f;
+	
+	private int size;
+	
+	float[] posX;
+	float[] posY;
+	float[] oldX;
+	float[] oldY;
+	float[] velX;
+	float[] velY;
+	float[] speed;
+	float[] angle;
+	float[] oldAngle;
+	int[] turningFrame;
+	int[] framesAtMaxTurning;
+	int[] framesAccelerated;
+	boolean[] locked;
+	byte[] input;
+	
+	int[] seg;
+	int[] oldSeg;
+	int[] laps;
+	boolean[] cheatedLap;
+	boolean[] completedLap;
+	float[] distToSeg;
+	float[] longestDist;
+	float[] progress;
+	
+	private ArrayList<Vector2> walls1;
+	private ArrayList<Vector2> walls2;
+	private WallGrid wallGrid;
+	
+	// Scratch space for the wall collisions, one for every thread that moves cars.
+	private Scratch[] scratch;
+	
+	// The cars that are being moved by moveJob.
+	private int[] moving;
+	private JobPool.Job moveJob;
+	
+	/**
+	 * Vectors and the list of nearby walls that the wall collision test needs.
+	 * Every thread that moves cars gets its own.
+	 */
+	private static class Scratch {
+		IntArray nearWalls = new IntArray();
+		Vector2 from = new Vector2();
+		Vector2 to = new Vector2();
+		Vector2 vel = new Vector2();
+		Vector2 hitPoint = new Vector2();
+		Vector2 wall = new Vector2();
+	}
+	
+	/**
+	 * Creates a buffer with room for a number of cars. It grows if more are added.
+	 */
+	public CarStateBuffer(int capacity) {
+		resize(Math.max(capacity, 1));
+		scratch = new Scratch[] { new Scratch() };
+		moveJob = new JobPool.Job() {
+			@Override
+			public void run(int worker, int from, int to) {
+				Scratch s = scratch[worker];
+				for (int k=from; k < to; k++) {
+					move(moving[k], s);
+				}
+			}
+		};
+	}
+	
+	private void resize(int capacity) {
+		posX = grow(posX, capacity);
+		posY = grow(posY, capacity);
+		oldX = grow(oldX, capacity);
+		oldY = grow(oldY, capacity);
+		velX = grow(velX, capacity);
+		velY = grow(velY, capacity);
+		speed = grow(speed, capacity);
+		angle = grow(angle, capacity);
+		oldAngle = grow(oldAngle, capacity);
+		turningFrame = grow(turningFrame, capacity);
+		framesAtMaxTurning = grow(framesAtMaxTurning, capacity);
+		framesAccelerated = grow(framesAccelerated, capacity);
+		locked = grow(locked, capacity);
+		input = grow(input, capacity);
+		seg = grow(seg, capacity);
+		oldSeg = grow(oldSeg, capacity);
+		laps = grow(laps, capacity);
+		cheatedLap = grow(cheatedLap, capacity);
+		completedLap = grow(completedLap, capacity);
+		distToSeg = grow(distToSeg, capacity);
+		longestDist = grow(longestDist, capacity);
+		progress = grow(progress, capacity);
+	}
+	
+	private static float[] grow(float[] a, int capacity) {
+		return (a == null) ? new float[capacity] : Arrays.copyOf(a, capacity);
+	}
+	private static int[] grow(int[] a, int capacity) {
+		return (a == null) ? new int[capacity] : Arrays.copyOf(a, capacity);
+	}
+	private static byte[] grow(byte[] a, int capacity) {
+		return (a == null) ? new byte[capacity] : Arrays.copyOf(a, capacity);
+	}
+	private static boolean[] grow(boolean[] a, int capacity) {
+		return (a == null) ? new boolean[capacity] : Arrays.copyOf(a, capacity);
+	}
+	
+	/**
+	 * Adds a new car to the buffer.
+	 * @return The index of the car.
+	 */
+	public int add() {
+		if (size == posX.length) {
+			resize(size * 2);
+		}
+		return size++;
+	}
+	
+	/** Returns how many cars there are in the buffer. */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Sets the track that the cars drive on.
+	 */
+	public void setTrack(TrackData track) {
+		walls1 = track.getLeft();
+		walls2 = track.getRight();
+		wallGrid = track.getWallGrid();
+	}
+	
+	/**
+	 * Returns how many bytes writeState needs for the cars that are in the buffer.
+	 */
+	public int stateSize() {
+		return 4 + size*18*4 + 4*SnapshotBuffer.align(size);
+	}
+	
+	/**
+	 * Writes the state of every car to a snapshot. Every value is
+	 * stored as its own array, just like it is in this buffer.
+	 */
+	public void writeState(SnapshotBuffer out) {
+		int n = size;
+		out.putInt(n);
+		out.putFloats(posX, n);
+		out.putFloats(posY, n);
+		out.putFloats(oldX, n);
+		out.putFloats(oldY, n);
+		out.putFloats(velX, n);
+		out.putFloats(velY, n);
+		out.putFloats(speed, n);
+		out.putFloats(angle, n);
+		out.putFloats(oldAngle, n);
+		out.putFloats(distToSeg, n);
+		out.putFloats(longestDist, n);
+		out.putFloats(progress, n);
+		out.putInts(turningFrame, n);
+		out.putInts(framesAtMaxTurning, n);
+		out.putInts(framesAccelerated, n);
+		out.putInts(seg, n);
+		out.putInts(oldSeg, n);
+		out.putInts(laps, n);
+		out.putBytes(input, n);
+		out.putBooleans(locked, n);
+		out.putBooleans(cheatedLap, n);
+		out.putBooleans(completedLap, n);
+	}
+	
+	/**
+	 * Reads the state of every car from a snapshot that was written by this buffer.
+	 */
+	public void readState(SnapshotBuffer in) {
+		int n = in.getInt();
+		if (n != size) {
+			throw new IllegalStateException("The snapshot has " + n + " cars, the buffer has " + size);
+		}
+		in.getFloats(posX, n);
+		in.getFloats(posY, n);
+		in.getFloats(oldX, n);
+		in.getFloats(oldY, n);
+		in.getFloats(velX, n);
+		in.getFloats(velY, n);
+		in.getFloats(speed, n);
+		in.getFloats(angle, n);
+		in.getFloats(oldAngle, n);
+		in.getFloats(distToSeg, n);
+		in.getFloats(longestDist, n);
+		in.getFloats(progress, n);
+		in.getInts(turningFrame, n);
+		in.getInts(framesAtMaxTurning, n);
+		in.getInts(framesAccelerated, n);
+		in.getInts(seg, n);
+		in.getInts(oldSeg, n);
+		in.getInts(laps, n);
+		in.getBytes(input, n);
+		in.getBooleans(locked, n);
+		in.getBooleans(cheatedLap, n);
+		in.getBooleans(completedLap, n);
+	}
+	
+	/** Sets which keys are held down for a car, as UP, DOWN, LEFT, RIGHT and ITEM bits. */
+	public void setInput(int car, int bits) {
+		input[car] = (byte) bits;
+	}
+	public int getInput(int car) {
+		return input[car];
+	}
+	
+	/**
+	 * Moves a number of cars one tick according to their input. Every car is
+	 * moved on its own, so they can be split over the threads of a pool.
+	 * @param cars The indices of the cars to move.
+	 * @param count How many of the indices to use.
+	 * @param jobs The threads to move the cars on, or null to use this thread.
+	 */
+	public void move(int[] cars, int count, JobPool jobs) {
+		if (jobs == null) {
+			for (int k=0; k < count; k++) {
+				move(cars[k], scratch[0]);
+			}
+			return;
+		}
+		if (scratch.length < jobs.threads()) {
+			Scratch[] more = Arrays.copyOf(scratch, jobs.threads());
+			for (int i=scratch.length; i < more.length; i++) {
+				more[i] = new Scratch();
+			}
+			scratch = more;
+		}
+		moving = cars;
+		jobs.run(moveJob, count);
+		moving = null;
+	}
+	
+	/** Moves a single car one tick according to its input. */
+	void move(int car) {
+		move(car, scratch[0]);
+	}
+	
+	/*
+	 * Updates the position of a car according to which buttons are held down.
+	 */
+	private void move(int i, Scratch scratch) {
+		int keys = input[i];
+		boolean up = (keys & UP) != 0;
+		boolean down = (keys & DOWN) != 0;
+		boolean left = (keys & LEFT) != 0;
+		boolean right = (keys & RIGHT) != 0;
+		
+		float speed = this.speed[i];
+		int turningFrame = this.turningFrame[i];
+		
+		if (up) {
+			framesAccelerated[i]++;
+			speed -= ACCELERATION;
+			if (speed < MAX_SPEED)
+				speed = MAX_SPEED;
+		} else {
+			framesAccelerated[i] = 0;
+		}
+		if (down) {
+			speed += BACKING_ACCELERATION;
+			if (speed > MAX_BACKING_SPEED)
+				speed = MAX_BACKING_SPEED;
+		}
+		// Simulate turning the driving wheel by adding "acceleration" to
+		// turning speed. We use ints for this since integer math is exact.
+		if ((left && speed < 0) || (speed > 0 && right)) {
+			turningFrame ++;
+			if (turningFrame > FRAMES_FOR_TURNING){
+				turningFrame = FRAMES_FOR_TURNING;
+			}
+		}
+		if ((right && speed < 0) || (speed > 0 && left)) {
+			turningFrame --;
+			if (turningFrame < -FRAMES_FOR_TURNING) {
+				turningFrame = -FRAMES_FOR_TURNING;
+			}
+		}
+		
+		if (Math.abs(turningFrame) == FRAMES_FOR_TURNING) {
+			framesAtMaxTurning[i]++;
+		} else framesAtMaxTurning[i] = 0;
+		
+		// Turn the wheels back if not turning.
+		if (!left && !right) {
+			if (turningFrame > 0) turningFrame --;
+			else if (turningFrame < 0) turningFrame++;
+		}
+		
+		// Slow down if not accelerating or reversing.
+		if (!up && !down) {
+			speed *= FRICTION;
+		}
+		// Break
+		if (speed > 0 && up) {
+			speed *= BACK_BREAK_FRICTION;
+		} else if (speed < 0 && down) {
+			speed *= BREAK_FRICTION;
+		}
+		
+		float px = posX[i];
+		float py = posY[i];
+		float vx = velX[i];
+		float vy = velY[i];
+		float angle = this.angle[i];
+		
+		// Lower max turning speed if velocity is low.
+		double maxTurnSpeed = (vx*vx + vy*vy) / 0.01 * TURN_SPEED;
+		if (maxTurnSpeed > TURN_SPEED)
+			maxTurnSpeed = TURN_SPEED;
+		double angleChange = ((float)turningFrame / FRAMES_FOR_TURNING) * maxTurnSpeed;
+		
+		// Calculate front and back wheel positions.
+		float cos = (float)Math.cos(angle);
+		float sin = (float)Math.sin(angle);
+		float fx = cos * (WHEEL_DIST/2) + px;
+		float fy = sin * (WHEEL_DIST/2) + py;
+		float bx = cos * (-WHEEL_DIST/2) + px;
+		float by = sin * (-WHEEL_DIST/2) + py;
+		
+		// Move the wheels forward in the car's direction. angleChange is added
+		// to the front wheels since they are doing the turning.
+		bx += cos*speed;
+		by += sin*speed;
+		fx += (float)Math.cos(angle+angleChange)*speed;
+		fy += (float)Math.sin(angle+angleChange)*speed;
+		
+		oldAngle[i] = angle;
+		angle -= angleChange;
+		
+		// Scale down the velocity from previous frame.
+		vx *= 0.95f;
+		vy *= 0.95f;
+		float len2 = vx*vx + vy*vy;
+		if (len2 > MAX_VEL) {
+			float scl = (float)Math.sqrt(MAX_VEL / len2);
+			vx *= scl;
+			vy *= scl;
+		}
+		
+		// Add this frames movement to the velocity.
+		if (!locked[i]) {
+			vx += (fx + bx) * 0.5f - px;
+			vy += (fy + by) * 0.5f - py;
+		}
+		
+		// Add velocity to car and update position
+		oldX[i] = px;
+		oldY[i] = py;
+		posX[i] = px + vx;
+		posY[i] = py + vy;
+		velX[i] = vx;
+		velY[i] = vy;
+		this.speed[i] = speed;
+		this.angle[i] = angle;
+		this.turningFrame[i] = turningFrame;
+		
+		testForWallCollision(i, scratch);
+	}
+	
+	/**
+	 * Test a car for collision against the wall segments near it.
+	 * It stops after it finds one collision on each side of the track.
+	 */
+	private void testForWallCollision(int car, Scratch scratch) {
+		IntArray nearWalls = scratch.nearWalls;
+		Vector2 from = scratch.from;
+		Vector2 to = scratch.to;
+		Vector2 hitPoint = scratch.hitPoint;
+		Vector2 wall = scratch.wall;
+		Vector2 vel = scratch.vel;
+		from.set(oldX[car], oldY[car]);
+		to.set(posX[car], posY[car]);
+		
+		ArrayList<Vector2> list;
+		double angleOffset;
+		
+		for (int w=0; w < 2; w++) {
+			if (w == 0) {
+				list = walls1;
+				angleOffset = Math.PI/2;
+			} else {
+				list = walls2;
+				angleOffset = -Math.PI/2;
+			}
+			// Only the walls in the cells that the car moved through can be hit.
+			// They are tested in the same order as they are in the wall list.
+			wallGrid.query(w, from, to, nearWalls);
+			
+			for (int k=0; k < nearWalls.size; k++) {
+				int i = nearWalls.get(k);
+				Vector2 n1 = list.get(i-1);
+				Vector2 n2 = list.get(i);
+				if (Intersector.intersectSegments(n1, n2, from, to, hitPoint)) {
+					// bounceA is technically the normal. angleOffset is used
+					// here to get the correct side of the track segment.
+					float bounceA = (float) (Math.atan2(n2.y-n1.y, n2.x-n1.x) + angleOffset);
+					wall.set(1, 0);
+					wall.setAngleRad(bounceA).nor();
+					
+					// move the car just in front of the wall.
+					to.set(hitPoint.add((float)Math.cos(bounceA)*0.05f, (float)Math.sin(bounceA)*0.05f));
+					
+					// Lower the speed depending on which angle you hit the wall in.
+					hitPoint.setAngleRad(angle[car]).nor();
+					float wallHitDot = wall.dot(hitPoint);
+					speed[car] *= (1 - Math.abs(wallHitDot)) * 0.85;
+					
+					// calculate the bounce using the reflection formula.
+					vel.set(velX[car], velY[car]);
+					float dot = vel.dot(wall);
+					vel.sub(wall.scl(dot*2));
+					velX[car] = vel.x;
+					velY[car] = vel.y;
+					posX[car] = to.x;
+					posY[car] = to.y;
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * CarSweep finds the pairs of cars that are close enough to collide, without
+ * testing every car against every other car. The cars are kept sorted along
+ * the x axis and only cars that overlap on that axis are paired up. Cars move
+ * very little between ticks, so the order from the last tick is almost sorted
+ * already and sorting it again is cheap.
+ */
+public class CarSweep {
+	// A bit more than the radius, so that rounding never leaves out a pair
+	// that SimCar.collideWith would have accepted.
+	private static final float REACH = SimCar.RADIUS * 1.01f;
+	
+	// The indices of the cars, sorted by their x position.
+	private int[] order;
+	private float[] xs;
+	
+	public CarSweep() {
+		order = new int[0];
+		xs = new float[0];
+	}
+	
+	/**
+	 * Finds the pairs of cars that might collide. A pair is stored as
+	 * i*cars.size() + j, where i and j are indices of the cars and i < j. The
+	 * pairs are sorted, which is the same order that testing every pair in
+	 * two nested loops would have given.
+	 * @param cars The cars to test.
+	 * @param out Is filled with the pairs.
+	 */
+	public void findPairs(ArrayList<? extends SimCar> cars, IntArray out) {
+		out.clear();
+		int size = cars.size();
+		if (order.length != size) {
+			order = new int[size];
+			xs = new float[size];
+			for (int i=0; i < size; i++) {
+				order[i] = i;
+			}
+		}
+		
+		// Insertion sort the cars by their x position.
+		for (int i=0; i < size; i++) {
+			xs[i] = cars.get(order[i]).getPosition2().x;
+		}
+		for (int i=1; i < size; i++) {
+			int car = order[i];
+			float x = xs[i];
+			int j = i - 1;
+			while (j >= 0 && xs[j] > x) {
+				order[j+1] = order[j];
+				xs[j+1] = xs[j];
+				j--;
+			}
+			order[j+1] = car;
+			xs[j+1] = x;
+		}
+		
+		// Sweep along the x axis. Every car is paired with the cars after it
+		// in the order that are close enough on both axes.
+		for (int i=0; i < size; i++) {
+			int a = order[i];
+			Vector2 aPos = cars.get(a).getPosition2();
+			for (int j=i+1; j < size && xs[j] - xs[i] <= REACH; j++) {
+				int b = order[j];
+				float dy = cars.get(b).getPosition2().y - aPos.y;
+				if (dy > REACH || dy < -REACH) continue;
+				
+				if (a < b) out.add(a*size + b);
+				else       out.add(b*size + a);
+			}
+		}
+		out.sort();
+	}
+}
@@ -0,0 +1,129 @@
+package com.racer.sim;
+
+/**
+ * A Driver steers a car during a race. It is either controlled by a human,
+ * whose input is fed to it through setInput, or by an AIcontroller.
+ */
+public class Driver {
+	protected SimCar car;
+	protected TrackData track;
+	protected int id;
+	private int rank;
+	
+	// Booleans to keep track if the driver is holding down a key.
+	protected boolean up;
+	protected boolean down;
+	protected boolean left;
+	protected boolean right;
+	protected boolean item;
+	
+	private AIcontroller ai;
+	private AIParameters aiParams = AIParameters.DEFAULT;
+	private boolean possessed;
+	// The name is built the first time it's asked for, since the
+	// results screen asks for it every frame.
+	private String name;
+	
+	/**
+	 * Create a new driver.
+	 * @param isAI If the driver should be controlled by the AI.
+	 * @param car The car that the driver should control.
+	 * @param track The track that the race is on.
+	 */
+	public Driver(boolean isAI, SimCar car, TrackData track) {
+		this.car = car;
+		this.track = track;
+		car.setDriver(this);
+		car.setTrack(track);
+		
+		if (isAI) {
+			ai = new AIcontroller(car, track, aiParams);
+		}
+	}
+	
+	/**
+	 * Sets the parameters that the AI steers with, both now and
+	 * when it possesses this driver later.
+	 */
+	public void setAIParameters(AIParameters params) {
+		aiParams = params;
+		if (ai != null) ai = new AIcontroller(car, track, params);
+	}
+	
+	public boolean aiControlled() {
+		return ai != null;
+	}
+	/**
+	 * Returns true if this is or was a real player (before it got possessed).
+	 */
+	public boolean realPlayer() {
+		return (!aiControlled() || possessed);
+	}
+	
+	public SimCar getCar() {
+		return car;
+	}
+	public int getId() {
+		return id;
+	}
+	public String getName() {
+		if (!realPlayer()) return "CPU";
+		if (name == null) name = "Player " + id;
+		return name;
+	}
+	
+	public boolean finished() {
+		return rank > 0;
+	}
+	public int finalRank() {
+		return rank;
+	}
+	public void setRank(int rank) {
+		this.rank = rank;
+	}
+	public void reset() {
+		rank = 0;
+	}
+	
+	/**
+	 * Possess this driver by making it controlled by the AI.
+	 */
+	public void possess() {
+		ai = new AIcontroller(car, track, aiParams);
+		possessed = true;
+	}
+	/** Returns true if this is a real player that the AI has taken over. */
+	public boolean possessed() {
+		return possessed;
+	}
+	public void removePossession() {
+		if (!possessed) return;
+		ai = null;
+		possessed = false;
+	}
+	
+	/**
+	 * Sets which keys a human driver is holding down.
+	 */
+	public void setInput(boolean up, boolean down, boolean left, boolean right, boolean item) {
+		this.up = up;
+		this.down = down;
+		this.left = left;
+		this.right = right;
+		this.item = item;
+	}
+	
+	/**
+	 * Decides which keys to hold down this tick, either with the AI or with
+	 * the last input. The car is moved later, together with all other cars.
+	 */
+	public void drive() {
+		if (aiControlled()) {
+			boolean[] k = ai.useBrain();
+			car.setInput(k[0], k[1], k[2], k[3], false);
+		} else {
+			car.setInput(up, down, left, right, item);
+			if (item) car.useItem();
+		}
+	}
+}
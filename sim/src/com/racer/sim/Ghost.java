@@ -0,0 +1,71 @@
+package com.racer.sim;
+
+/**
+ * A Ghost replays a recorded lap with a car. The car is moved by the recorded
+ * input like any other car, but it is not part of the race, so it doesn't hit
+ * the other cars or pick up any items. The replay is exact as long as the car
+ * that drove the lap didn't touch another car either.
+ */
+public class Ghost {
+	private SimCar car;
+	private InputRecording lap;
+	private int tick;
+	private boolean playing;
+	
+	/**
+	 * Creates a ghost that drives a car. The car must not be one of the cars
+	 * in the race.
+	 */
+	public Ghost(SimCar car) {
+		this.car = car;
+	}
+	
+	public SimCar getCar() {
+		return car;
+	}
+	public InputRecording getLap() {
+		return lap;
+	}
+	
+	/**
+	 * Sets the lap that the ghost should drive. It stops driving the old one.
+	 */
+	public void setLap(InputRecording lap) {
+		this.lap = lap;
+		playing = false;
+	}
+	
+	/**
+	 * Puts the car where the lap began and starts driving it.
+	 */
+	public void start() {
+		if (lap == null) return;
+		lap.restore(car.getState(), car.getIndex());
+		tick = 0;
+		playing = true;
+	}
+	
+	/** Returns true if the ghost is driving a lap. */
+	public boolean playing() {
+		return playing;
+	}
+	
+	/**
+	 * Moves the car one tick with the input of the lap.
+	 */
+	public void tick() {
+		if (!playing) return;
+		if (tick == lap.length()) {
+			playing = false;
+			return;
+		}
+		CarStateBuffer s = car.getState();
+		int i = car.getIndex();
+		int bits = lap.get(tick++);
+		s.setInput(i, bits & InputRecording.MOVE_BITS);
+		s.move(i);
+		if ((bits & InputRecording.AT_MAX_SPEED) != 0) {
+			s.speed[i] = CarStateBuffer.MAX_SPEED;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.racer.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * GhostLibrary keeps the fastest recorded laps of every track, sorted from the
+ * fastest. A track's laps are read from its file the first time they are asked
+ * for and are then kept in memory. A lap only takes about one byte per tick,
+ * so keeping a few for every track costs very little.
+ */
+public class GhostLibrary {
+	private File dir;
+	private int lapsPerTrack;
+	private HashMap<String, ArrayList<InputRecording>> tracks;
+	// The tracks that have gotten new laps since they were saved.
+	private HashSet<String> changed;
+	
+	/**
+	 * Creates a library that keeps its laps in a folder.
+	 * @param dir The folder to keep the laps in. It is created when they are saved.
+	 * @param lapsPerTrack How many of the fastest laps to keep for every track.
+	 */
+	public GhostLibrary(File dir, int lapsPerTrack) {
+		this.dir = dir;
+		this.lapsPerTrack = lapsPerTrack;
+		tracks = new HashMap<String, ArrayList<InputRecording>>();
+		changed = new HashSet<String>();
+	}
+	
+	/**
+	 * Returns the fastest laps of a track, the fastest first.
+	 * @param track The name of the track.
+	 */
+	public ArrayList<InputRecording> getLaps(String track) {
+		ArrayList<InputRecording> laps = tracks.get(track);
+		if (laps == null) {
+			laps = load(track);
+			tracks.put(track, laps);
+		}
+		return laps;
+	}
+	
+	/**
+	 * Adds a copy of a lap if it is faster than one of the kept laps of a track.
+	 * @return True if the lap was kept.
+	 */
+	public boolean offer(String track, InputRecording lap) {
+		ArrayList<InputRecording> laps = getLaps(track);
+		int index = laps.size();
+		while (index > 0 && lap.length() < laps.get(index-1).length()) {
+			index--;
+		}
+		if (index >= lapsPerTrack) return false;
+		
+		laps.add(index, lap.copy());
+		if (laps.size() > lapsPerTrack) {
+			laps.remove(laps.size()-1);
+		}
+		changed.add(track);
+		return true;
+	}
+	
+	/**
+	 * Writes the laps of the tracks that have gotten new ones to their files.
+	 */
+	public void save() {
+		for (String track : changed) {
+			ArrayList<InputRecording> laps = tracks.get(track);
+			dir.mkdirs();
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(file(track))));
+				out.writeInt(laps.size());
+				for (int i=0; i < laps.size(); i++) {
+					laps.get(i).write(out);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				close(out);
+			}
+		}
+		changed.clear();
+	}
+	
+	private ArrayList<InputRecording> load(String track) {
+		ArrayList<InputRecording> laps = new ArrayList<InputRecording>();
+		File file = file(track);
+		if (!file.exists()) return laps;
+		
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			int count = in.readInt();
+			for (int i=0; i < count && i < lapsPerTrack; i++) {
+				laps.add(InputRecording.read(in));
+			}
+		} catch (IOException e) {
+			// A broken file is treated as if the track had no laps.
+			e.printStackTrace();
+			laps.clear();
+		} finally {
+			close(in);
+		}
+		return laps;
+	}
+	
+	private File file(String track) {
+		return new File(dir, track + ".ghosts");
+	}
+	
+	private static void close(Closeable c) {
+		if (c == null) return;
+		try {
+			c.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
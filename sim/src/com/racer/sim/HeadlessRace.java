@@ -0,0 +1,135 @@
+package com.racer.sim;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * HeadlessRace sets up a race with only AI drivers that can be run without a
+ * window. It is used to benchmark the simulation and to run races on machines
+ * that have no display.
+ */
+public class HeadlessRace {
+	private CarStateBuffer states;
+	private ArrayList<SimCar> cars;
+	private ArrayList<Driver> drivers;
+	private TrackData track;
+	private RaceState race;
+	private Simulation sim;
+	
+	/**
+	 * Creates a new race where every car is driven by the AI.
+	 * @param track The track to race on.
+	 * @param numCars How many cars that should race.
+	 */
+	public HeadlessRace(Track track, int numCars) {
+		this(new TrackData(track), track.laps, numCars);
+	}
+	
+	/**
+	 * Creates a new race on an already generated track.
+	 */
+	public HeadlessRace(TrackData track, int laps, int numCars) {
+		this.track = track;
+		states = new CarStateBuffer(numCars);
+		cars = new ArrayList<SimCar>();
+		drivers = new ArrayList<Driver>();
+		for (int i=0; i < numCars; i++) {
+			SimCar c = new SimCar(states);
+			cars.add(c);
+			drivers.add(new Driver(true, c, track));
+		}
+		
+		race = new RaceState();
+		sim = new Simulation(states, cars);
+		sim.setUp(track, drivers, race);
+		race.beginNewRace(drivers, laps, track.getGoalLineWidth());
+	}
+	
+	public Simulation getSimulation() {
+		return sim;
+	}
+	public RaceState getRace() {
+		return race;
+	}
+	public TrackData getTrack() {
+		return track;
+	}
+	public ArrayList<SimCar> getCars() {
+		return cars;
+	}
+	public ArrayList<Driver> getDrivers() {
+		return drivers;
+	}
+	
+	/**
+	 * Lets every car in the race be steered with other parameters than the default.
+	 */
+	public void setAIParameters(AIParameters params) {
+		for (int i=0; i < drivers.size(); i++) {
+			drivers.get(i).setAIParameters(params);
+		}
+	}
+	
+	/**
+	 * Advances the race a number of ticks.
+	 */
+	public void step(int ticks) {
+		for (int i=0; i < ticks; i++) {
+			sim.tick();
+		}
+	}
+	
+	/**
+	 * Returns a hash of the position and velocity of every car. Two races
+	 * that have been simulated in exactly the same way get the same hash.
+	 */
+	public int stateHash() {
+		int hash = 17;
+		for (int i=0; i < cars.size(); i++) {
+			SimCar c = cars.get(i);
+			hash = 31*hash + Float.floatToIntBits(c.getPosition2().x);
+			hash = 31*hash + Float.floatToIntBits(c.getPosition2().y);
+			hash = 31*hash + Float.floatToIntBits(c.getVelocity().x);
+			hash = 31*hash + Float.floatToIntBits(c.getVelocity().y);
+			hash = 31*hash + Float.floatToIntBits(c.getAngle());
+			hash = 31*hash + c.getSeg();
+			hash = 31*hash + c.getTrueLaps();
+			hash = 31*hash + c.rank;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Runs a headless race and prints how fast it was simulated.
+	 * Arguments: [track file] [cars] [ticks] [threads]
+	 */
+	public static void main(String[] args) {
+		File file = new File(args.length > 0 ? args[0] : "tracks/Test Track.track");
+		int numCars = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		
+		Track track = TrackLoader.loadTrack(file);
+		if (track == null) {
+			System.err.println("Could not load " + file);
+			System.exit(1);
+		}
+		AIcontroller.setSeed(0);
+		HeadlessRace race = new HeadlessRace(track, numCars);
+		JobPool jobs = new JobPool(threads);
+		race.getSimulation().setJobPool(jobs);
+		
+		long start = System.nanoTime();
+		race.step(ticks);
+		long time = System.nanoTime() - start;
+		jobs.dispose();
+		
+		System.out.println(file.getName() + ": " + numCars + " cars, " + threads + " threads, " + ticks + " ticks in "
+				+ (time / 1000000) + " ms (" + (long)(ticks / (time / 1e9)) + " ticks/s)");
+		System.out.println("Cars in goal: " + race.getRace().getCarsInGoal().size()
+				+ ", state hash: " + Integer.toHexString(race.stateHash()));
+	}
+}
@@ -0,0 +1,76 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+/**
+ * InputRecorder records the laps of the cars in a race. A lap starts when a car
+ * drives over the goal line and ends the next time it does, so the first lap
+ * from the starting grid is never recorded. What to do with a finished lap is
+ * decided by overriding lapRecorded.
+ * <p>
+ * A lap where the car was pushed, by another car or anything else, can't be
+ * replayed by a Ghost, so it is dropped instead of being handed on.
+ */
+public class InputRecorder {
+	// Room for a two minute lap before a recording has to grow.
+	private static final int TICKS_PER_LAP = TickClock.TICKS_PER_SECOND * 120;
+	
+	private ArrayList<? extends Driver> drivers;
+	private ArrayList<InputRecording> laps;
+	private boolean[] recording;
+	// How many times every car had been pushed when its lap began.
+	private int[] lapPushes;
+	
+	public InputRecorder() {
+		laps = new ArrayList<InputRecording>();
+	}
+	
+	/**
+	 * Sets up the recorder for a new race.
+	 * @param drivers The drivers whose laps to record.
+	 */
+	public void setUp(ArrayList<? extends Driver> drivers) {
+		this.drivers = drivers;
+		while (laps.size() < drivers.size()) {
+			laps.add(new InputRecording(TICKS_PER_LAP));
+		}
+		recording = new boolean[drivers.size()];
+		lapPushes = new int[drivers.size()];
+	}
+	
+	/**
+	 * Records the last tick. Should be called after the race has been updated,
+	 * so that it is known which cars drove over the goal line.
+	 */
+	public void update() {
+		for (int i=0; i < drivers.size(); i++) {
+			Driver d = drivers.get(i);
+			SimCar car = d.getCar();
+			InputRecording lap = laps.get(i);
+			// The cars are locked before the race starts, which is also
+			// when a restarted race has put them back on the grid.
+			if (car.getState().locked[car.getIndex()]) {
+				recording[i] = false;
+				continue;
+			}
+			if (recording[i]) {
+				lap.record(car.getState(), car.getIndex());
+			}
+			if (car.completedLap()) {
+				if (recording[i] && car.getPushes() == lapPushes[i]) lapRecorded(d, lap);
+				lap.begin(car.getState(), car.getIndex());
+				lapPushes[i] = car.getPushes();
+				recording[i] = !d.finished();
+			}
+		}
+	}
+	
+	/**
+	 * Called when a driver has completed a lap without being pushed. The
+	 * recording is reused for the next lap, so it has to be copied to be kept.
+	 * @param driver The driver that drove the lap.
+	 * @param lap The recording of the lap.
+	 */
+	protected void lapRecorded(Driver driver, InputRecording lap) {
+	}
+}
@@ -0,0 +1,151 @@
+package com.racer.sim;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * InputRecording is one lap driven by a car, stored as the state the car had
+ * when the lap began and one byte of input for every tick of it. Moving a car
+ * from that state with the same input gives exactly the same lap again, which
+ * is how a Ghost replays it.
+ * <p>
+ * The lower bits of a tick are the UP, DOWN, LEFT, RIGHT and ITEM bits of the
+ * CarStateBuffer. AT_MAX_SPEED is set if the car ended the tick at max speed,
+ * since that is how a booster holds the car and it can't be seen in the input.
+ */
+public class InputRecording {
+	public static final int AT_MAX_SPEED = 32;
+	// The bits that are given to the car when the lap is replayed.
+	static final int MOVE_BITS = CarStateBuffer.UP | CarStateBuffer.DOWN
+	                           | CarStateBuffer.LEFT | CarStateBuffer.RIGHT;
+	
+	// The state of the car when the lap began.
+	private float startX;
+	private float startY;
+	private float startVelX;
+	private float startVelY;
+	private float startSpeed;
+	private float startAngle;
+	private int startTurningFrame;
+	
+	private byte[] ticks;
+	private int length;
+	
+	/**
+	 * Creates an empty recording.
+	 * @param capacity How many ticks to make room for. It grows if the lap is longer.
+	 */
+	public InputRecording(int capacity) {
+		ticks = new byte[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Starts recording a new lap from the current state of a car.
+	 */
+	public void begin(CarStateBuffer s, int car) {
+		startX = s.posX[car];
+		startY = s.posY[car];
+		startVelX = s.velX[car];
+		startVelY = s.velY[car];
+		startSpeed = s.speed[car];
+		startAngle = s.angle[car];
+		startTurningFrame = s.turningFrame[car];
+		length = 0;
+	}
+	
+	/**
+	 * Adds the input that a car had in the last tick.
+	 */
+	public void record(CarStateBuffer s, int car) {
+		int bits = s.input[car] & (MOVE_BITS | CarStateBuffer.ITEM);
+		if (s.speed[car] == CarStateBuffer.MAX_SPEED) bits |= AT_MAX_SPEED;
+		add(bits);
+	}
+	
+	/** Adds the bits of one tick to the end of the recording. */
+	public void add(int bits) {
+		if (length == ticks.length) {
+			ticks = Arrays.copyOf(ticks, length * 2);
+		}
+		ticks[length++] = (byte) bits;
+	}
+	
+	/**
+	 * Puts a car back in the state it had when the lap began.
+	 */
+	void restore(CarStateBuffer s, int car) {
+		s.posX[car] = startX;
+		s.posY[car] = startY;
+		s.oldX[car] = startX;
+		s.oldY[car] = startY;
+		s.velX[car] = startVelX;
+		s.velY[car] = startVelY;
+		s.speed[car] = startSpeed;
+		s.angle[car] = startAngle;
+		s.oldAngle[car] = startAngle;
+		s.turningFrame[car] = startTurningFrame;
+		s.framesAtMaxTurning[car] = 0;
+		s.locked[car] = false;
+	}
+	
+	/** Returns how many ticks the lap took. */
+	public int length() {
+		return length;
+	}
+	/** Returns the bits of a tick. */
+	public int get(int tick) {
+		return ticks[tick];
+	}
+	
+	/** Returns a copy that only takes as much memory as the lap needs. */
+	public InputRecording copy() {
+		InputRecording copy = new InputRecording(length);
+		copy.startX = startX;
+		copy.startY = startY;
+		copy.startVelX = startVelX;
+		copy.startVelY = startVelY;
+		copy.startSpeed = startSpeed;
+		copy.startAngle = startAngle;
+		copy.startTurningFrame = startTurningFrame;
+		System.arraycopy(ticks, 0, copy.ticks, 0, length);
+		copy.length = length;
+		return copy;
+	}
+	
+	public void write(DataOutputStream out) throws IOException {
+		out.writeFloat(startX);
+		out.writeFloat(startY);
+		out.writeFloat(startVelX);
+		out.writeFloat(startVelY);
+		out.writeFloat(startSpeed);
+		out.writeFloat(startAngle);
+		out.writeInt(startTurningFrame);
+		out.writeInt(length);
+		out.write(ticks, 0, length);
+	}
+	
+	public static InputRecording read(DataInputStream in) throws IOException {
+		float x = in.readFloat();
+		float y = in.readFloat();
+		float velX = in.readFloat();
+		float velY = in.readFloat();
+		float speed = in.readFloat();
+		float angle = in.readFloat();
+		int turningFrame = in.readInt();
+		int length = in.readInt();
+		
+		InputRecording lap = new InputRecording(length);
+		lap.startX = x;
+		lap.startY = y;
+		lap.startVelX = velX;
+		lap.startVelY = velY;
+		lap.startSpeed = speed;
+		lap.startAngle = angle;
+		lap.startTurningFrame = turningFrame;
+		in.readFully(lap.ticks, 0, length);
+		lap.length = length;
+		return lap;
+	}
+}
@@ -0,0 +1,191 @@
+package com.racer.sim;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JobPool splits work that is done once for every car over a few threads.
+ * The threads are started once and then wait for work, so that nothing has
+ * to be created during a tick. The work is always split the same way, and a
+ * job is only allowed to change the state of the items it was given, which
+ * makes the result the same as if it had been done on one thread.
+ */
+public class JobPool {
+	// Splitting fewer items than this over threads costs more than it saves.
+	private static final int MIN_ITEMS_PER_THREAD = 16;
+	
+	/**
+	 * A piece of work that is done for a range of items.
+	 */
+	public interface Job {
+		/**
+		 * Does the work for some of the items.
+		 * @param worker Which thread that runs the job, from 0 to threads()-1.
+		 *               It can be used to pick scratch space that isn't shared.
+		 * @param from The first item.
+		 * @param to One past the last item.
+		 */
+		void run(int worker, int from, int to);
+	}
+	
+	private Thread[] workers;
+	private Object lock;
+	private AtomicInteger remaining;
+	private boolean disposed;
+	
+	// The job that is being run right now.
+	private int generation;
+	private Job job;
+	private int count;
+	private int chunks;
+	private Throwable error;
+	
+	/**
+	 * Creates a pool that does its work on a number of threads.
+	 * @param threads The total number of threads, including the one that
+	 *                calls run. With 1 all work is done on the calling thread.
+	 */
+	public JobPool(int threads) {
+		lock = new Object();
+		remaining = new AtomicInteger();
+		workers = new Thread[Math.max(threads, 1) - 1];
+		for (int i=0; i < workers.length; i++) {
+			final int id = i + 1;
+			workers[i] = new Thread("sim-worker-" + id) {
+				@Override
+				public void run() {
+					work(id);
+				}
+			};
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * Creates a pool with one thread for every available processor.
+	 */
+	public static JobPool forProcessors() {
+		return new JobPool(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Returns the total number of threads, including the calling thread. */
+	public int threads() {
+		return workers.length + 1;
+	}
+	
+	/**
+	 * Runs a job for a number of items and waits until it is done. The items
+	 * are split into at most one range per thread.
+	 */
+	public void run(Job job, int count) {
+		run(job, count, MIN_ITEMS_PER_THREAD);
+	}
+	
+	/**
+	 * Runs a job for a number of items and waits until it is done, like
+	 * run(job, count), for items that are big enough to be split over
+	 * threads in smaller numbers.
+	 * @param minItems The fewest items that are worth a thread of their own.
+	 */
+	public void run(Job job, int count, int minItems) {
+		int chunks = Math.min(threads(), count / Math.max(minItems, 1));
+		if (chunks <= 1 || disposed) {
+			job.run(0, 0, count);
+			return;
+		}
+		
+		synchronized (lock) {
+			this.job = job;
+			this.count = count;
+			this.chunks = chunks;
+			remaining.set(workers.length);
+			generation++;
+			lock.notifyAll();
+		}
+		
+		Throwable error = null;
+		try {
+			runChunk(job, 0, count, chunks);
+		} catch (Throwable t) {
+			error = t;
+		}
+		
+		boolean interrupted = false;
+		synchronized (lock) {
+			while (remaining.get() > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			this.job = null;
+			if (error == null) error = this.error;
+			this.error = null;
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		
+		if (error instanceof RuntimeException) throw (RuntimeException) error;
+		if (error instanceof Error) throw (Error) error;
+		if (error != null) throw new RuntimeException(error);
+	}
+	
+	private static void runChunk(Job job, int chunk, int count, int chunks) {
+		int from = (int) ((long) count * chunk / chunks);
+		int to = (int) ((long) count * (chunk+1) / chunks);
+		job.run(chunk, from, to);
+	}
+	
+	/**
+	 * The loop of a worker thread. It waits for a new job, does its part
+	 * of it and tells the calling thread when it is done.
+	 */
+	private void work(int id) {
+		int seen = 0;
+		while (true) {
+			Job job;
+			int count;
+			int chunks;
+			synchronized (lock) {
+				while (generation == seen && !disposed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						// Only dispose stops a worker.
+					}
+				}
+				if (disposed) return;
+				seen = generation;
+				job = this.job;
+				count = this.count;
+				chunks = this.chunks;
+			}
+			
+			if (id < chunks) {
+				try {
+					runChunk(job, id, count, chunks);
+				} catch (Throwable t) {
+					synchronized (lock) {
+						if (error == null) error = t;
+					}
+				}
+			}
+			if (remaining.decrementAndGet() == 0) {
+				synchronized (lock) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stops the worker threads. Jobs that are run after this are
+	 * done on the calling thread.
+	 */
+	public void dispose() {
+		synchronized (lock) {
+			disposed = true;
+			lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+/**
+ * RaceState keeps track of and handles the rules of the current race. Things
+ * like time, rankings and laps. Anything that should happen on screen when
+ * the race changes is done by overriding the protected hooks.
+ */
+public class RaceState {
+	public static final int START_TIME = 200;
+	
+	private ArrayList<? extends Driver> players;
+	private ArrayList<SimCar> cars;
+	private ArrayList<SimCar> carsInGoal;
+	private int[] finishTimes;
+	private int laps;
+	private int time;
+	// Every tick since the race was set up, including the countdown.
+	private int ticks;
+	private boolean started;
+	private boolean finished;
+	
+	private int humanPlayers;
+	private int playersFinished;
+	private int lastFinishTime;
+	private float goalLineWidth;
+	
+	private JobPool.Job segmentJob = new JobPool.Job() {
+		@Override
+		public void run(int worker, int from, int to) {
+			for (int i=from; i < to; i++) {
+				SimCar c = cars.get(i);
+				c.updateSegment();
+				c.updateLaps();
+				c.updateProgress();
+			}
+		}
+	};
+	
+	/**
+	 * Starts a new race by resetting positions and ranks.
+	 */
+	public void beginNewRace(ArrayList<? extends Driver> players, int laps, float goalLineWidth) {
+		this.players = players;
+		this.laps = laps;
+		
+		carsInGoal = new ArrayList<SimCar>(players.size());
+		cars = new ArrayList<SimCar>();
+		finishTimes = new int[players.size()];
+		started = false;
+		finished = false;
+		humanPlayers = playersFinished = 0;
+		this.goalLineWidth = goalLineWidth;
+		
+		int carsPerRow = 4;
+		float carPadX = 2.5f;
+		float carPadY = 0.7f;
+		float leftX = (goalLineWidth + carPadX*(carsPerRow-0.5f))/2;
+		
+		// With more than two rows of cars the grid is moved back, so
+		// that the front row never starts past the goal line.
+		int lastRow = (players.size()-1) / carsPerRow;
+		float carX = leftX;
+		float carY = 8f + carPadY*Math.max(0, players.size() - carsPerRow*2);
+		for (int i=players.size()-1; i >= 0; i--) {
+			Driver p = players.get(i);
+			if (p.realPlayer()) {
+				p.removePossession();
+				humanPlayers++;
+			}
+			
+			SimCar c = p.getCar();
+			
+			p.reset();
+			cars.add(c);
+			c.resetPos(carX, carY);
+			c.lock();
+			carX -= carPadX;
+			carY -= carPadY;
+			// Start a new row, every other one slightly to the left.
+			if (i % carsPerRow == 0) {
+				int row = i/carsPerRow - 1;
+				carX = ((lastRow - row) % 2 == 0) ? leftX : leftX - carPadX/2;
+			}
+		}
+		time = 0;
+		ticks = 0;
+	}
+	
+	/**
+	 * Starts the same race over again with the same players.
+	 */
+	public void restart() {
+		beginNewRace(players, laps, goalLineWidth);
+	}
+	
+	private void startRace() {
+		for (int i=0; i < cars.size(); i++) {
+			cars.get(i).unleash();
+		}
+		started = true;
+		time = 0;
+	}
+	
+	public boolean finished() {
+		return finished;
+	}
+	
+	/**
+	 * Lets the AI drive a player's car for the rest of the race, so that
+	 * the race no longer waits for that player to finish.
+	 */
+	public void removePlayer(Driver p) {
+		if (p.finished() || p.aiControlled()) return;
+		p.possess();
+		humanPlayers--;
+	}
+	
+	/**
+	 * Gives a car that the AI took over back to a player, who the race
+	 * then waits for again.
+	 */
+	public void addPlayer(Driver p) {
+		if (p.finished() || !p.possessed()) return;
+		p.removePossession();
+		humanPlayers++;
+	}
+	
+	/** Returns how many laps the race is. */
+	public int getLaps() {
+		return laps;
+	}
+	
+	/**
+	 * Returns the amount of frames since the race started.
+	 */
+	public int getElapsedTime() {
+		if (!started) return 0;
+		return time;
+	}
+	
+	/**
+	 * Returns the amount of frames before the race starts.
+	 * Returns a negative number if race has started.
+	 */
+	public int timeBeforeStart() {
+		if (started) return -time;
+		return START_TIME - time;
+	}
+	
+	/**
+	 * Returns how many times the race has been updated since it was set up,
+	 * counting the ticks before the start.
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+	
+	public int timeSinceFinish() {
+		return time - lastFinishTime;
+	}
+	
+	/**
+	 * Returns the cars sorted by how far they have driven, with the car
+	 * that is furthest ahead first. It is sorted again every tick.
+	 */
+	public ArrayList<SimCar> getRanking() {
+		return cars;
+	}
+	public ArrayList<SimCar> getCarsInGoal() {
+		return carsInGoal;
+	}
+	public int[] getFinishTimes() {
+		return finishTimes;
+	}
+	
+	/**
+	 * Returns how many bytes writeState needs for this race.
+	 */
+	public int stateSize() {
+		return 4*(8 + players.size()*6);
+	}
+	
+	/**
+	 * Writes the time, the cars that have finished and the rankings to a
+	 * snapshot. Cars are stored as their index in the car state buffer.
+	 */
+	public void writeState(SnapshotBuffer out) {
+		out.putInt(time);
+		out.putInt(ticks);
+		out.putBoolean(started);
+		out.putBoolean(finished);
+		out.putInt(humanPlayers);
+		out.putInt(playersFinished);
+		out.putInt(lastFinishTime);
+		
+		int n = players.size();
+		out.putInt(carsInGoal.size());
+		for (int i=0; i < n; i++) {
+			out.putInt((i < carsInGoal.size()) ? carsInGoal.get(i).getIndex() : -1);
+		}
+		out.putInts(finishTimes, n);
+		for (int i=0; i < n; i++) {
+			out.putInt(cars.get(i).getIndex());
+		}
+		for (int i=0; i < n; i++) {
+			Driver p = players.get(i);
+			out.putInt(p.finalRank());
+			out.putBoolean(p.possessed());
+			out.putInt(p.getCar().rank);
+		}
+	}
+	
+	/**
+	 * Reads a snapshot that was written by writeState during the same race.
+	 * @param byIndex The cars of the race at their index in the state buffer.
+	 */
+	public void readState(SnapshotBuffer in, SimCar[] byIndex) {
+		time = in.getInt();
+		ticks = in.getInt();
+		started = in.getBoolean();
+		finished = in.getBoolean();
+		humanPlayers = in.getInt();
+		playersFinished = in.getInt();
+		lastFinishTime = in.getInt();
+		
+		int n = players.size();
+		int inGoal = in.getInt();
+		carsInGoal.clear();
+		for (int i=0; i < n; i++) {
+			int index = in.getInt();
+			if (i < inGoal) carsInGoal.add(byIndex[index]);
+		}
+		in.getInts(finishTimes, n);
+		for (int i=0; i < n; i++) {
+			cars.set(i, byIndex[in.getInt()]);
+		}
+		for (int i=0; i < n; i++) {
+			Driver p = players.get(i);
+			p.setRank(in.getInt());
+			// A player that finishes is taken over by the AI, so going back
+			// to before that has to give the car back to the player.
+			boolean possessed = in.getBoolean();
+			if (possessed && !p.possessed()) p.possess();
+			else if (!possessed) p.removePossession();
+			p.getCar().rank = in.getInt();
+		}
+	}
+	
+	/**
+	 * Called when a human player has driven past the goal line
+	 * but hasn't finished the race yet.
+	 * @param player The player that completed a lap.
+	 * @param lapsLeft How many laps the player has left.
+	 */
+	protected void lapCompleted(Driver player, int lapsLeft) {
+	}
+	
+	/**
+	 * Update the current ongoing race by checking
+	 * for lap, segment and rank changes.
+	 */
+	public void update() {
+		update(null);
+	}
+	
+	/**
+	 * Update the current ongoing race by checking for lap, segment and rank
+	 * changes. Every car finds its own segment, lap and progress first, which
+	 * can be done on many threads. The cars are then sorted by their progress
+	 * and the ones that have reached the goal are handled in that order.
+	 * @param jobs The threads to update the segments on, or null to use this thread.
+	 */
+	public void update(JobPool jobs) {
+		if (jobs == null) {
+			segmentJob.run(0, 0, cars.size());
+		} else {
+			jobs.run(segmentJob, cars.size());
+		}
+		sortCars();
+		
+		for (int i=0; i < cars.size(); i++) {
+			SimCar c = cars.get(i);
+			Driver p = c.getDriver();
+			
+			// Cars that have finished don't need the rest of the loop.
+			if (p.finished()) continue;
+			
+			// If car has finished race.
+			int curLaps = c.getTrueLaps();
+			if (curLaps == laps) {
+				finishTimes[carsInGoal.size()] = time;
+				carsInGoal.add(c);
+				p.setRank(carsInGoal.size());
+				if (!p.aiControlled()) {
+					lastFinishTime = time;
+					p.possess();
+					playersFinished++;
+				}
+				continue;
+			}
+			
+			if (c.completedLap() && !p.aiControlled()) {
+				lapCompleted(p, laps - curLaps);
+			}
+		}
+		// Cars that finished this tick are ranked by the order they finished in.
+		sortCars();
+		for (int i=0; i < cars.size(); i++) {
+			cars.get(i).rank = i + 1;
+		}
+		
+		time++;
+		ticks++;
+		if (!started) {
+			if (time > START_TIME) {
+				startRace();
+			}
+		}
+		
+		// When all human players have finished the race should end.
+		if (playersFinished == humanPlayers && !finished) {
+			// Finish the race 3 seconds after all players have entered goal.
+			if (time - 180 > lastFinishTime) {
+				finished = true;
+				lastFinishTime = time;
+			}
+		}
+	}
+	
+	/**
+	 * Sorts the cars list so that the car that is furthest ahead comes first.
+	 * Cars that have finished are sorted by the order they finished in. The
+	 * cars move very little between ticks, so the list is almost sorted
+	 * already and insertion sort only has to do a few swaps.
+	 */
+	private void sortCars() {
+		for (int i=1; i < cars.size(); i++) {
+			SimCar car = cars.get(i);
+			int j = i - 1;
+			while (j >= 0 && ahead(car, cars.get(j))) {
+				cars.set(j+1, cars.get(j));
+				j--;
+			}
+			cars.set(j+1, car);
+		}
+	}
+	
+	/**
+	 * Returns true if car a is ahead of car b in the race.
+	 */
+	private static boolean ahead(SimCar a, SimCar b) {
+		boolean aDone = a.getDriver().finished();
+		boolean bDone = b.getDriver().finished();
+		if (aDone && bDone) return a.getDriver().finalRank() < b.getDriver().finalRank();
+		if (aDone != bDone) return aDone;
+		return a.getProgress() > b.getProgress();
+	}
+}
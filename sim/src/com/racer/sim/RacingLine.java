@@ -0,0 +1,292 @@
+package com.racer.sim;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * RacingLine is the line that the AI drives along, made once when a track is
+ * generated. It has a point on every line across the road of TrackProgress,
+ * placed so that the line bends as little as possible, and for every point how
+ * far along the line it is, how fast a car can drive there and if it has to
+ * brake there to make it through a curve further ahead.
+ * <p>
+ * The speeds are worked out from how the cars move. A car can't turn faster
+ * than a fixed angle per tick, so the tighter a curve is, the slower it has to
+ * be taken. The speed is then lowered before every curve by as much as a car
+ * can brake, and after it by as much as a car can accelerate. Speeds are in
+ * ground units per tick, the same as the length of the velocity of a car.
+ */
+public class RacingLine {
+	// How far the line is kept from the walls, in ground units.
+	private static final float WALL_MARGIN = SimCar.RADIUS + 0.5f;
+	// How many times the points are moved towards a smoother line.
+	private static final int ITERATIONS = 400;
+	// How far apart the points that a curve is measured over are, at least.
+	private static final float CURVE_SPAN = 4f;
+	
+	/**
+	 * The velocity of a car that has held the gas for a long time. It is where
+	 * the velocity is capped, plus the movement of the tick.
+	 */
+	public static final float TOP_SPEED = (float) Math.sqrt(0.35f) - CarStateBuffer.MAX_SPEED;
+	// How much a car can turn in a tick, in radians.
+	private static final float TURN_RATE = 0.03f;
+	// How much of the speed that the turn rate allows in a curve that
+	// a car can drive at and still follow the line.
+	private static final float CORNER_GRIP = 2f;
+	// How much the square of the velocity drops per ground unit when braking
+	// and grows per ground unit when accelerating, measured on a straight.
+	private static final float BRAKING = 0.0098f;
+	private static final float ACCELERATION = 0.0044f;
+	
+	private int count;
+	private float[] x;
+	private float[] y;
+	// How far along the line every point is from the goal line.
+	private float[] distance;
+	private float length;
+	// The speed to drive at every point.
+	private float[] speed;
+	private boolean[] brake;
+	
+	/**
+	 * Makes the racing line of a track.
+	 * @param progress The lines across the road of the track.
+	 */
+	public RacingLine(TrackProgress progress) {
+		count = progress.size();
+		x = new float[count];
+		y = new float[count];
+		distance = new float[count];
+		speed = new float[count];
+		brake = new boolean[count];
+		
+		placePoints(progress);
+		measure();
+		planSpeeds();
+	}
+	
+	/**
+	 * Makes a racing line from points that were placed before.
+	 * @param progress The lines across the road of the track.
+	 * @param points The x and y of every point, as placed by the other constructor.
+	 */
+	RacingLine(TrackProgress progress, float[] points) {
+		count = progress.size();
+		if (points.length != count*2) {
+			throw new IllegalArgumentException(points.length/2 + " points for " + count + " segments");
+		}
+		x = new float[count];
+		y = new float[count];
+		distance = new float[count];
+		speed = new float[count];
+		brake = new boolean[count];
+		for (int k=0; k < count; k++) {
+			x[k] = points[k*2];
+			y[k] = points[k*2+1];
+		}
+		
+		measure();
+		planSpeeds();
+	}
+	
+	/**
+	 * Starts with every point in the middle of the road and then moves them
+	 * along their lines, over and over, to where the line bends the least.
+	 */
+	private void placePoints(TrackProgress progress) {
+		float[] minU = new float[count];
+		float[] maxU = new float[count];
+		for (int k=0; k < count; k++) {
+			float margin = Math.min(0.45f, WALL_MARGIN / Math.max(progress.getLength(k), 0.001f));
+			minU[k] = margin;
+			maxU[k] = 1 - margin;
+			x[k] = progress.getStartX(k) + progress.getDeltaX(k) * 0.5f;
+			y[k] = progress.getStartY(k) + progress.getDeltaY(k) * 0.5f;
+		}
+		
+		for (int it=0; it < ITERATIONS; it++) {
+			for (int k=0; k < count; k++) {
+				int p1 = progress.previous(k);
+				int p2 = progress.previous(p1);
+				int n1 = progress.next(k);
+				int n2 = progress.next(n1);
+				// The point that makes the second differences around k smallest.
+				float tx = (4*(x[p1] + x[n1]) - x[p2] - x[n2]) / 6;
+				float ty = (4*(y[p1] + y[n1]) - y[p2] - y[n2]) / 6;
+				
+				float dx = progress.getDeltaX(k);
+				float dy = progress.getDeltaY(k);
+				float len2 = dx*dx + dy*dy;
+				float t = (len2 == 0) ? 0.5f
+						: ((tx - progress.getStartX(k))*dx + (ty - progress.getStartY(k))*dy) / len2;
+				if (t < minU[k]) t = minU[k];
+				else if (t > maxU[k]) t = maxU[k];
+				x[k] = progress.getStartX(k) + dx * t;
+				y[k] = progress.getStartY(k) + dy * t;
+			}
+		}
+	}
+	
+	/**
+	 * Measures how far along the line every point is. Point k is at the end of
+	 * segment k, so the goal line is both the start and the end of the lap.
+	 */
+	private void measure() {
+		float d = 0;
+		for (int k=0; k < count; k++) {
+			int prev = previous(k);
+			float dx = x[k] - x[prev];
+			float dy = y[k] - y[prev];
+			d += (float) Math.sqrt(dx*dx + dy*dy);
+			distance[k] = d;
+		}
+		length = d;
+	}
+	
+	/**
+	 * Works out how fast every point can be driven through, first from how much
+	 * the line bends there and then from how fast a car can brake before it and
+	 * accelerate after it.
+	 */
+	private void planSpeeds() {
+		for (int k=0; k < count; k++) {
+			// The curve is measured between two points on each side
+			// that are far enough away for it to be stable.
+			int a = k;
+			while (distanceBetween(a, k) < CURVE_SPAN && previous(a) != k) a = previous(a);
+			int b = k;
+			while (distanceBetween(k, b) < CURVE_SPAN && next(b) != k) b = next(b);
+			float curvature = curvature(a, k, b);
+			
+			// A car at velocity v turning TURN_RATE every tick drives in a
+			// circle with the radius v / TURN_RATE. The velocity of a car
+			// follows its heading with a lag, so it can't quite do that.
+			float v = (curvature > 0) ? CORNER_GRIP * TURN_RATE / curvature : TOP_SPEED;
+			speed[k] = Math.min(TOP_SPEED, v);
+		}
+		
+		// How fast a car that accelerates as hard as it can out of every
+		// curve gets. The passes go around the track twice since the lap loops.
+		float[] accel = new float[count];
+		for (int k=0; k < count; k++) {
+			accel[k] = speed[k];
+		}
+		for (int pass=0; pass < 2*count; pass++) {
+			int k = pass % count;
+			int prev = previous(k);
+			float reach = (float) Math.sqrt(accel[prev]*accel[prev] + ACCELERATION*distanceBetween(prev, k));
+			if (reach < accel[k]) accel[k] = reach;
+		}
+		// Brake before the slow points.
+		for (int pass=2*count - 1; pass >= 0; pass--) {
+			int k = pass % count;
+			int next = next(k);
+			float reach = (float) Math.sqrt(speed[next]*speed[next] + BRAKING*distanceBetween(k, next));
+			if (reach < speed[k]) speed[k] = reach;
+		}
+		for (int k=0; k < count; k++) {
+			// Where a car that has accelerated as hard as it can is
+			// going too fast is where it has to brake.
+			brake[k] = speed[k] < accel[k];
+			if (accel[k] < speed[k]) speed[k] = accel[k];
+		}
+	}
+	
+	/** Returns how far it is along the line from point a to point b. */
+	private float distanceBetween(int a, int b) {
+		float d = distance[b] - distance[a];
+		return (d < 0) ? d + length : d;
+	}
+	
+	/**
+	 * Returns the curvature of the circle through three points,
+	 * which is one divided by its radius.
+	 */
+	private float curvature(int a, int b, int c) {
+		float abx = x[b] - x[a];
+		float aby = y[b] - y[a];
+		float bcx = x[c] - x[b];
+		float bcy = y[c] - y[b];
+		float acx = x[c] - x[a];
+		float acy = y[c] - y[a];
+		float cross = Math.abs(abx*bcy - aby*bcx);
+		float lengths = (float) Math.sqrt((abx*abx + aby*aby) * (bcx*bcx + bcy*bcy) * (acx*acx + acy*acy));
+		return (lengths == 0) ? 0 : 2 * cross / lengths;
+	}
+	
+	/** Returns how many points there are, one for every segment. */
+	public int size() {
+		return count;
+	}
+	public int next(int k) {
+		return (k == count-1) ? 0 : k+1;
+	}
+	public int previous(int k) {
+		return (k == 0) ? count-1 : k-1;
+	}
+	
+	public float getX(int k) {
+		return x[k];
+	}
+	public float getY(int k) {
+		return y[k];
+	}
+	/** Returns how far along the line from the goal line a point is. */
+	public float getDistance(int k) {
+		return distance[k];
+	}
+	/** Returns the length of one lap along the line. */
+	public float getLength() {
+		return length;
+	}
+	/** Returns how fast to drive at a point, in ground units per tick. */
+	public float getSpeed(int k) {
+		return speed[k];
+	}
+	/** Returns true if a car going faster than getSpeed at a point should brake. */
+	public boolean isBrakeZone(int k) {
+		return brake[k];
+	}
+	
+	/**
+	 * Returns how far along the line a car in a segment is. Where the car
+	 * is in the segment is taken from how far it is between its two lines.
+	 * @param progress The track that the line was made from.
+	 * @param seg The segment the car is in, which ends at point seg.
+	 */
+	public float distanceOf(TrackProgress progress, int seg, float px, float py) {
+		int prev = previous(seg);
+		float passed = -progress.distanceBehind(prev, px, py);
+		float left = progress.distanceBehind(seg, px, py);
+		float t = (passed + left > 0) ? passed / (passed + left) : 0;
+		if (t < 0) t = 0;
+		else if (t > 1) t = 1;
+		float start = (seg == 0) ? 0 : distance[prev];
+		return start + t * (distance[seg] - start);
+	}
+	
+	/**
+	 * Finds the point on the line at a distance along it. The search starts at
+	 * the end of a segment that is known to not be past it, so only a few
+	 * points are looked at.
+	 * @param seg A segment that ends at or before the distance.
+	 * @param d The distance along the line. It can be up to a lap more than
+	 *          the length of the line.
+	 * @param out Is set to the point.
+	 * @return The first point at or after the distance.
+	 */
+	public int pointAt(int seg, float d, Vector2 out) {
+		int k = seg;
+		for (int i=0; i < count && distance[k] < d; i++) {
+			if (k == count-1) d -= length;
+			k = next(k);
+		}
+		int prev = previous(k);
+		float start = (k == 0) ? 0 : distance[prev];
+		float t = (distance[k] > start) ? (d - start) / (distance[k] - start) : 1;
+		if (t < 0) t = 0;
+		else if (t > 1) t = 1;
+		out.set(x[prev] + (x[k] - x[prev]) * t, y[prev] + (y[k] - y[prev]) * t);
+		return k;
+	}
+}
@@ -0,0 +1,129 @@
+package com.racer.sim;
+
+/**
+ * RewindBuffer takes a snapshot of a race at a fixed interval and keeps the
+ * latest ones, so that the race can be rewound to any of them. The snapshots
+ * are kept in a ring of equally sized slots in one block of memory outside of
+ * the heap, which is allocated up front. Taking a snapshot only copies the
+ * arrays of the race into the next slot and creates no garbage.
+ */
+public class RewindBuffer {
+	// Extra room in every slot for this many items per car, since the
+	// size of a snapshot grows with the items that are in use.
+	private static final int ITEMS_PER_CAR = 4;
+	
+	private Simulation sim;
+	private SnapshotBuffer memory;
+	private int slots;
+	private int slotSize;
+	private int interval;
+	
+	// The tick that every slot was taken at.
+	private int[] slotTick;
+	private int newest;
+	private int count;
+	
+	/**
+	 * Creates a buffer for a simulation that has been set up for a race.
+	 * @param sim The simulation to take snapshots of.
+	 * @param seconds How far back it should be possible to rewind.
+	 * @param interval How many ticks there should be between the snapshots.
+	 */
+	public RewindBuffer(Simulation sim, float seconds, int interval) {
+		this.sim = sim;
+		this.interval = interval;
+		slots = (int) Math.ceil(seconds * TickClock.TICKS_PER_SECOND / interval) + 1;
+		slotTick = new int[slots];
+		int cars = sim.getStates().size();
+		allocate(sim.stateSize() + cars*ITEMS_PER_CAR*16);
+	}
+	
+	private void allocate(int size) {
+		slotSize = SnapshotBuffer.align(size);
+		memory = new SnapshotBuffer(slots * slotSize);
+		clear();
+	}
+	
+	/** Throws away every snapshot. */
+	public void clear() {
+		newest = -1;
+		count = 0;
+	}
+	
+	/** Returns how many snapshots there are to rewind to. */
+	public int size() {
+		return count;
+	}
+	/** Returns the size of the memory that the snapshots are kept in, in bytes. */
+	public int memorySize() {
+		return memory.capacity();
+	}
+	
+	/**
+	 * Takes a snapshot if it is time for one. Should be called after every tick.
+	 */
+	public void update() {
+		int tick = sim.getRace().getTicks();
+		// The race has been restarted, so the snapshots are of another race.
+		if (count > 0 && tick < slotTick[newest]) clear();
+		if (tick % interval == 0) save();
+	}
+	
+	/**
+	 * Takes a snapshot of the race as it is now, replacing the oldest one
+	 * if the buffer is full.
+	 */
+	public void save() {
+		int size = sim.stateSize();
+		if (size > slotSize) {
+			// More items than there was room for are in use. The old snapshots
+			// are thrown away, since they are in slots of the old size.
+			allocate(size + size/2);
+		}
+		newest = (newest + 1) % slots;
+		if (count < slots) count++;
+		slotTick[newest] = sim.getRace().getTicks();
+		memory.seek(newest * slotSize);
+		sim.writeState(memory);
+	}
+	
+	/**
+	 * Goes back to the snapshot before the current state of the race. If the
+	 * race is exactly at the newest snapshot it goes to the one before it.
+	 * @return False if there was no snapshot to go back to.
+	 */
+	public boolean stepBack() {
+		if (count == 0) return false;
+		if (sim.getRace().getTicks() <= slotTick[newest]) {
+			if (count == 1) return false;
+			drop();
+		}
+		restore();
+		return true;
+	}
+	
+	/**
+	 * Rewinds the race by at least a number of ticks, or as far as the
+	 * snapshots go back. The snapshots after it are thrown away.
+	 * @return How many ticks the race was rewound.
+	 */
+	public int rewind(int ticks) {
+		if (count == 0) return 0;
+		int now = sim.getRace().getTicks();
+		while (count > 1 && slotTick[newest] > now - ticks) {
+			drop();
+		}
+		restore();
+		return now - slotTick[newest];
+	}
+	
+	private void drop() {
+		newest = (newest + slots - 1) % slots;
+		count--;
+	}
+	
+	private void restore() {
+		memory.seek(newest * slotSize);
+		sim.readState(memory);
+	}
+}
@@ -0,0 +1,204 @@
+package com.racer.sim;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+
+/**
+ * RoadTiles splits the area that the road covers, in pixmap coordinates, into
+ * square tiles, and keeps only the tiles that the road is on. A track is a thin
+ * band across the area, so most of the tiles are never needed, and a road that
+ * is drawn tile by tile takes memory after how long it is instead of after the
+ * size of the whole area. The area is found from the road itself, so a track
+ * that reaches outside of the pixmap gets tiles there too.
+ * <p>
+ * Every tile knows which road triangles overlap it, in the order they are
+ * drawn in, so the tiles can be drawn independently of each other and still
+ * end up like the same part of one big pixmap.
+ */
+public class RoadTiles {
+	private int tileSize;
+	// The corner of the area that the tiles are in, a multiple of the tile size.
+	private int left;
+	private int top;
+	private int cols;
+	private int rows;
+	
+	// Which tile of the area every kept tile is, as row*cols + col, in the
+	// order the road first reaches them.
+	private int[] tiles;
+	// The triangles of tile i are found between tileStart[i] and tileStart[i+1].
+	private int[] tileStart;
+	private int[] tileTriangles;
+	
+	/**
+	 * Finds the tiles that the road of a track covers.
+	 * @param tileSize The width and height of a tile in pixmap coordinates.
+	 *                 Tiles of a size that divides TrackData.PIXMAP_SIZE line
+	 *                 up with the pixmap.
+	 */
+	public RoadTiles(TrackData data, int tileSize) {
+		this.tileSize = tileSize;
+		float[] tris = data.getRoadTriangles();
+		int count = data.roadTriangles();
+		findArea(tris, count);
+		
+		// Collect every tile and triangle that overlap, as pairs of the kept
+		// tile and the triangle. The triangles are gone through in order,
+		// which keeps the triangles of every tile sorted.
+		IntIntMap kept = new IntIntMap();
+		IntArray order = new IntArray();
+		IntArray pairs = new IntArray();
+		for (int t=0; t < count; t++) {
+			int i = t*6;
+			float minX = Math.min(tris[i], Math.min(tris[i+2], tris[i+4]));
+			float maxX = Math.max(tris[i], Math.max(tris[i+2], tris[i+4]));
+			float minY = Math.min(tris[i+1], Math.min(tris[i+3], tris[i+5]));
+			float maxY = Math.max(tris[i+1], Math.max(tris[i+3], tris[i+5]));
+			// The corners are rounded when the triangle is drawn, so a tile
+			// is looked at if the triangle is within a pixel of it.
+			int x0 = cell(minX - 1 - left, cols);
+			int x1 = cell(maxX + 1 - left, cols);
+			int y0 = cell(minY - 1 - top, rows);
+			int y1 = cell(maxY + 1 - top, rows);
+			for (int y=y0; y <= y1; y++) {
+				for (int x=x0; x <= x1; x++) {
+					float tileX = left + x*tileSize;
+					float tileY = top + y*tileSize;
+					if (!overlaps(tris, i, tileX - 1, tileY - 1,
+							tileX + tileSize + 1, tileY + tileSize + 1)) continue;
+					int tile = y*cols + x;
+					int k = kept.get(tile, -1);
+					if (k < 0) {
+						k = order.size;
+						kept.put(tile, k);
+						order.add(tile);
+					}
+					pairs.add(k);
+					pairs.add(t);
+				}
+			}
+		}
+		
+		tiles = order.toArray();
+		tileStart = new int[tiles.length + 1];
+		for (int p=0; p < pairs.size; p += 2) {
+			tileStart[pairs.get(p) + 1]++;
+		}
+		for (int k=0; k < tiles.length; k++) {
+			tileStart[k+1] += tileStart[k];
+		}
+		int[] fill = new int[tiles.length];
+		tileTriangles = new int[pairs.size / 2];
+		for (int p=0; p < pairs.size; p += 2) {
+			int k = pairs.get(p);
+			tileTriangles[tileStart[k] + fill[k]++] = pairs.get(p+1);
+		}
+	}
+	
+	/**
+	 * Finds the tiles that the bounds of the road are in. The area has a pixel
+	 * to spare around the road, like the tiles that the triangles are tested
+	 * against.
+	 */
+	private void findArea(float[] tris, int count) {
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int i=0; i < count*6; i += 2) {
+			minX = Math.min(minX, tris[i]);
+			maxX = Math.max(maxX, tris[i]);
+			minY = Math.min(minY, tris[i+1]);
+			maxY = Math.max(maxY, tris[i+1]);
+		}
+		left = (int) Math.floor((minX - 1) / tileSize) * tileSize;
+		top = (int) Math.floor((minY - 1) / tileSize) * tileSize;
+		cols = (int) Math.floor((maxX + 1 - left) / tileSize) + 1;
+		rows = (int) Math.floor((maxY + 1 - top) / tileSize) + 1;
+	}
+	
+	/**
+	 * Returns the column or row that a distance from the corner of the area
+	 * is in.
+	 * @param cells How many columns or rows the area has.
+	 */
+	private int cell(float v, int cells) {
+		int c = (int) Math.floor(v / tileSize);
+		if (c < 0) return 0;
+		if (c >= cells) return cells - 1;
+		return c;
+	}
+	
+	/**
+	 * Returns true if a triangle overlaps a rectangle. The edges of the
+	 * triangle and the sides of the rectangle are the only axes that can
+	 * separate them.
+	 * @param i Where the triangle starts in tris.
+	 */
+	private static boolean overlaps(float[] tris, int i, float x0, float y0, float x1, float y1) {
+		for (int e=0; e < 3; e++) {
+			int a = i + e*2;
+			int b = i + (e+1)%3*2;
+			int c = i + (e+2)%3*2;
+			// The normal of the edge from a to b.
+			float nx = tris[b+1] - tris[a+1];
+			float ny = tris[a] - tris[b];
+			float edge = nx*tris[a] + ny*tris[a+1];
+			float side = nx*tris[c] + ny*tris[c+1] - edge;
+			// The corner of the rectangle that reaches furthest towards the
+			// triangle has to be on the other side of the edge for them to
+			// be separate.
+			float reach;
+			if (side >= 0) {
+				reach = nx*(nx > 0 ? x1 : x0) + ny*(ny > 0 ? y1 : y0) - edge;
+				if (reach < 0) return false;
+			} else {
+				reach = nx*(nx < 0 ? x1 : x0) + ny*(ny < 0 ? y1 : y0) - edge;
+				if (reach > 0) return false;
+			}
+		}
+		// The bounds of the triangle were already tested against the tile.
+		return true;
+	}
+	
+	/** Returns how many tiles the road covers. */
+	public int size() {
+		return tiles.length;
+	}
+	
+	/** Returns the width and height of a tile in pixmap coordinates. */
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	/** Returns how many tiles wide the area around the road is. */
+	public int getColumns() {
+		return cols;
+	}
+	/** Returns how many tiles high the area around the road is. */
+	public int getRows() {
+		return rows;
+	}
+	
+	/** Returns the left side of a tile in pixmap coordinates. */
+	public int getX(int tile) {
+		return left + tiles[tile] % cols * tileSize;
+	}
+	/** Returns the top side of a tile in pixmap coordinates. */
+	public int getY(int tile) {
+		return top + tiles[tile] / cols * tileSize;
+	}
+	
+	/** Returns how many road triangles overlap a tile. */
+	public int triangles(int tile) {
+		return tileStart[tile+1] - tileStart[tile];
+	}
+	/**
+	 * Returns a road triangle that overlaps a tile, as its index in the
+	 * TrackData. The triangles are in the order they are drawn in.
+	 * @param n From 0 to triangles(tile)-1.
+	 */
+	public int getTriangle(int tile, int n) {
+		return tileTriangles[tileStart[tile] + n];
+	}
+}
@@ -0,0 +1,390 @@
+package com.racer.sim;
+
+import com.badlogic.gdx.math.Vector2;
+import com.racer.item.Item;
+import com.racer.item.ItemType;
+
+/**
+ * SimCar is the simulated part of a car. It handles the physics, wall collisions
+ * and keeps track of which segment and lap the car is on. It knows nothing about
+ * how the car is drawn, which makes it possible to run races without a window.
+ */
+public class SimCar {
+	public static final float RADIUS = 1.3f;
+	public static final float RADIUS_SQRD = RADIUS * RADIUS;
+	
+	// The state of the car is kept at this index in the buffer.
+	private CarStateBuffer state;
+	private int index;
+	
+	// Vectors that are used for temporary calculations instead of
+	// creating new vectors in the functions every frame.
+	private Vector2 temp;
+	private Vector2 temp2;
+	
+	// Vectors that are filled from the buffer when they are asked for.
+	private Vector2 oldPos;
+	private Vector2 pos;
+	private Vector2 vel;
+	
+	private TrackProgress progress;
+	
+	private Driver driver;
+	public int rank;
+	
+	private Item item;
+	// How many times the car has been pushed by something else than its own
+	// input, like another car. Only ever counts up.
+	private int pushes;
+	
+	/**
+	 * Creates a new car and adds it to a state buffer.
+	 */
+	public SimCar(CarStateBuffer state) {
+		this.state = state;
+		index = state.add();
+		state.posX[index] = 5;
+		state.posY[index] = 5;
+		state.oldX[index] = 5;
+		state.oldY[index] = 5;
+		
+		pos = new Vector2();
+		oldPos = new Vector2();
+		vel = new Vector2();
+		temp = new Vector2();
+		temp2 = new Vector2();
+	}
+	
+	/** Returns the buffer that holds the state of this car. */
+	public CarStateBuffer getState() {
+		return state;
+	}
+	/** Returns the index of this car in the state buffer. */
+	public int getIndex() {
+		return index;
+	}
+	
+	public Vector2 getPosition2() {
+		return pos.set(state.posX[index], state.posY[index]);
+	}
+	/** Returns the position the car had before the last tick. */
+	public Vector2 getOldPosition2() {
+		return oldPos.set(state.oldX[index], state.oldY[index]);
+	}
+	public Vector2 getVelocity() {
+		return vel.set(state.velX[index], state.velY[index]);
+	}
+	public float getAngle() {
+		return state.angle[index];
+	}
+	/** Returns the angle the car had before the last tick. */
+	public float getOldAngle() {
+		return state.oldAngle[index];
+	}
+	public float getSpeed() {
+		return state.speed[index];
+	}
+	/** Returns true if the car is locked in place before the start. */
+	public boolean isLocked() {
+		return state.locked[index];
+	}
+	public int getTurningFrame() {
+		return state.turningFrame[index];
+	}
+	public int getFramesAtMaxTurning() {
+		return state.framesAtMaxTurning[index];
+	}
+	public int getLaps() {
+		int laps = state.laps[index];
+		return (state.cheatedLap[index]) ? laps - 1 : laps;
+	}
+	public int getTrueLaps() {
+		return state.laps[index];
+	}
+	/** Returns true if the car completed a lap in the last update. */
+	public boolean completedLap() {
+		return state.completedLap[index];
+	}
+	
+	public int getSeg() {
+		return state.seg[index];
+	}
+	public float getDistToSeg() {
+		return state.distToSeg[index];
+	}
+	public float getLongestDist() {
+		return state.longestDist[index];
+	}
+	/**
+	 * Returns how far the car has driven in the race, as the length of
+	 * the laps it has done plus how far along the current lap it is.
+	 */
+	public float getProgress() {
+		return state.progress[index];
+	}
+	
+	public Driver getDriver() {
+		return driver;
+	}
+	
+	public void setDriver(Driver driver) {
+		this.driver = driver;
+	}
+	
+	/** Sets this car to its max speed. */
+	public void setMaxSpeed() {
+		state.speed[index] = CarStateBuffer.MAX_SPEED;
+	}
+	public float speedRatio() {
+		return state.speed[index] / CarStateBuffer.MAX_SPEED;
+	}
+	
+	/**
+	 * Sets the track that this car drives on.
+	 */
+	public void setTrack(TrackData track) {
+		progress = track.getProgress();
+		state.setTrack(track);
+	}
+	public void resetPos(float x, float y) {
+		CarStateBuffer s = state;
+		int i = index;
+		s.posX[i] = x;
+		s.posY[i] = y;
+		s.oldX[i] = x;
+		s.oldY[i] = y;
+		
+		s.velX[i] = 0;
+		s.velY[i] = 0;
+		s.speed[i] = 0;
+		s.angle[i] = (float) -Math.PI/2;
+		s.oldAngle[i] = s.angle[i];
+		s.laps[i] = 0;
+		s.cheatedLap[i] = false;
+		s.oldSeg[i] = 0;
+		s.seg[i] = 0;
+		s.distToSeg[i] = -y;
+		s.progress[i] = progress.arcPosition(0, x, y);
+	}
+	
+	/**
+	 * Sets the state of the car to one that was simulated somewhere else,
+	 * like on a server. Where it was before becomes its old position, so
+	 * that it is drawn moving from there.
+	 */
+	public void setState(float x, float y, float velX, float velY, float angle, float speed,
+			int turningFrame, int seg, int laps, boolean locked) {
+		CarStateBuffer s = state;
+		int i = index;
+		s.oldX[i] = s.posX[i];
+		s.oldY[i] = s.posY[i];
+		s.oldAngle[i] = s.angle[i];
+		s.posX[i] = x;
+		s.posY[i] = y;
+		s.velX[i] = velX;
+		s.velY[i] = velY;
+		s.angle[i] = angle;
+		s.speed[i] = speed;
+		s.turningFrame[i] = turningFrame;
+		s.oldSeg[i] = s.seg[i];
+		s.seg[i] = seg;
+		s.laps[i] = laps;
+		s.cheatedLap[i] = false;
+		s.locked[i] = locked;
+	}
+	
+	/**
+	 * Sets how many laps the car has driven, when it is counted somewhere else.
+	 */
+	public void setLaps(int laps) {
+		state.laps[index] = laps;
+	}
+	
+	/**
+	 * Locks the car in place so that it cannot move.
+	 */
+	public void lock() {
+		state.locked[index] = true;
+	}
+	/**
+	 * "Unleash" the car. This is only used at the start of a race
+	 * after the countdown. The car gets different starting speeds
+	 * depending on how long it has accelerated for.
+	 */
+	public void unleash() {
+		state.locked[index] = false;
+		float percent = state.framesAccelerated[index]/60.0f;
+		if (percent > 1) percent = 2 - percent;
+		if (percent < 0) percent = 0;
+		
+		if (driver.aiControlled()) {
+			percent = AIcontroller.randomStartBoost();
+		}
+		
+		state.speed[index] = CarStateBuffer.MAX_SPEED * percent;
+	}
+	
+	/**
+	 * Sets which keys are held down. The car is moved by them the next
+	 * time the cars in the state buffer are moved.
+	 */
+	public void setInput(boolean up, boolean down, boolean left, boolean right, boolean item) {
+		int bits = 0;
+		if (up) bits |= CarStateBuffer.UP;
+		if (down) bits |= CarStateBuffer.DOWN;
+		if (left) bits |= CarStateBuffer.LEFT;
+		if (right) bits |= CarStateBuffer.RIGHT;
+		if (item) bits |= CarStateBuffer.ITEM;
+		state.setInput(index, bits);
+	}
+	
+	/*
+	 * Updates the position of the car according to which buttons are held down.
+	 * Simulation moves all cars at once instead, this moves only this one.
+	 */
+	public void move(boolean up, boolean down, boolean left, boolean right){
+		setInput(up, down, left, right, false);
+		state.move(index);
+	}
+	
+	/**
+	 * Check if this car is colliding with another car.
+	 * If there is, apply force to both.
+	 * @param car The car to collide with.
+	 */
+	public void collideWith(SimCar car) {
+		Vector2 pos = getPosition2();
+		Vector2 carPos = car.getPosition2();
+		float dx = carPos.x - pos.x;
+		float dy = carPos.y - pos.y;
+		float len2 = dx*dx + dy*dy;
+		if (len2 <= RADIUS_SQRD) {
+			// Get the total velocity of both cars and then push both
+			// in opposite directions with half of that velocity.
+			float a = temp.set(carPos).sub(pos).angleRad();
+			float totalVel = getVelocity().len() + car.getVelocity().len();
+			car.push((float) Math.cos(a)*totalVel/2, (float) Math.sin(a)*totalVel/2);
+			push((float) Math.cos(a+Math.PI)*totalVel/2, (float) Math.sin(a+Math.PI)*totalVel/2);
+		}
+	}
+	
+	/**
+	 * Push this car by a given force. It will also lose
+	 * speed depending on the angle it's being pushed in.
+	 */
+	public void push(float x, float y) {
+		pushes++;
+		temp.set(getVelocity()).nor();
+		temp2.set(x, y).nor();
+		float dot = temp.dot(temp2) + 1;
+		state.speed[index] *= (dot/2) * 0.8;
+		
+		state.velX[index] += x;
+		state.velY[index] += y;
+	}
+	
+	/**
+	 * Returns how many times the car has been pushed. A lap where this
+	 * changed can't be replayed from the input of the car alone.
+	 */
+	public int getPushes() {
+		return pushes;
+	}
+	
+	/**
+	 * Gives this car an item. If it already has one, nothing happens.
+	 */
+	public void giveItem(Item item) {
+		if (hasItem()) return;
+		this.item = item;
+	}
+	/**
+	 * Sets the item that the car holds, replacing the one it had.
+	 * It is used when a race is restored from a snapshot.
+	 */
+	public void setItem(Item item) {
+		this.item = item;
+	}
+	/**
+	 * Use the item, if the car has one.
+	 */
+	public void useItem() {
+		if (!hasItem()) return;
+		item.activate();
+		item = null;
+	}
+	public boolean hasItem() {
+		return item != null;
+	}
+	public int getItemId() {
+		return item.getId();
+	}
+	public ItemType getItem() {
+		return item.type();
+	}
+	
+	/**
+	 * Checks if the car is turned and going the wrong way.
+	 */
+	public boolean goingWrongWay() {
+		// The dot product of the car and the segments normal is positive
+		int curSeg = state.seg[index];
+		float angle = state.angle[index];
+		float dot = progress.getNormalX(curSeg)*(float)Math.cos(angle)
+		          + progress.getNormalY(curSeg)*(float)Math.sin(angle);
+		return dot < 0;
+	}
+	
+	/**
+	 * Updates how many laps a car has done by checking
+	 * its old and new segment index.
+	 */
+	public void updateLaps() {
+		int totSegs = progress.last();
+		int oldSeg = state.oldSeg[index];
+		int curSeg = state.seg[index];
+		state.completedLap[index] = false;
+		if (oldSeg == totSegs && curSeg == 0) {
+			if (!state.cheatedLap[index]) {
+				state.laps[index]++;
+				state.completedLap[index] = true;
+			} else state.cheatedLap[index] = false;
+		} else if (oldSeg == 0 && curSeg == totSegs){
+			state.cheatedLap[index] = true;
+		}
+	}
+	
+	/**
+	 * Checks and updates which segment the car currently is in.
+	 */
+	public void updateSegment() {
+		int oldSeg = state.seg[index];
+		state.oldSeg[index] = oldSeg;
+		float x = state.posX[index];
+		float y = state.posY[index];
+		
+		// If the car isn't near any segment it keeps the one it had. It can only
+		// happen for a moment, since the walls keep the cars on the track.
+		int curSeg = progress.findSegment(x, y, oldSeg);
+		if (curSeg < 0) curSeg = oldSeg;
+		state.seg[index] = curSeg;
+		
+		// Update the distance to segment.
+		float distToSeg = progress.distanceToLine(curSeg, x, y);
+		state.distToSeg[index] = distToSeg;
+		
+		if (oldSeg != curSeg || state.longestDist[index] == 0) {
+			state.longestDist[index] = distToSeg;
+		}
+	}
+	
+	/**
+	 * Updates how far the car has driven in the race. Should be
+	 * called after both the segment and the laps have been updated.
+	 */
+	public void updateProgress() {
+		int curSeg = state.seg[index];
+		float arc = progress.arcPosition(curSeg, state.posX[index], state.posY[index]);
+		state.progress[index] = getLaps() * progress.getTrackLength() + arc;
+	}
+}
@@ -0,0 +1,211 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.racer.item.ItemBoxGrid;
+import com.racer.item.ItemBoxGroup;
+import com.racer.item.ItemManager;
+
+/**
+ * Simulation advances a race one tick at a time. It moves every car, tests
+ * them against each other and the item boxes, updates the items and lastly
+ * lets the race update laps and rankings. Nothing in here draws anything,
+ * so it runs just as well without a window.
+ */
+public class Simulation {
+	private CarStateBuffer states;
+	private ArrayList<? extends SimCar> cars;
+	// The cars at their index in the state buffer, used to restore snapshots.
+	private SimCar[] byIndex;
+	// The indices in the state buffer of the cars that have a driver.
+	private int[] driven;
+	private ArrayList<? extends Driver> drivers;
+	private ArrayList<ItemBoxGroup> boxes;
+	private ItemManager items;
+	private RaceState race;
+	private TrackData track;
+	private CarSweep sweep;
+	private IntArray pairs;
+	// Cars that replay recorded laps. They are not part of the race.
+	private ArrayList<Ghost> ghosts;
+	private InputRecorder recorder;
+	// Decides which AI drivers think every tick, or null if all of them do.
+	private AIScheduler scheduler;
+	
+	// The threads that the work for every car is split over, or null.
+	private JobPool jobs;
+	private JobPool.Job driveJob;
+	
+	/**
+	 * Creates a new simulation.
+	 * @param states The buffer that holds the state of all of the cars.
+	 * @param cars All of the cars. Collisions are resolved in the order of this list.
+	 */
+	public Simulation(CarStateBuffer states, ArrayList<? extends SimCar> cars) {
+		this.states = states;
+		this.cars = cars;
+		items = new ItemManager();
+		sweep = new CarSweep();
+		pairs = new IntArray();
+		ghosts = new ArrayList<Ghost>();
+		driveJob = new JobPool.Job() {
+			@Override
+			public void run(int worker, int from, int to) {
+				for (int i=from; i < to; i++) {
+					Driver d = drivers.get(i);
+					if (scheduler == null || !d.aiControlled() || scheduler.shouldThink(d.getCar())) {
+						d.drive();
+					}
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Lets the simulation split the work that is done for every car over
+	 * the threads of a pool. The result is exactly the same as without it.
+	 * @param jobs The pool to use, or null to do everything on one thread.
+	 */
+	public void setJobPool(JobPool jobs) {
+		this.jobs = jobs;
+	}
+	
+	/**
+	 * Sets up the simulation for a new track.
+	 * @param track The generated track to race on.
+	 * @param drivers The drivers of the cars.
+	 * @param race The race that keeps track of laps and rankings.
+	 */
+	public void setUp(TrackData track, ArrayList<? extends Driver> drivers, RaceState race) {
+		this.track = track;
+		this.drivers = drivers;
+		this.race = race;
+		boxes = track.getBoxes();
+		items.setUp(boxes, drivers.size());
+		states.setTrack(track);
+		
+		driven = new int[drivers.size()];
+		for (int i=0; i < drivers.size(); i++) {
+			driven[i] = drivers.get(i).getCar().getIndex();
+		}
+		Arrays.sort(driven);
+		
+		byIndex = new SimCar[states.size()];
+		for (int i=0; i < cars.size(); i++) {
+			SimCar c = cars.get(i);
+			byIndex[c.getIndex()] = c;
+		}
+	}
+	
+	/**
+	 * Sets a recorder that records the input of the drivers every tick.
+	 * @param recorder The recorder, or null to stop recording.
+	 */
+	public void setRecorder(InputRecorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	/**
+	 * Sets a scheduler that lets the AI drivers think less often than every
+	 * tick. In between they keep holding the keys that they held before.
+	 * @param scheduler The scheduler, or null to let every AI think every tick.
+	 */
+	public void setScheduler(AIScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	public AIScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Returns the ghosts that are moved every tick after the cars.
+	 */
+	public ArrayList<Ghost> getGhosts() {
+		return ghosts;
+	}
+	
+	public CarStateBuffer getStates() {
+		return states;
+	}
+	public ArrayList<? extends SimCar> getCars() {
+		return cars;
+	}
+	public RaceState getRace() {
+		return race;
+	}
+	public TrackData getTrack() {
+		return track;
+	}
+	
+	/**
+	 * Returns how many bytes writeState needs right now. It grows
+	 * a little with the number of items that are in use.
+	 */
+	public int stateSize() {
+		return 8 + states.stateSize() + race.stateSize() + items.stateSize();
+	}
+	
+	/**
+	 * Writes everything that changes during a race to a snapshot: the state of
+	 * the cars, the time and rankings of the race, the items and the boxes, and
+	 * the random generator of the AI.
+	 */
+	public void writeState(SnapshotBuffer out) {
+		out.putLong(AIcontroller.getRandomState());
+		states.writeState(out);
+		race.writeState(out);
+		items.writeState(out);
+	}
+	
+	/**
+	 * Puts the race back in the state of a snapshot that was written by
+	 * writeState. Ticking on from it gives the same race as the first time,
+	 * as long as the players drive the same way.
+	 */
+	public void readState(SnapshotBuffer in) {
+		AIcontroller.setRandomState(in.getLong());
+		states.readState(in);
+		race.readState(in, byIndex);
+		items.readState(in, byIndex);
+	}
+	
+	/**
+	 * Advances the race by one tick.
+	 */
+	public void tick() {
+		// Every driver only looks at its own car when it decides what to do,
+		// and every car only collides with the static walls when it moves,
+		// so both can be done for many cars at the same time.
+		if (scheduler != null) scheduler.update(race.getTicks(), race.getRanking(), track);
+		if (jobs == null) {
+			driveJob.run(0, 0, drivers.size());
+		} else {
+			jobs.run(driveJob, drivers.size());
+		}
+		states.move(driven, driven.length, jobs);
+		
+		// Collision test the cars with the item boxes near them.
+		int size = cars.size();
+		ItemBoxGrid boxGrid = track.getBoxGrid();
+		for (int i=0; i < size; ++i) {
+			boxGrid.hitTestCar(cars.get(i));
+		}
+		
+		// Collision test the cars with each other. Only the pairs that are close
+		// are tested, but in the same order as if every pair had been tested.
+		sweep.findPairs(cars, pairs);
+		for (int k=0; k < pairs.size; k++) {
+			int pair = pairs.get(k);
+			cars.get(pair / size).collideWith(cars.get(pair % size));
+		}
+		items.update();
+		race.update(jobs);
+		
+		for (int i=0; i < ghosts.size(); i++) {
+			ghosts.get(i).tick();
+		}
+		if (recorder != null) recorder.update();
+	}
+}
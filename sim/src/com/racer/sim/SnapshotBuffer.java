@@ -0,0 +1,136 @@
+package com.racer.sim;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * SnapshotBuffer is a block of memory outside of the Java heap that snapshots of
+ * a race are written to and read from. Whole arrays are copied in one go, which
+ * for a direct buffer in the native byte order is a plain memory copy.
+ * <p>
+ * Everything is read and written at a cursor that is moved by seek. Every
+ * value takes a multiple of four bytes so that the float and int views of
+ * the memory always line up with the cursor.
+ */
+public class SnapshotBuffer {
+	private ByteBuffer bytes;
+	private FloatBuffer floats;
+	private IntBuffer ints;
+	private int pos;
+	
+	/**
+	 * Allocates the memory of the buffer.
+	 * @param capacity The size of the buffer in bytes.
+	 */
+	public SnapshotBuffer(int capacity) {
+		bytes = ByteBuffer.allocateDirect(align(capacity)).order(ByteOrder.nativeOrder());
+		floats = bytes.asFloatBuffer();
+		ints = bytes.asIntBuffer();
+	}
+	
+	/** Rounds a number of bytes up to a multiple of four. */
+	public static int align(int bytes) {
+		return (bytes + 3) & ~3;
+	}
+	
+	/** Returns the size of the buffer in bytes. */
+	public int capacity() {
+		return bytes.capacity();
+	}
+	
+	/** Moves the cursor to a position in bytes. It has to be a multiple of four. */
+	public void seek(int position) {
+		pos = position;
+	}
+	/** Returns the position of the cursor in bytes. */
+	public int position() {
+		return pos;
+	}
+	
+	public void putInt(int value) {
+		ints.put(pos >> 2, value);
+		pos += 4;
+	}
+	public int getInt() {
+		int value = ints.get(pos >> 2);
+		pos += 4;
+		return value;
+	}
+	
+	public void putFloat(float value) {
+		floats.put(pos >> 2, value);
+		pos += 4;
+	}
+	public float getFloat() {
+		float value = floats.get(pos >> 2);
+		pos += 4;
+		return value;
+	}
+	
+	public void putLong(long value) {
+		putInt((int) (value >>> 32));
+		putInt((int) value);
+	}
+	public long getLong() {
+		long high = getInt();
+		return (high << 32) | (getInt() & 0xFFFFFFFFL);
+	}
+	
+	public void putBoolean(boolean value) {
+		putInt(value ? 1 : 0);
+	}
+	public boolean getBoolean() {
+		return getInt() != 0;
+	}
+	
+	/** Copies the first count values of an array to the buffer. */
+	public void putFloats(float[] a, int count) {
+		floats.position(pos >> 2);
+		floats.put(a, 0, count);
+		pos += count * 4;
+	}
+	/** Copies values from the buffer to the start of an array. */
+	public void getFloats(float[] a, int count) {
+		floats.position(pos >> 2);
+		floats.get(a, 0, count);
+		pos += count * 4;
+	}
+	
+	public void putInts(int[] a, int count) {
+		ints.position(pos >> 2);
+		ints.put(a, 0, count);
+		pos += count * 4;
+	}
+	public void getInts(int[] a, int count) {
+		ints.position(pos >> 2);
+		ints.get(a, 0, count);
+		pos += count * 4;
+	}
+	
+	public void putBytes(byte[] a, int count) {
+		bytes.position(pos);
+		bytes.put(a, 0, count);
+		pos += align(count);
+	}
+	public void getBytes(byte[] a, int count) {
+		bytes.position(pos);
+		bytes.get(a, 0, count);
+		pos += align(count);
+	}
+	
+	/** Booleans are written as one byte each. */
+	public void putBooleans(boolean[] a, int count) {
+		for (int i=0; i < count; i++) {
+			bytes.put(pos + i, (byte) (a[i] ? 1 : 0));
+		}
+		pos += align(count);
+	}
+	public void getBooleans(boolean[] a, int count) {
+		for (int i=0; i < count; i++) {
+			a[i] = bytes.get(pos + i) != 0;
+		}
+		pos += align(count);
+	}
+}
@@ -0,0 +1,70 @@
+package com.racer.sim;
+
+/**
+ * TickClock decides how many times the simulation should tick each frame. Frame
+ * time is added to an accumulator and whole ticks are taken out of it, which
+ * makes the race run at the same speed no matter how fast it is rendered.
+ * What is left in the accumulator is used to interpolate between the last two
+ * ticks when drawing.
+ */
+public class TickClock {
+	/** The tick rate that all of the timers in the game are measured in. */
+	public static final int TICKS_PER_SECOND = 60;
+	// Never tick more than this many times in one frame. If rendering is so
+	// slow that this is reached, the race is allowed to slow down instead of
+	// spending even more time catching up.
+	private static final int MAX_TICKS_PER_FRAME = 10;
+	
+	private float tickTime;
+	private float accumulator;
+	
+	public TickClock() {
+		this(TICKS_PER_SECOND);
+	}
+	
+	/**
+	 * Creates a clock with a specific tick rate.
+	 * @param ticksPerSecond How many ticks there should be every second.
+	 */
+	public TickClock(int ticksPerSecond) {
+		tickTime = 1f / ticksPerSecond;
+	}
+	
+	/**
+	 * Adds the time of a frame to the clock.
+	 * @param delta The time since the last frame in seconds.
+	 * @return How many times the simulation should tick this frame.
+	 */
+	public int advance(float delta) {
+		accumulator += delta;
+		int ticks = (int) (accumulator / tickTime);
+		if (ticks > MAX_TICKS_PER_FRAME) {
+			ticks = MAX_TICKS_PER_FRAME;
+			accumulator = ticks * tickTime;
+		}
+		accumulator -= ticks * tickTime;
+		return ticks;
+	}
+	
+	/**
+	 * Returns how far the clock has come towards the next tick, between 0 and 1.
+	 * It is used to interpolate between the last two ticks.
+	 */
+	public float alpha() {
+		float alpha = accumulator / tickTime;
+		// Rounding errors can make the accumulator go slightly out of range.
+		if (alpha < 0) return 0;
+		if (alpha > 1) return 1;
+		return alpha;
+	}
+	
+	/** Returns the length of a tick in seconds. */
+	public float getTickTime() {
+		return tickTime;
+	}
+	
+	/** Throws away any time that hasn't been ticked yet. */
+	public void reset() {
+		accumulator = 0;
+	}
+}
@@ -0,0 +1,467 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.racer.item.ItemBoxGrid;
+import com.racer.item.ItemBoxGroup;
+import com.racer.track.BoxRow;
+import com.racer.track.Node;
+import com.racer.track.Track;
+import com.racer.track.TrackCache;
+
+/**
+ * TrackData is everything about a track that the simulation needs. It is generated
+ * from the nodes of a Track and consists of the walls used for collisions, the
+ * segment lines used for keeping track of laps and the item boxes.
+ * <p>
+ * The road is generated in pixmap coordinates, which are scaled down to ground
+ * coordinates once it's done. The triangles that make up the road are saved
+ * in pixmap coordinates so that the ground can draw them later.
+ * <p>
+ * Generating a track takes a while, so it can be written to a TrackCache and
+ * read back from it instead the next time.
+ */
+public class TrackData {
+	public static final int GROUND_SIZE = 1200;
+	public static final int PIXMAP_SIZE = 4096;
+	public static final float SCALE = ((float)PIXMAP_SIZE)/GROUND_SIZE;
+	
+	public static final int C_ROAD_LIGHT = 0x939393FF;
+	public static final int C_ROAD_DARK = 0x757575FF;
+	
+	// The sections of a TrackCache that the data is written to.
+	private static final int SEGMENTS = 2;
+	private static final int LEFT_WALL = 3;
+	private static final int RIGHT_WALL = 4;
+	private static final int ROAD = 5;
+	private static final int ROAD_COLORS = 6;
+	private static final int LAYOUT = 7;
+	private static final int RACING_LINE = 8;
+	private static final int[] SECTIONS = { SEGMENTS, LEFT_WALL, RIGHT_WALL, ROAD, ROAD_COLORS, LAYOUT, RACING_LINE };
+	
+	public ArrayList<Vector2> segments;
+	private ArrayList<Vector2> leftWall;
+	private ArrayList<Vector2> rightWall;
+	private ArrayList<ItemBoxGroup> boxes;
+	private ItemBoxGrid boxGrid;
+	private WallGrid wallGrid;
+	private TrackProgress progress;
+	private RacingLine racingLine;
+	private float goalLineWidth;
+	
+	// The goal line in ground coordinates.
+	private Vector2 goalPos;
+	private float goalWidth;
+	
+	// The bottom-left and upper-right corner of the map in pixmap coordinates.
+	private Vector2 blCorner;
+	private Vector2 urCorner;
+	// Where the origin of the ground coordinates is, in pixmap coordinates.
+	private Vector2 origin;
+	
+	// Every triangle of the road is stored as six floats, x1 y1 x2 y2 x3 y3,
+	// along with the color to draw it with.
+	private FloatArray roadTriangles;
+	private IntArray roadColors;
+	private int roadColor;
+	private boolean useAltColor;
+	
+	/**
+	 * Generates the data of a track.
+	 * @param track The track to generate.
+	 */
+	public TrackData(Track track) {
+		roadTriangles = new FloatArray();
+		roadColors = new IntArray();
+		
+		boxes = new ArrayList<ItemBoxGroup>();
+		generate(track);
+	}
+	
+	/**
+	 * Reads the data of a track that has been written to a cache, which gives
+	 * the same data as generating it.
+	 * @param track The track, which the item boxes are taken from.
+	 * @param cache A cache that the data of the track was written to.
+	 */
+	public TrackData(Track track, TrackCache cache) {
+		roadTriangles = new FloatArray(cache.getFloats(ROAD));
+		roadColors = new IntArray(cache.getInts(ROAD_COLORS));
+		segments = toVectors(cache.getFloats(SEGMENTS));
+		leftWall = toVectors(cache.getFloats(LEFT_WALL));
+		rightWall = toVectors(cache.getFloats(RIGHT_WALL));
+		
+		float[] layout = cache.getFloats(LAYOUT);
+		goalPos = new Vector2(layout[0], layout[1]);
+		goalWidth = layout[2];
+		goalLineWidth = layout[3];
+		blCorner = new Vector2(layout[4], layout[5]);
+		urCorner = new Vector2(layout[6], layout[7]);
+		origin = new Vector2(layout[8], layout[9]);
+		
+		boxes = new ArrayList<ItemBoxGroup>();
+		buildTables(track, cache.getFloats(RACING_LINE));
+	}
+	
+	/** Returns true if a cache has everything that TrackData writes to it. */
+	public static boolean isIn(TrackCache cache) {
+		for (int i=0; i < SECTIONS.length; i++) {
+			if (!cache.has(SECTIONS[i])) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the data to a cache. The item boxes and the tables that are quick
+	 * to make are left out, they are made again when the data is read.
+	 */
+	public void write(TrackCache.Writer out) {
+		out.putFloats(ROAD, roadTriangles.items, roadTriangles.size);
+		out.putInts(ROAD_COLORS, roadColors.items, roadColors.size);
+		out.putFloats(SEGMENTS, toFloats(segments), segments.size()*2);
+		out.putFloats(LEFT_WALL, toFloats(leftWall), leftWall.size()*2);
+		out.putFloats(RIGHT_WALL, toFloats(rightWall), rightWall.size()*2);
+		
+		float[] layout = { goalPos.x, goalPos.y, goalWidth, goalLineWidth,
+				blCorner.x, blCorner.y, urCorner.x, urCorner.y, origin.x, origin.y };
+		out.putFloats(LAYOUT, layout, layout.length);
+		
+		float[] line = new float[racingLine.size()*2];
+		for (int k=0; k < racingLine.size(); k++) {
+			line[k*2] = racingLine.getX(k);
+			line[k*2+1] = racingLine.getY(k);
+		}
+		out.putFloats(RACING_LINE, line, line.length);
+	}
+	
+	private static ArrayList<Vector2> toVectors(float[] a) {
+		ArrayList<Vector2> list = new ArrayList<Vector2>(a.length/2);
+		for (int i=0; i < a.length; i += 2) {
+			list.add(new Vector2(a[i], a[i+1]));
+		}
+		return list;
+	}
+	private static float[] toFloats(ArrayList<Vector2> list) {
+		float[] a = new float[list.size()*2];
+		for (int i=0; i < list.size(); i++) {
+			a[i*2] = list.get(i).x;
+			a[i*2+1] = list.get(i).y;
+		}
+		return a;
+	}
+	
+	public ArrayList<Vector2> getLeft() {
+		return leftWall;
+	}
+	public ArrayList<Vector2> getRight() {
+		return rightWall;
+	}
+	/** Returns the table used to find which segment a car is in. */
+	public TrackProgress getProgress() {
+		return progress;
+	}
+	/** Returns the line that the AI drives along. */
+	public RacingLine getRacingLine() {
+		return racingLine;
+	}
+	/** Returns the grid used to find the walls near a car. */
+	public WallGrid getWallGrid() {
+		return wallGrid;
+	}
+	public float getGoalLineWidth() {
+		return goalLineWidth;
+	}
+	public ArrayList<ItemBoxGroup> getBoxes() {
+		return boxes;
+	}
+	/** Returns the grid used to find the item boxes near a car. */
+	public ItemBoxGrid getBoxGrid() {
+		return boxGrid;
+	}
+	public Vector2 getGoalPos() {
+		return goalPos;
+	}
+	public float getGoalWidth() {
+		return goalWidth;
+	}
+	public Vector2 getBottomLeft() {
+		return blCorner;
+	}
+	public Vector2 getUpperRight() {
+		return urCorner;
+	}
+	
+	/**
+	 * Converts a point in pixmap coordinates, like the corners of the road
+	 * triangles, to ground coordinates.
+	 * @param out Is set to the point in ground coordinates.
+	 */
+	public Vector2 toGround(float x, float y, Vector2 out) {
+		return out.set((origin.x - x) / SCALE, (origin.y - y) / SCALE);
+	}
+	
+	/** Returns how many triangles the road consists of. */
+	public int roadTriangles() {
+		return roadColors.size;
+	}
+	/**
+	 * Returns the corners of the road triangles, six floats
+	 * per triangle, in pixmap coordinates.
+	 */
+	public float[] getRoadTriangles() {
+		return roadTriangles.items;
+	}
+	public int getRoadColor(int triangle) {
+		return roadColors.get(triangle);
+	}
+	
+	private void generate(Track track) {
+		// Add a copy of first node to end to help with looping. The nodes are copied
+		// into a new list so that the track can be generated more than once.
+		ArrayList<Node> nodes = new ArrayList<Node>(track.nodes);
+		int SegLen = track.segmentLength;
+		
+		// These ArrayLists will store all of the node
+		// positions to be used for collision testing.
+		ArrayList<Vector2> leftN = new ArrayList<Vector2>();
+		ArrayList<Vector2> rightN = new ArrayList<Vector2>();
+		segments = new ArrayList<Vector2>();
+		
+		double pi2 = Math.PI/2;
+		double lastRot = nodes.get(0).rot;
+		// All vectors are instantiated here so that the don't
+		// have to be recreated each loop
+		Vector2 pos = new Vector2(PIXMAP_SIZE / 2, PIXMAP_SIZE / 2);
+		Vector2 pos2 = new Vector2();
+		Vector2 left = new Vector2();
+		Vector2 left2 = new Vector2();
+		Vector2 right = new Vector2();
+		Vector2 right2 = new Vector2();
+		
+		Vector2 prevLeft = new Vector2();
+		Vector2 prevRight = new Vector2();
+		
+		// Keep track of the bottom-left and upper-right corner of the map.
+		blCorner = new Vector2(pos);
+		urCorner = new Vector2(pos);
+		
+		nodes.add(nodes.get(0));
+		Vector2 startPos = new Vector2(pos);
+		useAltColor = false;
+		for (int i=0; i<nodes.size() - 1; i++) {
+			Node node1 = nodes.get(i);
+			Node node2 = nodes.get(i+1);
+			
+			// Check if the road turns or goes straight with this segment.
+			boolean turnsLeft = lastRot > node1.rot;
+			boolean turnsRight = lastRot < node1.rot;
+			lastRot = node1.rot;
+			
+			if (turnsRight) {
+				pos.set(prevRight).add((float) Math.cos(node1.rot-pi2)*node1.width/2,
+						               (float) Math.sin(node1.rot-pi2)*node1.width/2);
+			} else if (turnsLeft) {
+				pos.set(prevLeft).add((float) Math.cos(node1.rot+pi2)*node1.width/2,
+				                      (float) Math.sin(node1.rot+pi2)*node1.width/2);
+			}
+			
+			
+			left.set(pos).add((float) Math.cos(node1.rot-pi2)*node1.width/2,
+			                  (float) Math.sin(node1.rot-pi2)*node1.width/2);
+			right.set(pos).add((float) Math.cos(node1.rot+pi2)*node1.width/2,
+	                           (float) Math.sin(node1.rot+pi2)*node1.width/2);
+			
+			if (i == 0) {
+				// Move the beginning nodes so that right is at (0, 0)
+				pos.set(left);
+				left.set(pos).add((float) Math.cos(node1.rot-pi2)*node1.width/2,
+		                  (float) Math.sin(node1.rot-pi2)*node1.width/2);
+				right.set(pos).add((float) Math.cos(node1.rot+pi2)*node1.width/2,
+                         (float) Math.sin(node1.rot+pi2)*node1.width/2);
+				startPos.set(pos);
+				
+				// Add goal at the first segment
+				goalPos = new Vector2(pos).sub(left);
+				goalPos.set(goalPos.x/SCALE, goalPos.y/SCALE);
+				goalWidth = node1.width/SCALE;
+			}
+			
+			// If the road turns, add a connecting triangle.
+			if (turnsRight) {
+				roadColor = C_ROAD_DARK;
+				addTriangle(prevLeft, prevRight, left);
+				leftN.add(new Vector2(prevLeft));
+			}
+			else if (turnsLeft) {
+				roadColor = C_ROAD_DARK;
+				addTriangle(prevLeft, prevRight, right);
+				rightN.add(new Vector2(prevRight));
+			}
+			
+			leftN.add(new Vector2(left));
+			rightN.add(new Vector2(right));
+			
+			// Loop through each segment of the node and add them
+			// as two triangles each.
+			for (int segment = 1; segment <= node1.length; segment++) {
+				float interp = (float)segment / node1.length;
+				float rWidth = node1.width/2 + (node2.width-node1.width)/2 * interp;
+				
+				pos2.set(pos.x + (float)Math.cos(node1.rot)*SegLen*node1.length *interp,
+						 pos.y + (float)Math.sin(node1.rot)*SegLen*node1.length *interp);
+				left2.set(pos2).add((float) Math.cos(node1.rot-pi2)*rWidth,
+		                            (float) Math.sin(node1.rot-pi2)*rWidth);
+				right2.set(pos2).add((float) Math.cos(node1.rot+pi2)*rWidth,
+	                                 (float) Math.sin(node1.rot+pi2)*rWidth);
+				
+				roadColor = nextRoadColor();
+				addTriangle(left, right2, right);
+				addTriangle(left, right2, left2);
+				
+				left.set(left2);
+				right.set(right2);
+			}
+			pos.set(pos2);
+			prevLeft.set(left2);
+			prevRight.set(right2);
+			
+			// Save the end line of the segment
+			segments.add(new Vector2(left2));
+			segments.add(new Vector2(right2));
+		}
+		
+		// Add the last connecting piece between the first and last segment.
+		Vector2 firstLeft = new Vector2();
+		Vector2 firstRight = new Vector2();
+		Node n1 = nodes.get(0);
+		firstLeft.set(startPos).add((float) Math.cos(n1.rot-pi2)*n1.width/2,
+		                            (float) Math.sin(n1.rot-pi2)*n1.width/2);
+		firstRight.set(startPos).add((float) Math.cos(n1.rot+pi2)*n1.width/2,
+                                     (float) Math.sin(n1.rot+pi2)*n1.width/2);
+		roadColor = C_ROAD_DARK;
+		addTriangle(firstLeft, prevRight, prevLeft);
+		addTriangle(firstLeft, prevRight, firstRight);
+		
+		// Add the two last nodes to the node collections.
+		leftN.add(new Vector2(prevLeft));
+		rightN.add(new Vector2(prevRight));
+		// Loop the nodes
+		leftN.add(new Vector2(leftN.get(0)));
+		rightN.add(new Vector2(rightN.get(0)));
+		// Also save the beginning nodes to finish of the segment list.
+		segments.add(new Vector2(leftN.get(0)));
+		segments.add(new Vector2(rightN.get(0)));
+		
+		// Update the corner vectors
+		calcCorners(leftN, blCorner, urCorner);
+		calcCorners(rightN, blCorner, urCorner);
+		
+		// Scale the wall nodes so that they are in the same scale as the pixmap.
+		origin = new Vector2(rightN.get(0));
+		Vector2 offset = new Vector2(rightN.get(0).scl(-1/SCALE));
+		scaleToGround(segments, offset);
+		scaleToGround(leftN, offset);
+		scaleToGround(rightN, offset);
+		// fix weird bug where the first right node gets sent into oblivion
+		rightN.get(0).set(rightN.get(rightN.size()-1));
+		
+		leftWall = leftN;
+		rightWall = rightN;
+		goalLineWidth = leftN.get(0).x;
+		buildTables(track, null);
+	}
+	
+	/**
+	 * Makes the tables used during a race from the walls and segments, and
+	 * places the item boxes.
+	 * @param line The points of the racing line, x and y, or null to work it out.
+	 */
+	private void buildTables(Track track, float[] line) {
+		wallGrid = new WallGrid(leftWall, rightWall);
+		progress = new TrackProgress(segments);
+		racingLine = (line == null) ? new RacingLine(progress) : new RacingLine(progress, line);
+		
+		placeBoxes(track);
+		boxGrid = new ItemBoxGrid(boxes);
+	}
+	
+	/**
+	 * Puts the rows of item boxes of the track across the road. A row is placed
+	 * between the lines at the start and the end of its segment.
+	 */
+	private void placeBoxes(Track track) {
+		for (int i=0; i < track.boxes.size(); i++) {
+			BoxRow row = track.boxes.get(i);
+			if (row.segment < 0 || row.segment >= progress.size()) {
+				throw new IllegalArgumentException("Box row on segment " + row.segment
+						+ ", but the track has " + progress.size() + " segments");
+			}
+			int from = progress.previous(row.segment);
+			int to = row.segment;
+			float t = row.position / 100f;
+			// The start of a line is on the left wall and its end on the right.
+			float leftX = lerp(progress.getStartX(from), progress.getStartX(to), t);
+			float leftY = lerp(progress.getStartY(from), progress.getStartY(to), t);
+			float rightX = lerp(progress.getStartX(from) + progress.getDeltaX(from),
+					progress.getStartX(to) + progress.getDeltaX(to), t);
+			float rightY = lerp(progress.getStartY(from) + progress.getDeltaY(from),
+					progress.getStartY(to) + progress.getDeltaY(to), t);
+			boxes.add(new ItemBoxGroup(row.amount, new Vector2(rightX, rightY), new Vector2(leftX, leftY)));
+		}
+	}
+	
+	private static float lerp(float a, float b, float t) {
+		return a + (b - a) * t;
+	}
+	
+	/**
+	 * Convenience method meant for the generate method. It returns the
+	 * next road color in order to get alternate coloring.
+	 */
+	private int nextRoadColor() {
+		useAltColor = !useAltColor;
+		if (useAltColor) {
+			return C_ROAD_DARK;
+		}
+		return C_ROAD_LIGHT;
+	}
+	
+	/**
+	 * Convenience method for generate. Saves a triangle of
+	 * the road using three vectors and the current road color.
+	 */
+	private void addTriangle(Vector2 v1, Vector2 v2, Vector2 v3) {
+		roadTriangles.add(v1.x);
+		roadTriangles.add(v1.y);
+		roadTriangles.add(v2.x);
+		roadTriangles.add(v2.y);
+		roadTriangles.add(v3.x);
+		roadTriangles.add(v3.y);
+		roadColors.add(roadColor);
+	}
+	
+	/**
+	 * Scales an array of vector from pixmap coordinates to ground coordinates.
+	 * Mostly meant for the node lists in generate.
+	 * @param list
+	 */
+	private void scaleToGround(ArrayList<Vector2> list, Vector2 offset) {
+		float scale = -1/SCALE;
+		for (Vector2 v : list) {
+			v.scl(scale);
+			v.sub(offset);
+		}
+	}
+	
+	private void calcCorners(ArrayList<Vector2> nodes, Vector2 blCorner, Vector2 urCorner) {
+		for (Vector2 n : nodes) {
+			if (n.x < blCorner.x) blCorner.x = n.x;
+			else if (n.x > urCorner.x) urCorner.x = n.x;
+			if (n.y < blCorner.y) blCorner.y = n.y;
+			else if (n.y > urCorner.y) urCorner.y = n.y;
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * TrackProgress is a table of the lines that cross the road, made once when a
+ * track is generated. A car is always on its way to one of the lines, and the
+ * part of the road before line k is called segment k. The lines are numbered
+ * so that segment 0 starts at the goal line, which is the last line.
+ * <p>
+ * For every line the table holds its direction, normal and length, and for
+ * every segment where it starts along the track and how long it is. A grid
+ * over the track is used to find which segment a point is in without looking
+ * at every segment.
+ */
+public class TrackProgress {
+	// The size of a grid cell in ground units.
+	private static final float CELL_SIZE = 8f;
+	// Segments are put in the cells around them too, since the walls of
+	// a curve bend outside of the straight lines between the line ends.
+	private static final float PADDING = 4f;
+	
+	private int count;
+	
+	// The ends of every line and the vector from its start to its end.
+	private float[] startX;
+	private float[] startY;
+	private float[] endX;
+	private float[] endY;
+	private float[] deltaX;
+	private float[] deltaY;
+	private float[] length2;
+	// The direction and normal of every line. The normal points back
+	// towards the segment before the line.
+	private float[] dirX;
+	private float[] dirY;
+	private float[] normalX;
+	private float[] normalY;
+	private float[] length;
+	
+	// Where every segment starts along the track and how long it is,
+	// measured between the middles of the lines.
+	private float[] arcStart;
+	private float[] arcLength;
+	private float trackLength;
+	
+	private float minX;
+	private float minY;
+	private int cols;
+	private int rows;
+	// The segments of cell c are found between cellStart[c] and cellStart[c+1].
+	private int[] cellStart;
+	private int[] cellSegs;
+	
+	/**
+	 * Builds the table.
+	 * @param segments The ends of the lines, two vectors per line.
+	 */
+	public TrackProgress(ArrayList<Vector2> segments) {
+		count = segments.size() / 2;
+		startX = new float[count];
+		startY = new float[count];
+		endX = new float[count];
+		endY = new float[count];
+		deltaX = new float[count];
+		deltaY = new float[count];
+		length2 = new float[count];
+		dirX = new float[count];
+		dirY = new float[count];
+		normalX = new float[count];
+		normalY = new float[count];
+		length = new float[count];
+		arcStart = new float[count];
+		arcLength = new float[count];
+		
+		Vector2 temp = new Vector2();
+		for (int k=0; k < count; k++) {
+			Vector2 start = segments.get(k*2);
+			Vector2 end = segments.get(k*2+1);
+			startX[k] = start.x;
+			startY[k] = start.y;
+			endX[k] = end.x;
+			endY[k] = end.y;
+			deltaX[k] = end.x - start.x;
+			deltaY[k] = end.y - start.y;
+			length2[k] = start.dst2(end);
+			length[k] = start.dst(end);
+			
+			temp.set(end).sub(start).nor();
+			dirX[k] = temp.x;
+			dirY[k] = temp.y;
+			// Calculated the same way that the AI always has.
+			temp.set(end).sub(start).rotate90(1).nor();
+			normalX[k] = temp.x;
+			normalY[k] = temp.y;
+		}
+		
+		// Segment k goes from the middle of line k-1 to the middle of line k.
+		float arc = 0;
+		for (int k=0; k < count; k++) {
+			int prev = (k == 0) ? count-1 : k-1;
+			float dx = (startX[k] + endX[k])/2 - (startX[prev] + endX[prev])/2;
+			float dy = (startY[k] + endY[k])/2 - (startY[prev] + endY[prev])/2;
+			arcStart[k] = arc;
+			arcLength[k] = (float) Math.sqrt(dx*dx + dy*dy);
+			arc += arcLength[k];
+		}
+		trackLength = arc;
+		
+		buildGrid();
+	}
+	
+	/**
+	 * Puts every segment into the cells that its padded bounding box covers.
+	 */
+	private void buildGrid() {
+		minX = Float.MAX_VALUE;
+		minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int k=0; k < count; k++) {
+			minX = Math.min(minX, Math.min(startX[k], endX[k]));
+			minY = Math.min(minY, Math.min(startY[k], endY[k]));
+			maxX = Math.max(maxX, Math.max(startX[k], endX[k]));
+			maxY = Math.max(maxY, Math.max(startY[k], endY[k]));
+		}
+		minX -= PADDING + CELL_SIZE;
+		minY -= PADDING + CELL_SIZE;
+		cols = (int) ((maxX + PADDING - minX) / CELL_SIZE) + 2;
+		rows = (int) ((maxY + PADDING - minY) / CELL_SIZE) + 2;
+		
+		cellStart = new int[cols*rows + 1];
+		int[] bounds = new int[count*4];
+		for (int k=0; k < count; k++) {
+			int prev = (k == 0) ? count-1 : k-1;
+			float x0 = Math.min(Math.min(startX[k], endX[k]),
+			                    Math.min(startX[prev], endX[prev]));
+			float x1 = Math.max(Math.max(startX[k], endX[k]),
+			                    Math.max(startX[prev], endX[prev]));
+			float y0 = Math.min(Math.min(startY[k], endY[k]),
+			                    Math.min(startY[prev], endY[prev]));
+			float y1 = Math.max(Math.max(startY[k], endY[k]),
+			                    Math.max(startY[prev], endY[prev]));
+			bounds[k*4] = col(x0 - PADDING);
+			bounds[k*4+1] = col(x1 + PADDING);
+			bounds[k*4+2] = row(y0 - PADDING);
+			bounds[k*4+3] = row(y1 + PADDING);
+			
+			for (int y=bounds[k*4+2]; y <= bounds[k*4+3]; y++) {
+				for (int x=bounds[k*4]; x <= bounds[k*4+1]; x++) {
+					cellStart[y*cols + x + 1]++;
+				}
+			}
+		}
+		for (int c=0; c < cols*rows; c++) {
+			cellStart[c+1] += cellStart[c];
+		}
+		
+		cellSegs = new int[cellStart[cols*rows]];
+		int[] fill = new int[cols*rows];
+		for (int k=0; k < count; k++) {
+			for (int y=bounds[k*4+2]; y <= bounds[k*4+3]; y++) {
+				for (int x=bounds[k*4]; x <= bounds[k*4+1]; x++) {
+					int c = y*cols + x;
+					cellSegs[cellStart[c] + fill[c]++] = k;
+				}
+			}
+		}
+	}
+	
+	private int col(float x) {
+		int c = (int) Math.floor((x - minX) / CELL_SIZE);
+		if (c < 0) return 0;
+		if (c >= cols) return cols - 1;
+		return c;
+	}
+	private int row(float y) {
+		int r = (int) Math.floor((y - minY) / CELL_SIZE);
+		if (r < 0) return 0;
+		if (r >= rows) return rows - 1;
+		return r;
+	}
+	
+	/** Returns how many lines, and segments, there are. */
+	public int size() {
+		return count;
+	}
+	/** Returns the index of the goal line, which is also the last segment. */
+	public int last() {
+		return count - 1;
+	}
+	/** Returns the index of the line or segment after k. */
+	public int next(int k) {
+		return (k == count-1) ? 0 : k+1;
+	}
+	/** Returns the index of the line or segment before k. */
+	public int previous(int k) {
+		return (k == 0) ? count-1 : k-1;
+	}
+	
+	public float getStartX(int line) {
+		return startX[line];
+	}
+	public float getStartY(int line) {
+		return startY[line];
+	}
+	/** Returns the x part of the vector from the start to the end of a line. */
+	public float getDeltaX(int line) {
+		return deltaX[line];
+	}
+	/** Returns the y part of the vector from the start to the end of a line. */
+	public float getDeltaY(int line) {
+		return deltaY[line];
+	}
+	public float getDirectionX(int line) {
+		return dirX[line];
+	}
+	public float getDirectionY(int line) {
+		return dirY[line];
+	}
+	/** Returns the x part of the normal of a line, which points back along the track. */
+	public float getNormalX(int line) {
+		return normalX[line];
+	}
+	/** Returns the y part of the normal of a line, which points back along the track. */
+	public float getNormalY(int line) {
+		return normalY[line];
+	}
+	public float getLength(int line) {
+		return length[line];
+	}
+	/** Returns how far along the track from the goal line a segment starts. */
+	public float getArcStart(int seg) {
+		return arcStart[seg];
+	}
+	public float getArcLength(int seg) {
+		return arcLength[seg];
+	}
+	/** Returns the length of one lap. */
+	public float getTrackLength() {
+		return trackLength;
+	}
+	
+	/**
+	 * Returns how far a point is behind a line, measured along the normal of
+	 * the line. It is negative if the point has passed the line.
+	 */
+	public float distanceBehind(int line, float x, float y) {
+		return (x - startX[line])*normalX[line] + (y - startY[line])*normalY[line];
+	}
+	
+	/**
+	 * Returns the distance from a point to the closest point on a line. It is
+	 * calculated the same way as Intersector.distanceSegmentPoint.
+	 */
+	public float distanceToLine(int line, float x, float y) {
+		float nx = startX[line];
+		float ny = startY[line];
+		if (length2[line] != 0) {
+			float t = ((x - nx) * deltaX[line] + (y - ny) * deltaY[line]) / length2[line];
+			if (t > 1) {
+				nx = endX[line];
+				ny = endY[line];
+			} else if (t >= 0) {
+				nx += deltaX[line] * t;
+				ny += deltaY[line] * t;
+			}
+		}
+		float dx = x - nx;
+		float dy = y - ny;
+		return (float) Math.sqrt(dx*dx + dy*dy);
+	}
+	
+	/**
+	 * Returns true if a point has passed the line before a segment but not
+	 * the line at its end.
+	 */
+	public boolean inSegment(int seg, float x, float y) {
+		return distanceBehind(previous(seg), x, y) <= 0 && distanceBehind(seg, x, y) > 0;
+	}
+	
+	/**
+	 * Finds which segment a point is in. Where the track comes close to
+	 * itself a point can seem to be in more than one, and then the one
+	 * closest to the segment the point was in before is used.
+	 * @param x The x position of the point.
+	 * @param y The y position of the point.
+	 * @param hint The segment the point was in before.
+	 * @return The segment, or -1 if the point isn't close to any segment.
+	 */
+	public int findSegment(float x, float y, int hint) {
+		if (inSegment(hint, x, y)) return hint;
+		
+		int c = row(y)*cols + col(x);
+		int best = -1;
+		int bestDist = Integer.MAX_VALUE;
+		for (int i=cellStart[c]; i < cellStart[c+1]; i++) {
+			int seg = cellSegs[i];
+			if (!inSegment(seg, x, y)) continue;
+			
+			int dist = Math.abs(seg - hint);
+			dist = Math.min(dist, count - dist);
+			if (dist < bestDist) {
+				best = seg;
+				bestDist = dist;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Returns how far along the track from the goal line a point in a segment is.
+	 */
+	public float arcPosition(int seg, float x, float y) {
+		// How far the point has come from the line before the
+		// segment compared to how far it has left to the next.
+		float passed = -distanceBehind(previous(seg), x, y);
+		float left = distanceBehind(seg, x, y);
+		float t = (passed + left > 0) ? passed / (passed + left) : 0;
+		if (t < 0) t = 0;
+		else if (t > 1) t = 1;
+		return arcStart[seg] + t * arcLength[seg];
+	}
+}
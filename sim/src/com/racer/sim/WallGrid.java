@@ -0,0 +1,173 @@
+package com.racer.sim;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * WallGrid is a uniform grid over the walls of a track. Every cell knows which
+ * wall segments pass through it, so a car only has to test the walls that are
+ * in the cells it moved through instead of every wall on the track.
+ * <p>
+ * A wall segment is referred to by the index of its last node in the wall list,
+ * which means that segment i goes from node i-1 to node i.
+ */
+public class WallGrid {
+	// The size of a cell in ground units. A car never moves more than
+	// about 0.6 units in a tick, so it usually only touches one cell.
+	public static final float CELL_SIZE = 4f;
+	
+	private float minX;
+	private float minY;
+	private int cols;
+	private int rows;
+	
+	// The segments of a wall are stored in one array for the whole grid. The
+	// segments of cell c are found between cellStart[c] and cellStart[c+1].
+	private int[][] cellStart;
+	private int[][] cellWalls;
+	
+	/**
+	 * Builds a grid over the left and right walls.
+	 */
+	public WallGrid(ArrayList<Vector2> left, ArrayList<Vector2> right) {
+		// Find the bounds of the walls and pad them with one cell.
+		minX = Float.MAX_VALUE;
+		minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int w=0; w < 2; w++) {
+			ArrayList<Vector2> list = (w == 0) ? left : right;
+			for (int i=0; i < list.size(); i++) {
+				Vector2 v = list.get(i);
+				if (v.x < minX) minX = v.x;
+				if (v.x > maxX) maxX = v.x;
+				if (v.y < minY) minY = v.y;
+				if (v.y > maxY) maxY = v.y;
+			}
+		}
+		minX -= CELL_SIZE;
+		minY -= CELL_SIZE;
+		cols = (int) ((maxX - minX) / CELL_SIZE) + 2;
+		rows = (int) ((maxY - minY) / CELL_SIZE) + 2;
+		
+		cellStart = new int[2][];
+		cellWalls = new int[2][];
+		build(0, left);
+		build(1, right);
+	}
+	
+	/**
+	 * Puts the segments of one wall into the cells that their bounding boxes cover.
+	 */
+	private void build(int side, ArrayList<Vector2> wall) {
+		int[] start = new int[cols*rows + 1];
+		
+		// First count how many segments every cell has...
+		for (int i=1; i < wall.size(); i++) {
+			Vector2 n1 = wall.get(i-1);
+			Vector2 n2 = wall.get(i);
+			int x0 = col(Math.min(n1.x, n2.x));
+			int x1 = col(Math.max(n1.x, n2.x));
+			int y0 = row(Math.min(n1.y, n2.y));
+			int y1 = row(Math.max(n1.y, n2.y));
+			for (int y=y0; y <= y1; y++) {
+				for (int x=x0; x <= x1; x++) {
+					start[y*cols + x + 1]++;
+				}
+			}
+		}
+		for (int c=0; c < cols*rows; c++) {
+			start[c+1] += start[c];
+		}
+		
+		// ...and then fill them. Segments are added in increasing
+		// order, which keeps every cell sorted.
+		int[] walls = new int[start[cols*rows]];
+		int[] fill = new int[cols*rows];
+		for (int i=1; i < wall.size(); i++) {
+			Vector2 n1 = wall.get(i-1);
+			Vector2 n2 = wall.get(i);
+			int x0 = col(Math.min(n1.x, n2.x));
+			int x1 = col(Math.max(n1.x, n2.x));
+			int y0 = row(Math.min(n1.y, n2.y));
+			int y1 = row(Math.max(n1.y, n2.y));
+			for (int y=y0; y <= y1; y++) {
+				for (int x=x0; x <= x1; x++) {
+					int c = y*cols + x;
+					walls[start[c] + fill[c]++] = i;
+				}
+			}
+		}
+		cellStart[side] = start;
+		cellWalls[side] = walls;
+	}
+	
+	private int col(float x) {
+		int c = (int) Math.floor((x - minX) / CELL_SIZE);
+		if (c < 0) return 0;
+		if (c >= cols) return cols - 1;
+		return c;
+	}
+	private int row(float y) {
+		int r = (int) Math.floor((y - minY) / CELL_SIZE);
+		if (r < 0) return 0;
+		if (r >= rows) return rows - 1;
+		return r;
+	}
+	
+	/**
+	 * Finds the wall segments that might intersect a line. The segments are
+	 * the ones in the cells covered by the bounding box of the line.
+	 * @param side 0 for the left wall, 1 for the right.
+	 * @param from The start of the line.
+	 * @param to The end of the line.
+	 * @param out Is filled with the segments, sorted and without duplicates.
+	 */
+	public void query(int side, Vector2 from, Vector2 to, IntArray out) {
+		out.clear();
+		int x0 = col(Math.min(from.x, to.x));
+		int x1 = col(Math.max(from.x, to.x));
+		int y0 = row(Math.min(from.y, to.y));
+		int y1 = row(Math.max(from.y, to.y));
+		int[] start = cellStart[side];
+		int[] walls = cellWalls[side];
+		
+		for (int y=y0; y <= y1; y++) {
+			for (int x=x0; x <= x1; x++) {
+				int c = y*cols + x;
+				for (int i=start[c]; i < start[c+1]; i++) {
+					out.add(walls[i]);
+				}
+			}
+		}
+		if (x0 == x1 && y0 == y1) return;
+		
+		// The line covered more than one cell, so the list needs to be sorted and
+		// have its duplicates removed. It is short, so insertion sort is enough.
+		int[] items = out.items;
+		int size = out.size;
+		for (int i=1; i < size; i++) {
+			int v = items[i];
+			int j = i - 1;
+			while (j >= 0 && items[j] > v) {
+				items[j+1] = items[j];
+				j--;
+			}
+			items[j+1] = v;
+		}
+		int unique = 0;
+		for (int i=0; i < size; i++) {
+			if (unique == 0 || items[unique-1] != items[i]) {
+				items[unique++] = items[i];
+			}
+		}
+		out.size = unique;
+	}
+	
+	/** Returns how many cells there are in the grid. */
+	public int cells() {
+		return cols * rows;
+	}
+}
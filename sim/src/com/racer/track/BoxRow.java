@@ -0,0 +1,19 @@
+package com.racer.track;
+
+/**
+ * A BoxRow is a row of item boxes across the road. It is placed on one of the
+ * segments of the track, which are numbered like the nodes that they are
+ * made from, so segment 0 is the one that starts at the goal line.
+ */
+public class BoxRow {
+	public int segment;
+	// How far along the segment the row is, in percent.
+	public int position;
+	public int amount;
+	
+	public BoxRow(int segment, int position, int amount) {
+		this.segment = segment;
+		this.position = position;
+		this.amount = amount;
+	}
+}
@@ -9,10 +9,13 @@ public class Node {
 	public int length;
 	public int width;
 	public double rot;
+	// The rotation in degrees, as it was written in the track file.
+	public int degrees;
 	
 	public Node (int l, int w, int r) {
 		length = l;
 		width = w;
+		degrees = r;
 		// the '-' is there to make the degrees go counter-clockwise, which
 		// is what you should be used to when it comes to trigonometry.
 		rot = Math.toRadians(-r);
@@ -6,14 +6,20 @@ public class Track {
 	public int laps;
 	public int segmentLength;
 	public ArrayList<Node> nodes;
+	public ArrayList<BoxRow> boxes;
 	
 	public Track(int laps, int segLen) {
 		this.laps = laps;
 		segmentLength = segLen;
 		nodes = new ArrayList<Node>();
+		boxes = new ArrayList<BoxRow>();
 	}
 	
 	public void addSegment(int length, int width, int rotation) {
 		nodes.add(new Node(length, width, rotation));
 	}
+	
+	public void addBoxRow(int segment, int position, int amount) {
+		boxes.add(new BoxRow(segment, position, amount));
+	}
 }
@@ -0,0 +1,306 @@
+package com.racer.track;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * TrackCache is a compiled track, written next to its .track file so that the
+ * track doesn't have to be generated again the next time it is raced on. The
+ * file starts with a hash of the .track file, and is only used as long as the
+ * hash still matches, so a track that is edited is generated again.
+ * <p>
+ * The rest of the file is made of sections, each with a tag, that are read
+ * straight out of a memory-mapped buffer. TrackData writes the sections that
+ * the simulation needs and the game adds the ones it draws with, using tags
+ * from GAME_TAGS and up.
+ */
+public class TrackCache {
+	public static final String EXTENSION = ".cache";
+	// Has to be changed whenever what is written to a section changes.
+	private static final int FORMAT = 2;
+	private static final int MAGIC = 0x5452434B;
+	private static final int HASH_SIZE = 20;
+	private static final int HEADER_SIZE = 8 + HASH_SIZE;
+	
+	/** The laps, segments and box rows of the Track. */
+	public static final int TRACK = 1;
+	/** The first tag that the game can use for its own sections. */
+	public static final int GAME_TAGS = 100;
+	
+	private ByteBuffer data;
+	private int[] tags;
+	private int[] offsets;
+	private int[] lengths;
+	
+	private TrackCache(ByteBuffer data) {
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		this.data = data;
+		int table = HEADER_SIZE + 4;
+		int count = (data.capacity() < table) ? -1 : data.getInt(HEADER_SIZE);
+		if (count < 0 || count > (data.capacity() - table) / 12) {
+			throw new IllegalArgumentException("The table of sections is outside of the file");
+		}
+		tags = new int[count];
+		offsets = new int[count];
+		lengths = new int[count];
+		for (int i=0; i < count; i++) {
+			int entry = table + i*12;
+			tags[i] = data.getInt(entry);
+			offsets[i] = data.getInt(entry + 4);
+			lengths[i] = data.getInt(entry + 8);
+			if (offsets[i] < 0 || lengths[i] < 0 || lengths[i] > data.capacity() - offsets[i]) {
+				throw new IllegalArgumentException("Section " + tags[i] + " is outside of the file");
+			}
+		}
+	}
+	
+	/** Returns the file that the compiled version of a track is kept in. */
+	public static File fileFor(File track) {
+		return new File(track.getPath() + EXTENSION);
+	}
+	
+	/**
+	 * Opens the compiled version of a track that is next to it.
+	 * @return The cache, or null if there is none or the track has changed since.
+	 */
+	public static TrackCache open(File track) {
+		return open(track, fileFor(track));
+	}
+	
+	/**
+	 * Opens a compiled track.
+	 * @param track The .track file that it was compiled from.
+	 * @param file The compiled track.
+	 * @return The cache, or null if there is none or the track has changed since.
+	 */
+	public static TrackCache open(File track, File file) {
+		if (!file.isFile()) return null;
+		RandomAccessFile in = null;
+		try {
+			in = new RandomAccessFile(file, "r");
+			// Check the header before mapping the file, so that a file that
+			// is about to be replaced is never mapped.
+			byte[] header = new byte[HEADER_SIZE];
+			if (in.length() < HEADER_SIZE + 4) return null;
+			in.readFully(header);
+			ByteBuffer h = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+			if (h.getInt() != MAGIC || h.getInt() != FORMAT) return null;
+			byte[] stored = new byte[HASH_SIZE];
+			h.get(stored);
+			if (!Arrays.equals(stored, hash(track))) return null;
+			
+			// The mapping stays valid after the file is closed.
+			FileChannel channel = in.getChannel();
+			return new TrackCache(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IOException e) {
+			System.err.println("Could not read " + file + ": " + e.getMessage());
+			return null;
+		} catch (IllegalArgumentException e) {
+			System.err.println("Could not read " + file + ": " + e.getMessage());
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+	
+	/**
+	 * Returns a hash of the contents of a file.
+	 */
+	static byte[] hash(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) in.length()];
+			in.readFully(bytes);
+			return hash(bytes);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/** Returns the same hash as hash(File) for the contents of a file. */
+	static byte[] hash(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static void close(RandomAccessFile file) {
+		if (file == null) return;
+		try {
+			file.close();
+		} catch (IOException e) {
+			// Nothing was written, so there is nothing to lose.
+		}
+	}
+	
+	/** Returns true if there is a section with a tag. */
+	public boolean has(int tag) {
+		return find(tag) >= 0;
+	}
+	
+	private int find(int tag) {
+		for (int i=0; i < tags.length; i++) {
+			if (tags[i] == tag) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the bytes of a section, in little endian order. The buffer
+	 * reads straight from the file, nothing is copied.
+	 */
+	public ByteBuffer get(int tag) {
+		int i = find(tag);
+		if (i < 0) throw new IllegalArgumentException("The cache has no section " + tag);
+		ByteBuffer b = data.duplicate();
+		b.limit(offsets[i] + lengths[i]);
+		b.position(offsets[i]);
+		return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/** Returns a section that was written with Writer.putFloats. */
+	public float[] getFloats(int tag) {
+		ByteBuffer b = get(tag);
+		float[] a = new float[b.remaining() / 4];
+		b.asFloatBuffer().get(a);
+		return a;
+	}
+	/** Returns a section that was written with Writer.putInts. */
+	public int[] getInts(int tag) {
+		ByteBuffer b = get(tag);
+		int[] a = new int[b.remaining() / 4];
+		b.asIntBuffer().get(a);
+		return a;
+	}
+	
+	/** Returns the track that was written with Writer.putTrack. */
+	public Track readTrack() {
+		int[] t = getInts(TRACK);
+		Track track = new Track(t[0], t[1]);
+		int i = 4;
+		for (int n=0; n < t[2]; n++, i += 3) {
+			track.addSegment(t[i], t[i+1], t[i+2]);
+		}
+		for (int b=0; b < t[3]; b++, i += 3) {
+			track.addBoxRow(t[i], t[i+1], t[i+2]);
+		}
+		return track;
+	}
+	
+	/**
+	 * Writer collects the sections of a compiled track and writes them to a file.
+	 */
+	public static class Writer {
+		private byte[] hash;
+		private ArrayList<Integer> tags;
+		private ArrayList<ByteBuffer> sections;
+		
+		/**
+		 * Creates a writer for a compiled track.
+		 * @param track The .track file that is compiled.
+		 */
+		public Writer(File track) throws IOException {
+			hash = hash(track);
+			tags = new ArrayList<Integer>();
+			sections = new ArrayList<ByteBuffer>();
+		}
+		
+		/**
+		 * Adds a section. The bytes between the position and the limit of the
+		 * buffer are written, and they should be in little endian order.
+		 */
+		public void put(int tag, ByteBuffer bytes) {
+			if (tags.contains(tag)) throw new IllegalArgumentException("Section " + tag + " was already added");
+			tags.add(tag);
+			sections.add(bytes.slice());
+		}
+		
+		/** Returns a buffer for a section of a size, to fill and then put. */
+		public static ByteBuffer allocate(int bytes) {
+			return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		/** Adds a section of the first n floats of an array. */
+		public void putFloats(int tag, float[] a, int n) {
+			ByteBuffer b = allocate(n*4);
+			b.asFloatBuffer().put(a, 0, n);
+			put(tag, b);
+		}
+		/** Adds a section of the first n ints of an array. */
+		public void putInts(int tag, int[] a, int n) {
+			ByteBuffer b = allocate(n*4);
+			b.asIntBuffer().put(a, 0, n);
+			put(tag, b);
+		}
+		
+		/** Adds the laps, segments and box rows of a track. */
+		public void putTrack(Track track) {
+			int[] t = new int[4 + 3*track.nodes.size() + 3*track.boxes.size()];
+			t[0] = track.laps;
+			t[1] = track.segmentLength;
+			t[2] = track.nodes.size();
+			t[3] = track.boxes.size();
+			int i = 4;
+			for (Node n : track.nodes) {
+				t[i++] = n.length;
+				t[i++] = n.width;
+				t[i++] = n.degrees;
+			}
+			for (BoxRow b : track.boxes) {
+				t[i++] = b.segment;
+				t[i++] = b.position;
+				t[i++] = b.amount;
+			}
+			putInts(TRACK, t, t.length);
+		}
+		
+		/**
+		 * Writes the compiled track. It is written to a temporary file first,
+		 * so that a half written file is never read.
+		 */
+		public void write(File file) throws IOException {
+			int count = tags.size();
+			int offset = HEADER_SIZE + 4 + count*12;
+			ByteBuffer head = allocate(offset);
+			head.putInt(MAGIC);
+			head.putInt(FORMAT);
+			head.put(hash);
+			head.putInt(count);
+			for (int i=0; i < count; i++) {
+				head.putInt(tags.get(i));
+				head.putInt(offset);
+				head.putInt(sections.get(i).remaining());
+				offset += sections.get(i).remaining();
+			}
+			head.flip();
+			
+			File temp = new File(file.getPath() + ".tmp");
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				FileChannel channel = out.getChannel();
+				while (head.hasRemaining()) channel.write(head);
+				for (int i=0; i < count; i++) {
+					ByteBuffer b = sections.get(i).duplicate();
+					while (b.hasRemaining()) channel.write(b);
+				}
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Could not replace " + file);
+			}
+		}
+	}
+}
@@ -0,0 +1,439 @@
+package com.racer.track;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * TrackCatalog lists every track in a folder along with what the menu shows
+ * about it, so that the tracks can be listed and previewed without loading any
+ * of them. What is known about the tracks is kept in an index file in the same
+ * folder, which is brought up to date when the catalog is opened: a file that
+ * has the same size and modification time as when it was indexed isn't read at
+ * all, and a track is only parsed again if its contents changed.
+ * <p>
+ * A track is either a .track file or a .track entry of a .zip track pack. The
+ * tracks of a pack are unpacked into a folder next to the packs the first
+ * time they are raced on, so that they can be compiled like any other track.
+ */
+public class TrackCatalog {
+	public static final String INDEX_NAME = "catalog.index";
+	public static final String PACK_FOLDER = ".packs";
+	private static final int MAGIC = 0x54434154;
+	// Has to be changed whenever what is written for an entry changes.
+	private static final int FORMAT = 1;
+	private static final String EXTENSION = ".track";
+	
+	/**
+	 * Entry is what the catalog knows about one track.
+	 */
+	public static class Entry {
+		/** The file name of the track without ".track". */
+		public final String name;
+		public final int laps;
+		public final int segments;
+		/** How long the middle of the road is, in pixmap coordinates. */
+		public final float length;
+		/**
+		 * The middle of the road as pairs of x and y, scaled to fit a square
+		 * from 0 to 1 with y going up. The last point is the first one again.
+		 */
+		public final float[] thumbnail;
+		
+		// The name of the track file, or the name of its pack and the
+		// entry in it separated by a '/', and the size and modification
+		// time of that file or pack when the track was indexed.
+		final String source;
+		final long modified;
+		final long size;
+		final byte[] hash;
+		
+		Entry(String source, long modified, long size, byte[] hash, String name,
+				int laps, int segments, float length, float[] thumbnail) {
+			this.source = source;
+			this.modified = modified;
+			this.size = size;
+			this.hash = hash;
+			this.name = name;
+			this.laps = laps;
+			this.segments = segments;
+			this.length = length;
+			this.thumbnail = thumbnail;
+		}
+		
+		/** Returns the same entry, for a file that has been touched but not changed. */
+		Entry touched(long modified, long size) {
+			return new Entry(source, modified, size, hash, name, laps, segments, length, thumbnail);
+		}
+		
+		boolean isIn(File file) {
+			return file.lastModified() == modified && file.length() == size;
+		}
+		
+		boolean isPacked() {
+			return source.indexOf('/') >= 0;
+		}
+	}
+	
+	private File dir;
+	private ArrayList<Entry> entries;
+	// The files of the tracks, which for packed tracks aren't
+	// known until they have been unpacked.
+	private File[] files;
+	
+	private TrackCatalog(File dir, ArrayList<Entry> entries) {
+		this.dir = dir;
+		this.entries = entries;
+		files = new File[entries.size()];
+	}
+	
+	/**
+	 * Opens the catalog of a folder of tracks, and brings its index up to date
+	 * with the tracks and packs that are in the folder now.
+	 */
+	public static TrackCatalog open(File dir) {
+		File indexFile = new File(dir, INDEX_NAME);
+		HashMap<String, Entry> indexed = read(indexFile);
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		
+		File[] found = dir.listFiles();
+		if (found == null) found = new File[0];
+		Arrays.sort(found);
+		boolean changed = false;
+		int kept = 0;
+		for (File file : found) {
+			String name = file.getName();
+			if (!file.isFile()) continue;
+			if (name.endsWith(EXTENSION)) {
+				Entry old = indexed.get(name);
+				if (old != null && old.isIn(file)) {
+					entries.add(old);
+					kept++;
+					continue;
+				}
+				changed = true;
+				try {
+					Entry e = index(name, file.lastModified(), file.length(), readAll(new FileInputStream(file)), old);
+					if (e != null) entries.add(e);
+				} catch (IOException e) {
+					System.err.println("Could not read " + file + ": " + e.getMessage());
+				}
+			} else if (name.endsWith(".zip")) {
+				int before = entries.size();
+				if (keepPack(file, indexed, entries)) {
+					kept += entries.size() - before;
+				} else {
+					changed = true;
+					indexPack(file, indexed, entries);
+				}
+			}
+		}
+		
+		// Tracks that have been removed only show up as fewer kept entries.
+		if (changed || kept != indexed.size()) {
+			try {
+				write(indexFile, entries);
+			} catch (IOException e) {
+				System.err.println("Could not write " + indexFile + ": " + e.getMessage());
+			}
+		}
+		return new TrackCatalog(dir, entries);
+	}
+	
+	/**
+	 * Adds the entries of a pack that hasn't changed since it was indexed.
+	 * @return False if the pack has to be indexed again.
+	 */
+	private static boolean keepPack(File pack, HashMap<String, Entry> indexed, ArrayList<Entry> entries) {
+		ArrayList<Entry> packed = new ArrayList<Entry>();
+		String prefix = pack.getName() + "/";
+		for (Entry e : indexed.values()) {
+			if (!e.source.startsWith(prefix)) continue;
+			if (!e.isIn(pack)) return false;
+			packed.add(e);
+		}
+		if (packed.isEmpty()) return false;
+		Collections.sort(packed, BY_SOURCE);
+		entries.addAll(packed);
+		return true;
+	}
+	
+	private static void indexPack(File pack, HashMap<String, Entry> indexed, ArrayList<Entry> entries) {
+		ZipFile zip = null;
+		try {
+			zip = new ZipFile(pack);
+			ArrayList<String> names = new ArrayList<String>();
+			Enumeration<? extends ZipEntry> all = zip.entries();
+			while (all.hasMoreElements()) {
+				ZipEntry z = all.nextElement();
+				String name = z.getName();
+				if (z.isDirectory() || !name.endsWith(EXTENSION)) continue;
+				// The track is unpacked to a path made from its name later.
+				if (name.startsWith("/") || name.contains("..") || name.contains("\\")) {
+					System.err.println(pack.getName() + ": skipping " + name);
+					continue;
+				}
+				names.add(name);
+			}
+			Collections.sort(names);
+			
+			for (String name : names) {
+				String source = pack.getName() + "/" + name;
+				byte[] bytes = readAll(zip.getInputStream(zip.getEntry(name)));
+				Entry e = index(source, pack.lastModified(), pack.length(), bytes, indexed.get(source));
+				if (e != null) entries.add(e);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not read " + pack + ": " + e.getMessage());
+		} finally {
+			if (zip != null) {
+				try {
+					zip.close();
+				} catch (IOException e) {
+					// It was only read from.
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Creates the entry of a track, which is only parsed if its contents
+	 * are different from when it was last indexed.
+	 * @param old The entry it had the last time, or null.
+	 * @return The entry, or null if the track couldn't be parsed.
+	 */
+	private static Entry index(String source, long modified, long size, byte[] bytes, Entry old) {
+		byte[] hash = TrackCache.hash(bytes);
+		if (old != null && Arrays.equals(old.hash, hash)) return old.touched(modified, size);
+		
+		Track track;
+		try {
+			track = TrackLoader.loadTrack(new ByteArrayInputStream(bytes), source);
+		} catch (RuntimeException e) {
+			// Scanner throws when a number is missing.
+			System.err.println(source + ": could not be parsed, " + e);
+			return null;
+		}
+		if (track.nodes.isEmpty()) {
+			System.err.println(source + ": has no segments");
+			return null;
+		}
+		
+		String name = source.substring(source.lastIndexOf('/') + 1);
+		name = name.substring(0, name.length() - EXTENSION.length());
+		float length = 0;
+		for (Node n : track.nodes) {
+			length += n.length * track.segmentLength;
+		}
+		return new Entry(source, modified, size, hash, name, track.laps, track.nodes.size(),
+				length, thumbnail(track));
+	}
+	
+	/**
+	 * Follows the middle of the road from node to node, the way TrackData
+	 * does but without the widths, and scales it to fit a square.
+	 */
+	private static float[] thumbnail(Track track) {
+		int count = track.nodes.size();
+		float[] points = new float[(count + 1) * 2];
+		float x = 0;
+		float y = 0;
+		float minX = 0, minY = 0, maxX = 0, maxY = 0;
+		for (int i=0; i < count; i++) {
+			Node n = track.nodes.get(i);
+			float len = n.length * track.segmentLength;
+			x += (float) Math.cos(n.rot) * len;
+			// Pixmap y goes down, the thumbnail's goes up.
+			y -= (float) Math.sin(n.rot) * len;
+			points[i*2 + 2] = x;
+			points[i*2 + 3] = y;
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+		// The track should end where it started, but close it if it doesn't.
+		points[count*2] = 0;
+		points[count*2 + 1] = 0;
+		
+		float size = Math.max(Math.max(maxX - minX, maxY - minY), 1);
+		float offX = (size - (maxX - minX)) / 2;
+		float offY = (size - (maxY - minY)) / 2;
+		for (int i=0; i < points.length; i += 2) {
+			points[i] = (points[i] - minX + offX) / size;
+			points[i+1] = (points[i+1] - minY + offY) / size;
+		}
+		return points;
+	}
+	
+	private static final Comparator<Entry> BY_SOURCE = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			return a.source.compareTo(b.source);
+		}
+	};
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Reads the entries of an index file.
+	 * @return The entries by their source, which is empty if there is no
+	 *         index or it can't be read.
+	 */
+	private static HashMap<String, Entry> read(File file) {
+		HashMap<String, Entry> entries = new HashMap<String, Entry>();
+		if (!file.isFile()) return entries;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) return entries;
+			int count = in.readInt();
+			for (int i=0; i < count; i++) {
+				String source = in.readUTF();
+				long modified = in.readLong();
+				long size = in.readLong();
+				byte[] hash = new byte[in.readUnsignedByte()];
+				in.readFully(hash);
+				String name = in.readUTF();
+				int laps = in.readInt();
+				int segments = in.readInt();
+				float length = in.readFloat();
+				float[] thumbnail = new float[in.readInt()];
+				for (int p=0; p < thumbnail.length; p++) {
+					thumbnail[p] = in.readFloat();
+				}
+				entries.put(source, new Entry(source, modified, size, hash, name,
+						laps, segments, length, thumbnail));
+			}
+		} catch (IOException e) {
+			// Everything is indexed again.
+			System.err.println("Could not read " + file + ": " + e.getMessage());
+			entries.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// It was only read from.
+				}
+			}
+		}
+		return entries;
+	}
+	
+	/**
+	 * Writes an index file. It is written to a temporary file first, so that a
+	 * half written index is never read.
+	 */
+	private static void write(File file, ArrayList<Entry> entries) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeInt(entries.size());
+			for (Entry e : entries) {
+				out.writeUTF(e.source);
+				out.writeLong(e.modified);
+				out.writeLong(e.size);
+				out.writeByte(e.hash.length);
+				out.write(e.hash);
+				out.writeUTF(e.name);
+				out.writeInt(e.laps);
+				out.writeInt(e.segments);
+				out.writeFloat(e.length);
+				out.writeInt(e.thumbnail.length);
+				for (int p=0; p < e.thumbnail.length; p++) {
+					out.writeFloat(e.thumbnail[p]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Could not replace " + file);
+		}
+	}
+	
+	/** Returns how many tracks there are. */
+	public int size() {
+		return entries.size();
+	}
+	
+	public Entry get(int track) {
+		return entries.get(track);
+	}
+	
+	/**
+	 * Returns the .track file of a track. A track from a pack is unpacked
+	 * first, unless it already has been.
+	 */
+	public File getFile(int track) {
+		if (files[track] != null) return files[track];
+		Entry e = entries.get(track);
+		if (!e.isPacked()) {
+			files[track] = new File(dir, e.source);
+			return files[track];
+		}
+		
+		File file = new File(new File(dir, PACK_FOLDER), e.source);
+		try {
+			if (!file.isFile() || !Arrays.equals(TrackCache.hash(file), e.hash)) {
+				unpack(e, file);
+			}
+		} catch (IOException ex) {
+			// The track then fails to load like a missing file does.
+			System.err.println("Could not unpack " + e.source + ": " + ex.getMessage());
+		}
+		files[track] = file;
+		return file;
+	}
+	
+	private void unpack(Entry e, File file) throws IOException {
+		int slash = e.source.indexOf('/');
+		ZipFile zip = new ZipFile(new File(dir, e.source.substring(0, slash)));
+		try {
+			ZipEntry z = zip.getEntry(e.source.substring(slash + 1));
+			if (z == null) throw new IOException("The pack no longer has it");
+			byte[] bytes = readAll(zip.getInputStream(z));
+			file.getParentFile().mkdirs();
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+		} finally {
+			zip.close();
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package com.racer.track;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * TrackGenerator makes random tracks from a seed, for trying the game and the
+ * benchmarks on tracks of any size. The same seed and settings always give the
+ * same track.
+ * <p>
+ * The middle of the road follows a closed curve around a center, whose
+ * distance from the center varies with the angle. Such a curve never crosses
+ * itself, and the track is only kept if no two parts of the road that aren't
+ * next to each other come closer than the road is wide, and the walls don't
+ * cross anywhere. Otherwise the curve is made smoother and tried again, and if
+ * nothing fits it becomes a circle.
+ * <p>
+ * The nodes are laid out the way TrackData walks them, including how the road
+ * pivots on its inner edge when it turns, and every node aims at the curve
+ * from where the last one really ended. The last node stops just before the
+ * goal line, and the connecting piece of TrackData closes the track.
+ */
+public class TrackGenerator {
+	public static final int SEGMENT_LENGTH = 8;
+	private static final int SEGMENTS_PER_NODE = 5;
+	private static final int LAPS = 3;
+	private static final int ATTEMPTS = 8;
+	// How much smaller the bends get with every attempt that doesn't fit.
+	private static final float SMOOTHING = 0.6f;
+	// How many nodes a row of item boxes is put after.
+	private static final int NODES_PER_BOX_ROW = 40;
+	
+	private final int nodes;
+	private final int minWidth;
+	private final int maxWidth;
+	private final float turns;
+	
+	/**
+	 * Creates a generator of tracks of one size.
+	 * @param nodes How many nodes a track has, at least 8. A node is about
+	 *              SEGMENTS_PER_NODE segments long.
+	 * @param minWidth The narrowest the road gets, in pixmap coordinates.
+	 * @param maxWidth The widest the road gets. A circle of the nodes has to
+	 *                 fit a road this wide all the way around.
+	 * @param turns How twisty a track is, from 0 for a circle to 1.
+	 */
+	public TrackGenerator(int nodes, int minWidth, int maxWidth, float turns) {
+		if (nodes < 8) throw new IllegalArgumentException("A track needs at least 8 nodes, not " + nodes);
+		if (minWidth < 1 || maxWidth < minWidth) {
+			throw new IllegalArgumentException("Bad width range " + minWidth + " to " + maxWidth);
+		}
+		this.nodes = nodes;
+		this.minWidth = minWidth;
+		this.maxWidth = maxWidth;
+		this.turns = Math.max(0, Math.min(1, turns));
+		
+		float[] walk = new float[(nodes + 1) * 2];
+		FloatArray left = new FloatArray();
+		FloatArray right = new FloatArray();
+		layOut(circle(), widest(), walk, left, right);
+		if (wallsCross(left, right)) {
+			throw new IllegalArgumentException("A road " + maxWidth + " wide doesn't fit on a track of " + nodes + " nodes");
+		}
+	}
+	
+	/**
+	 * Generates a track.
+	 */
+	public Track generate(long seed) {
+		Random rand = new Random(seed);
+		int[] widths = widths(rand);
+		
+		// The shape of the curve is picked once, and only made smoother
+		// if it doesn't fit, so that the seed decides what it looks like.
+		int harmonics = 1 + Math.round(turns * nodes / 12f);
+		float[] amplitude = new float[harmonics];
+		float[] phase = new float[harmonics];
+		for (int k=0; k < harmonics; k++) {
+			// Higher harmonics are smaller, so that the curve bends more
+			// often without the bends getting sharper.
+			amplitude[k] = turns * 0.5f * rand.nextFloat() / (1 + k*0.5f);
+			phase[k] = rand.nextFloat() * (float) Math.PI * 2;
+		}
+		
+		float[] walk = new float[(nodes + 1) * 2];
+		FloatArray left = new FloatArray();
+		FloatArray right = new FloatArray();
+		float scale = 1;
+		for (int attempt=0; attempt < ATTEMPTS; attempt++) {
+			Track track = layOut(curve(amplitude, phase, scale), widths, walk, left, right);
+			if (fits(walk, left, right)) return track;
+			scale *= SMOOTHING;
+		}
+		// A circle never comes back near itself, so only its walls need to
+		// be checked. The constructor made sure that the widest one fits.
+		Track track = layOut(circle(), widths, walk, left, right);
+		if (!wallsCross(left, right)) return track;
+		return layOut(circle(), widest(), walk, left, right);
+	}
+	
+	/** Returns the points of a circle, see curve. */
+	private float[] circle() {
+		return curve(new float[0], new float[0], 0);
+	}
+	
+	/** Returns the widest road for every node. */
+	private int[] widest() {
+		int[] widths = new int[nodes];
+		Arrays.fill(widths, maxWidth);
+		return widths;
+	}
+	
+	/**
+	 * Picks the width of every node. The width wanders between the limits
+	 * instead of jumping, like the tracks that are made by hand.
+	 */
+	private int[] widths(Random rand) {
+		int[] widths = new int[nodes];
+		float w = minWidth + rand.nextFloat() * (maxWidth - minWidth);
+		float step = Math.max(1, (maxWidth - minWidth) / 4f);
+		for (int i=0; i < nodes; i++) {
+			w += (rand.nextFloat()*2 - 1) * step;
+			w = Math.max(minWidth, Math.min(maxWidth, w));
+			widths[i] = Math.round(w);
+		}
+		return widths;
+	}
+	
+	/**
+	 * Returns one point for every node, spread evenly along the curve, as
+	 * pairs of x and y. The curve is scaled so that a node is as long as
+	 * SEGMENTS_PER_NODE segments.
+	 */
+	private float[] curve(float[] amplitude, float[] phase, float scale) {
+		// Sample the curve finely first and then pick points at equal
+		// distances along it.
+		int fine = nodes * 8;
+		double[] fx = new double[fine + 1];
+		double[] fy = new double[fine + 1];
+		double[] dist = new double[fine + 1];
+		for (int i=0; i <= fine; i++) {
+			double a = Math.PI * 2 * i / fine;
+			double r = 1;
+			for (int k=0; k < amplitude.length; k++) {
+				r += amplitude[k] * scale * Math.cos((k+2)*a + phase[k]);
+			}
+			// Keep the curve away from the center, where it could pinch.
+			r = Math.max(r, 0.3);
+			fx[i] = Math.cos(a) * r;
+			// The track goes counter-clockwise like the degrees, and pixmap y goes down.
+			fy[i] = -Math.sin(a) * r;
+			if (i > 0) dist[i] = dist[i-1] + Math.hypot(fx[i] - fx[i-1], fy[i] - fy[i-1]);
+		}
+		
+		double nodeLength = SEGMENTS_PER_NODE * SEGMENT_LENGTH;
+		double toPixels = nodeLength * nodes / dist[fine];
+		float[] points = new float[nodes * 2];
+		int j = 0;
+		for (int n=0; n < nodes; n++) {
+			double d = dist[fine] * n / nodes;
+			while (dist[j+1] < d) j++;
+			double t = (d - dist[j]) / Math.max(dist[j+1] - dist[j], 1e-9);
+			points[n*2] = (float) ((fx[j] + (fx[j+1] - fx[j]) * t) * toPixels);
+			points[n*2+1] = (float) ((fy[j] + (fy[j+1] - fy[j]) * t) * toPixels);
+		}
+		return points;
+	}
+	
+	/**
+	 * Turns the points into nodes, by walking from node to node the way
+	 * TrackData does and aiming every node at the next point.
+	 * @param walk Is set to where every node starts, and where the last one
+	 *             ends, as pairs of x and y.
+	 * @param left Is set to the points of the left wall, the same ones as
+	 *             TrackData.getLeft except for the last, which is the first.
+	 * @param right Is set to the points of the right wall.
+	 */
+	private Track layOut(float[] points, int[] widths, float[] walk, FloatArray left, FloatArray right) {
+		Track track = new Track(LAPS, SEGMENT_LENGTH);
+		left.clear();
+		right.clear();
+		// TrackData moves the whole track to start half a road to the side,
+		// which doesn't change its shape, so the walk starts at the first point.
+		double heading = Math.atan2(points[3] - points[1], points[2] - points[0]);
+		int degrees = (int) Math.round(Math.toDegrees(-heading));
+		double firstRot = Math.toRadians(-degrees);
+		double rot = firstRot;
+		double x = points[0];
+		double y = points[1];
+		double prevRot = rot;
+		double pi2 = Math.PI / 2;
+		// Where the walls of the last node ended.
+		float endLeftX = 0, endLeftY = 0, endRightX = 0, endRightY = 0;
+		int prevEndHalf = 0;
+		
+		for (int i=0; i < nodes; i++) {
+			int width = widths[i];
+			int next = (i + 1) % nodes;
+			if (i > 0) {
+				// Aim at the next point, from where the road would start after
+				// pivoting towards it, and then pivot for the rounded heading.
+				heading = Math.atan2(points[next*2+1] - y, points[next*2] - x);
+				degrees = unwrap(degrees, -Math.toDegrees(heading));
+				rot = Math.toRadians(-degrees);
+				double[] start = pivot(x, y, prevRot, rot, prevEndHalf, width);
+				heading = Math.atan2(points[next*2+1] - start[1], points[next*2] - start[0]);
+				degrees = unwrap(degrees, -Math.toDegrees(heading));
+				rot = Math.toRadians(-degrees);
+				start = pivot(x, y, prevRot, rot, prevEndHalf, width);
+				x = start[0];
+				y = start[1];
+			}
+			walk[i*2] = (float) x;
+			walk[i*2+1] = (float) y;
+			int length;
+			if (i == nodes - 1) {
+				// TrackData doesn't pivot onto the first node, it fills the gap
+				// with a connecting piece. The last node has to stop with both
+				// of its corners before the goal line, or the walls would fold
+				// back over it. A pixel is left to spare, since TrackData
+				// walks the track with floats.
+				double forward = Math.cos(rot - firstRot);
+				double corner = Math.abs(Math.sin(rot - firstRot)) * endHalf(width, widths[0]);
+				double room = (points[0] - x) * Math.cos(firstRot) + (points[1] - y) * Math.sin(firstRot) - corner - 1;
+				length = (forward <= 0) ? 1 : Math.max(1, (int) Math.floor(room / (forward * SEGMENT_LENGTH)));
+			} else {
+				double d = Math.hypot(points[next*2] - x, points[next*2+1] - y);
+				length = Math.max(1, (int) Math.round(d / SEGMENT_LENGTH));
+			}
+			track.addSegment(length, width, degrees);
+			
+			// The outer wall of a turn goes around the corner between the
+			// nodes, the inner one goes straight to the pivot.
+			if (prevRot < rot) {
+				addPoint(left, endLeftX, endLeftY);
+			} else if (prevRot > rot) {
+				addPoint(right, endRightX, endRightY);
+			}
+			addPoint(left, x + Math.cos(rot - pi2) * width / 2, y + Math.sin(rot - pi2) * width / 2);
+			addPoint(right, x + Math.cos(rot + pi2) * width / 2, y + Math.sin(rot + pi2) * width / 2);
+			
+			x += Math.cos(rot) * length * SEGMENT_LENGTH;
+			y += Math.sin(rot) * length * SEGMENT_LENGTH;
+			prevRot = rot;
+			prevEndHalf = endHalf(width, widths[next]);
+			endLeftX = (float) (x + Math.cos(rot - pi2) * prevEndHalf);
+			endLeftY = (float) (y + Math.sin(rot - pi2) * prevEndHalf);
+			endRightX = (float) (x + Math.cos(rot + pi2) * prevEndHalf);
+			endRightY = (float) (y + Math.sin(rot + pi2) * prevEndHalf);
+		}
+		walk[nodes*2] = (float) x;
+		walk[nodes*2+1] = (float) y;
+		addPoint(left, endLeftX, endLeftY);
+		addPoint(right, endRightX, endRightY);
+		
+		// Put rows of item boxes across the road now and then. The
+		// segments that box rows are placed on are the nodes.
+		for (int i=NODES_PER_BOX_ROW/2; i < nodes; i += NODES_PER_BOX_ROW) {
+			track.addBoxRow(i, 50, Math.max(2, widths[i] / 10));
+		}
+		return track;
+	}
+	
+	private static void addPoint(FloatArray points, double x, double y) {
+		points.add((float) x);
+		points.add((float) y);
+	}
+	
+	/**
+	 * Returns the heading in whole degrees that is closest to an angle,
+	 * written so that it never turns more than half a turn from the last
+	 * one. TrackData tells left and right turns apart by which is bigger.
+	 */
+	private static int unwrap(int last, double angle) {
+		double delta = angle - last;
+		delta -= 360 * Math.floor((delta + 180) / 360);
+		return last + (int) Math.round(delta);
+	}
+	
+	/**
+	 * Returns where a node starts after the one before it ended at (x, y), the
+	 * same way as TrackData: when the road turns, the new node starts half a
+	 * road from the inner corner of the end of the last one.
+	 * @param endHalf Half the width of the end of the last node, see endHalf.
+	 */
+	private static double[] pivot(double x, double y, double lastRot, double rot, int endHalf, int width) {
+		double pi2 = Math.PI / 2;
+		if (lastRot < rot) {
+			double cx = x + Math.cos(lastRot + pi2) * endHalf;
+			double cy = y + Math.sin(lastRot + pi2) * endHalf;
+			return new double[] { cx + Math.cos(rot - pi2) * width / 2, cy + Math.sin(rot - pi2) * width / 2 };
+		} else if (lastRot > rot) {
+			double cx = x + Math.cos(lastRot - pi2) * endHalf;
+			double cy = y + Math.sin(lastRot - pi2) * endHalf;
+			return new double[] { cx + Math.cos(rot + pi2) * width / 2, cy + Math.sin(rot + pi2) * width / 2 };
+		}
+		return new double[] { x, y };
+	}
+	
+	/**
+	 * Returns half the width of the end of a node. A node narrows or widens
+	 * to the width of the next one, and TrackData rounds the half widths down.
+	 */
+	private static int endHalf(int width, int nextWidth) {
+		return width/2 + (nextWidth - width)/2;
+	}
+	
+	/**
+	 * Returns true if no two nodes that are far apart along the road come
+	 * closer to each other than the widest road plus a margin for the walls,
+	 * and no two lines of the walls cross. The nodes are put in a grid so that
+	 * only nodes that are near each other are compared.
+	 * @param walk Where the nodes start, see layOut.
+	 * @param left The left wall, see layOut.
+	 * @param right The right wall.
+	 */
+	private boolean fits(float[] walk, FloatArray left, FloatArray right) {
+		// The line from the end of the last node back to the start closes the road.
+		int count = nodes + 1;
+		float[] x = new float[count + 1];
+		float[] y = new float[count + 1];
+		float[] along = new float[count + 1];
+		for (int i=0; i <= count; i++) {
+			x[i] = walk[(i % count)*2];
+			y[i] = walk[(i % count)*2+1];
+			if (i > 0) along[i] = along[i-1] + (float) Math.hypot(x[i] - x[i-1], y[i] - y[i-1]);
+		}
+		float total = along[count];
+		float clearance = maxWidth * 1.5f;
+		// Nodes closer than this along the road are allowed to be close,
+		// since they are bent around the same corner.
+		float near = maxWidth * 3;
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		for (int i=0; i <= count; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+		}
+		float cell = Math.max(clearance, SEGMENTS_PER_NODE * SEGMENT_LENGTH);
+		HashMap<Long, IntArray> grid = new HashMap<Long, IntArray>();
+		for (int i=0; i < count; i++) {
+			int x0 = (int) ((Math.min(x[i], x[i+1]) - clearance - minX) / cell);
+			int x1 = (int) ((Math.max(x[i], x[i+1]) + clearance - minX) / cell);
+			int y0 = (int) ((Math.min(y[i], y[i+1]) - clearance - minY) / cell);
+			int y1 = (int) ((Math.max(y[i], y[i+1]) + clearance - minY) / cell);
+			for (int cy=y0; cy <= y1; cy++) {
+				for (int cx=x0; cx <= x1; cx++) {
+					Long key = ((long) cy << 32) | (cx & 0xffffffffL);
+					IntArray nodesIn = grid.get(key);
+					if (nodesIn == null) {
+						nodesIn = new IntArray();
+						grid.put(key, nodesIn);
+					}
+					for (int k=0; k < nodesIn.size; k++) {
+						int j = nodesIn.get(k);
+						float gap = Math.abs(along[i] - along[j]);
+						if (Math.min(gap, total - gap) <= near) continue;
+						if (distance(x, y, i, j) < clearance) return false;
+					}
+					nodesIn.add(i);
+				}
+			}
+		}
+		return !wallsCross(left, right);
+	}
+	
+	/**
+	 * Returns true if a line of a wall crosses any other line of the walls.
+	 * Lines next to each other on the same wall share a point, and are never
+	 * counted as crossing.
+	 */
+	private static boolean wallsCross(FloatArray left, FloatArray right) {
+		// Both walls are closed and put after each other. The line from
+		// the end of the left wall to the start of the right isn't a wall.
+		int leftCount = left.size / 2;
+		int rightCount = right.size / 2;
+		int count = leftCount + 1 + rightCount + 1;
+		float[] x = new float[count];
+		float[] y = new float[count];
+		for (int i=0; i <= leftCount; i++) {
+			x[i] = left.get((i % leftCount)*2);
+			y[i] = left.get((i % leftCount)*2+1);
+		}
+		for (int i=0; i <= rightCount; i++) {
+			x[leftCount + 1 + i] = right.get((i % rightCount)*2);
+			y[leftCount + 1 + i] = right.get((i % rightCount)*2+1);
+		}
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		for (int i=0; i < count; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+		}
+		float cell = SEGMENTS_PER_NODE * SEGMENT_LENGTH;
+		HashMap<Long, IntArray> grid = new HashMap<Long, IntArray>();
+		for (int i=0; i < count - 1; i++) {
+			if (i == leftCount) continue;
+			int x0 = (int) ((Math.min(x[i], x[i+1]) - minX) / cell);
+			int x1 = (int) ((Math.max(x[i], x[i+1]) - minX) / cell);
+			int y0 = (int) ((Math.min(y[i], y[i+1]) - minY) / cell);
+			int y1 = (int) ((Math.max(y[i], y[i+1]) - minY) / cell);
+			for (int cy=y0; cy <= y1; cy++) {
+				for (int cx=x0; cx <= x1; cx++) {
+					Long key = ((long) cy << 32) | (cx & 0xffffffffL);
+					IntArray linesIn = grid.get(key);
+					if (linesIn == null) {
+						linesIn = new IntArray();
+						grid.put(key, linesIn);
+					}
+					for (int k=0; k < linesIn.size; k++) {
+						int j = linesIn.get(k);
+						if (j == i - 1 || (j == 0 && i == leftCount - 1) || (j == leftCount + 1 && i == count - 2)) continue;
+						if (crosses(x, y, i, j)) return true;
+					}
+					linesIn.add(i);
+				}
+			}
+		}
+		return false;
+	}
+	
+	/** Returns the shortest distance between the lines of two nodes. */
+	private static float distance(float[] x, float[] y, int i, int j) {
+		float d = Math.min(
+				Math.min(toLine(x[i], y[i], x, y, j), toLine(x[i+1], y[i+1], x, y, j)),
+				Math.min(toLine(x[j], y[j], x, y, i), toLine(x[j+1], y[j+1], x, y, i)));
+		return crosses(x, y, i, j) ? 0 : d;
+	}
+	
+	private static float toLine(float px, float py, float[] x, float[] y, int i) {
+		float dx = x[i+1] - x[i];
+		float dy = y[i+1] - y[i];
+		float len2 = dx*dx + dy*dy;
+		float t = len2 == 0 ? 0 : ((px - x[i])*dx + (py - y[i])*dy) / len2;
+		t = Math.max(0, Math.min(1, t));
+		float ex = x[i] + dx*t - px;
+		float ey = y[i] + dy*t - py;
+		return (float) Math.sqrt(ex*ex + ey*ey);
+	}
+	
+	private static boolean crosses(float[] x, float[] y, int i, int j) {
+		float d1 = side(x[j], y[j], x[j+1], y[j+1], x[i], y[i]);
+		float d2 = side(x[j], y[j], x[j+1], y[j+1], x[i+1], y[i+1]);
+		float d3 = side(x[i], y[i], x[i+1], y[i+1], x[j], y[j]);
+		float d4 = side(x[i], y[i], x[i+1], y[i+1], x[j+1], y[j+1]);
+		return d1*d2 < 0 && d3*d4 < 0;
+	}
+	
+	private static float side(float ax, float ay, float bx, float by, float px, float py) {
+		return (bx - ax)*(py - ay) - (by - ay)*(px - ax);
+	}
+}
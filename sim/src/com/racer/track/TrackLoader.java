@@ -0,0 +1,134 @@
+package com.racer.track;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Scanner;
+
+/**
+ * TrackLoader handles the loading of tracks from .track files. The tracks
+ * that can be chosen are listed by a TrackCatalog.
+ *
+ */
+public class TrackLoader {
+	private static TrackCatalog catalog;
+	
+	/** Returns how many tracks there are. */
+	public static int numTracks() {
+		return catalog.size();
+	}
+	
+	/** Returns the catalog of the tracks that were loaded last. */
+	public static TrackCatalog getCatalog() {
+		return catalog;
+	}
+	
+	/**
+	 * Loads all of the tracks in the tracks folder.
+	 */
+	public static void loadTracks() {
+		loadTracks(new File(".." + File.separatorChar + "tracks"));
+	}
+	
+	/**
+	 * Loads the catalog of the tracks and track packs in a specific folder.
+	 * Only tracks that are new or have changed since the last time are read.
+	 */
+	public static void loadTracks(File dir) {
+		catalog = TrackCatalog.open(dir);
+		//Gdx.app.log("", dir.getAbsolutePath());
+	}
+	
+	public static String trackName(int trackId) {
+		if (trackId >= catalog.size()) return "";
+		return catalog.get(trackId).name;
+	}
+	
+	/**
+	 * Returns the .track file of a track, or null if there is no such track.
+	 * A track from a pack is unpacked the first time.
+	 */
+	public static File trackFile(int trackId) {
+		if (trackId >= catalog.size()) return null;
+		return catalog.getFile(trackId);
+	}
+	
+	public static Track loadTrack(int trackId) {
+		if (trackId >= catalog.size()) return null;
+		return loadTrack(catalog.getFile(trackId));
+	}
+	
+	/**
+	 * Writes a track in the format that loadTrack reads.
+	 */
+	public static void writeTrack(Track track, File file) throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println(track.laps + " " + track.segmentLength);
+			out.println();
+			for (Node n : track.nodes) {
+				out.println(n.length + " " + n.width + " " + n.degrees);
+			}
+			for (BoxRow b : track.boxes) {
+				out.println("box " + b.segment + " " + b.position + " " + b.amount);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Loads a single .track file.
+	 */
+	public static Track loadTrack(File file) {
+		InputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return loadTrack(in, file.getName());
+	}
+	
+	/**
+	 * Loads a track from the contents of a .track file, and closes the stream.
+	 * @param name The name of the file, which errors are reported with.
+	 */
+	public static Track loadTrack(InputStream in, String name) {
+		Scanner sc = new Scanner(in);
+		
+		// The first two integers should be the amount of laps and segment length.
+		int laps = sc.nextInt();
+		int segmentLength = sc.nextInt();
+		Track track = new Track(laps, segmentLength);
+		
+		// Load every segment
+		while (sc.hasNextInt()) {
+			int length = sc.nextInt();
+			int width = sc.nextInt();
+			int rotation = sc.nextInt();
+			track.addSegment(length, width, rotation);
+		}
+		
+		// After the segments come the rows of item boxes, one per line as
+		// "box <segment> <position along it in percent> <amount of boxes>".
+		while (sc.hasNext()) {
+			String word = sc.next();
+			if (word.equals("box")) {
+				int segment = sc.nextInt();
+				int position = sc.nextInt();
+				int amount = sc.nextInt();
+				track.addBoxRow(segment, position, amount);
+			} else {
+				System.err.println(name + ": unknown line \"" + word + sc.nextLine() + "\"");
+			}
+		}
+		sc.close();
+		
+		return track;
+	}
+}
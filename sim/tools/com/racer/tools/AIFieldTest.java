@@ -0,0 +1,87 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import com.racer.sim.AIScheduler;
+import com.racer.sim.AIcontroller;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.SimCar;
+import com.racer.sim.TickClock;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Measures what an AIScheduler saves on a big field of AI cars. The same race
+ * is run with a small field where every car thinks every tick, with the big
+ * field where every car thinks every tick and with the big field on the
+ * scheduler. For every run it prints how many times the AI thought per tick,
+ * how long the ticks took and how fast the laps were, so that both the cost
+ * and how well the cars drive can be compared.
+ * <p>
+ * Usage: AIFieldTest [track file] [cars] [small field] [interval] [boosted interval]
+ * <p>
+ * Without the intervals the scheduler from AIScheduler.forField is used.
+ */
+public class AIFieldTest {
+	private static final int MAX_TICKS = 40000;
+	
+	public static void main(String[] args) {
+		File file = new File(args.length > 0 ? args[0] : "tracks/HighwayToHell.track");
+		int numCars = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int small = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		AIScheduler scheduler = (args.length > 4)
+				? new AIScheduler(Integer.parseInt(args[3]), Integer.parseInt(args[4]))
+				: AIScheduler.forField(numCars);
+		
+		Track track = TrackLoader.loadTrack(file);
+		System.out.println(file.getName() + ", " + track.laps + " laps");
+		// Run once first so that the JIT has warmed up for the runs that count.
+		run(track, small, null, false);
+		run(track, small, null, true);
+		run(track, numCars, null, true);
+		run(track, numCars, scheduler, true);
+		System.exit(0);
+	}
+	
+	private static void run(Track track, int numCars, AIScheduler scheduler, boolean print) {
+		AIcontroller.setSeed(0);
+		HeadlessRace race = new HeadlessRace(track, numCars);
+		race.getSimulation().setScheduler(scheduler);
+		ArrayList<SimCar> cars = race.getCars();
+		
+		int[] lastLap = new int[numCars];
+		double lapSum = 0;
+		int laps = 0;
+		long thinks = 0;
+		int ticks = 0;
+		long nanos = 0;
+		while (ticks < MAX_TICKS && race.getRace().getCarsInGoal().size() < numCars) {
+			long start = System.nanoTime();
+			race.step(1);
+			nanos += System.nanoTime() - start;
+			ticks++;
+			
+			// The scheduler still knows which cars it let think in the last tick.
+			for (int i=0; i < numCars; i++) {
+				if (scheduler == null || scheduler.shouldThink(cars.get(i))) thinks++;
+			}
+			int time = race.getRace().getElapsedTime();
+			for (int i=0; i < numCars; i++) {
+				SimCar c = cars.get(i);
+				if (!c.completedLap() || c.getTrueLaps() > track.laps) continue;
+				lapSum += (time - lastLap[i]) / (float) TickClock.TICKS_PER_SECOND;
+				lastLap[i] = time;
+				laps++;
+			}
+		}
+		if (!print) return;
+		
+		String label = numCars + " cars, " + ((scheduler == null) ? "every tick"
+				: "every " + scheduler.getInterval() + " ticks, " + scheduler.getBoostedInterval() + " when boosted");
+		System.out.println(label);
+		System.out.println(String.format("  %.1f thinks per tick, %.1f us per tick, %d ticks, %d cars in goal",
+				thinks / (double) ticks, nanos / 1000.0 / ticks, ticks, race.getRace().getCarsInGoal().size()));
+		System.out.println(String.format("  %d laps, mean %.2f s", laps, laps == 0 ? 0 : lapSum / laps));
+	}
+}
@@ -0,0 +1,282 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.racer.sim.AIParameters;
+import com.racer.sim.AIcontroller;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.SimCar;
+import com.racer.sim.TickClock;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Searches for better steering parameters for the AI by racing them against
+ * each other. It is a simple evolution strategy: every generation a number of
+ * children are made by changing the parameters of the best sets a little at
+ * random, and the best sets among the parents and the children survive.
+ * <p>
+ * A set of parameters is scored by racing it on every track in the tracks
+ * folder a few times, with a different seed for the start boosts every time.
+ * All of the sets are raced with the same seeds, so that they are compared
+ * under the same conditions. The races are run in parallel on every core.
+ * The lap times of the default parameters, the best set of every generation
+ * and the sets that survived to the end are printed.
+ * <p>
+ * Usage: AITuner [generations] [children per generation] [races per track] [threads]
+ */
+public class AITuner {
+	private static final int CARS = 8;
+	// A race that hasn't finished after this many ticks is stopped, and the
+	// cars that didn't make it count as finishing at this tick.
+	private static final int MAX_TICKS = 20000;
+	// How many of the best sets survive every generation.
+	private static final int PARENTS = 4;
+	
+	// The range that every parameter is searched in, and how much it is
+	// changed at first when a child is made. The changes get smaller with
+	// every generation.
+	private static final float[] MIN = { 0, 0, 0.7f, 0.05f };
+	private static final float[] MAX = { 20, 30, 1.5f, 0.9f };
+	private static final float[] STEP = { 2, 3, 0.05f, 0.1f };
+	private static final float STEP_DECAY = 0.85f;
+	
+	/**
+	 * A set of parameters and how well it did.
+	 */
+	private static class Candidate {
+		AIParameters params;
+		// The sorted lap times on every track, in seconds.
+		float[][] lapTimes;
+		int dnf;
+		// The average tick that the cars finished at. Lower is better.
+		double score;
+	}
+	
+	/**
+	 * What one race gave.
+	 */
+	private static class RaceResult {
+		float[] lapTimes;
+		int laps;
+		long finishTicks;
+		int dnf;
+	}
+	
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		int generations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int children = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int races = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		
+		File[] files = new File("tracks").listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String filename) {
+				return filename.endsWith(".track");
+			}
+		});
+		Arrays.sort(files);
+		Track[] tracks = new Track[files.length];
+		for (int i=0; i < files.length; i++) {
+			tracks[i] = TrackLoader.loadTrack(files[i]);
+		}
+		System.out.println(tracks.length + " tracks, " + races + " races per track, "
+				+ CARS + " cars, " + threads + " threads");
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Random random = new Random(0);
+		int raceCount = 0;
+		long start = System.nanoTime();
+		
+		// The first generation is the default and children of it.
+		ArrayList<Candidate> parents = new ArrayList<Candidate>();
+		Candidate baseline = new Candidate();
+		baseline.params = AIParameters.DEFAULT;
+		parents.add(baseline);
+		raceCount += evaluate(pool, parents, tracks, races);
+		print("Default", baseline, files);
+		
+		float[] step = STEP.clone();
+		for (int g=0; g < generations; g++) {
+			ArrayList<Candidate> next = new ArrayList<Candidate>();
+			for (int c=0; c < children; c++) {
+				Candidate parent = parents.get(random.nextInt(parents.size()));
+				Candidate child = new Candidate();
+				child.params = mutate(parent.params, step, random);
+				next.add(child);
+			}
+			raceCount += evaluate(pool, next, tracks, races);
+			
+			next.addAll(parents);
+			sort(next);
+			parents = new ArrayList<Candidate>(next.subList(0, Math.min(PARENTS, next.size())));
+			print("Generation " + (g + 1), parents.get(0), files);
+			
+			for (int i=0; i < step.length; i++) {
+				step[i] *= STEP_DECAY;
+			}
+		}
+		pool.shutdown();
+		long time = System.nanoTime() - start;
+		
+		System.out.println();
+		System.out.println("Survivors:");
+		for (int i=0; i < parents.size(); i++) {
+			print("#" + (i + 1), parents.get(i), files);
+		}
+		print("Default", baseline, files);
+		System.out.println(raceCount + " races in " + (time / 1000000000) + " s ("
+				+ (raceCount / (time / 1e9)) + " races/s)");
+		System.exit(0);
+	}
+	
+	/**
+	 * Races every candidate on every track and scores them.
+	 * @return How many races were run.
+	 */
+	private static int evaluate(ExecutorService pool, ArrayList<Candidate> candidates, Track[] tracks, int races)
+			throws InterruptedException, ExecutionException {
+		ArrayList<Future<RaceResult>> results = new ArrayList<Future<RaceResult>>();
+		for (int c=0; c < candidates.size(); c++) {
+			for (int t=0; t < tracks.length; t++) {
+				for (int r=0; r < races; r++) {
+					final AIParameters params = candidates.get(c).params;
+					final Track track = tracks[t];
+					final long seed = r;
+					results.add(pool.submit(new Callable<RaceResult>() {
+						@Override
+						public RaceResult call() {
+							return race(track, params, seed);
+						}
+					}));
+				}
+			}
+		}
+		
+		int k = 0;
+		for (int c=0; c < candidates.size(); c++) {
+			Candidate cand = candidates.get(c);
+			cand.lapTimes = new float[tracks.length][];
+			long finishTicks = 0;
+			int dnf = 0;
+			for (int t=0; t < tracks.length; t++) {
+				float[] laps = new float[races * CARS * tracks[t].laps];
+				int lapCount = 0;
+				for (int r=0; r < races; r++) {
+					RaceResult result = results.get(k++).get();
+					System.arraycopy(result.lapTimes, 0, laps, lapCount, result.laps);
+					lapCount += result.laps;
+					finishTicks += result.finishTicks;
+					dnf += result.dnf;
+				}
+				cand.lapTimes[t] = Arrays.copyOf(laps, lapCount);
+				Arrays.sort(cand.lapTimes[t]);
+			}
+			cand.dnf = dnf;
+			cand.score = (double) finishTicks / (tracks.length * races * CARS);
+		}
+		return results.size();
+	}
+	
+	/**
+	 * Runs one AI-only race and collects the time of every lap.
+	 */
+	private static RaceResult race(Track track, AIParameters params, long seed) {
+		// Every race gets its own track data, since the item boxes on it change.
+		AIcontroller.setSeed(seed);
+		HeadlessRace race = new HeadlessRace(track, CARS);
+		race.setAIParameters(params);
+		ArrayList<SimCar> cars = race.getCars();
+		
+		RaceResult result = new RaceResult();
+		result.lapTimes = new float[CARS * track.laps];
+		int[] lastLap = new int[CARS];
+		int[] finished = new int[CARS];
+		int ticks = 0;
+		while (ticks < MAX_TICKS && race.getRace().getCarsInGoal().size() < CARS) {
+			race.step(1);
+			ticks++;
+			int time = race.getRace().getElapsedTime();
+			for (int i=0; i < CARS; i++) {
+				SimCar c = cars.get(i);
+				if (finished[i] != 0 || !c.completedLap()) continue;
+				result.lapTimes[result.laps++] = (time - lastLap[i]) / (float) TickClock.TICKS_PER_SECOND;
+				lastLap[i] = time;
+				if (c.getTrueLaps() >= track.laps) finished[i] = ticks;
+			}
+		}
+		for (int i=0; i < CARS; i++) {
+			if (finished[i] == 0) {
+				finished[i] = MAX_TICKS;
+				result.dnf++;
+			}
+			result.finishTicks += finished[i];
+		}
+		return result;
+	}
+	
+	/**
+	 * Makes a copy of a set of parameters where every parameter is
+	 * changed by a random amount, and kept within its range.
+	 */
+	private static AIParameters mutate(AIParameters p, float[] step, Random random) {
+		float[] v = { p.getLookAhead(), p.getLookAheadTime(), p.getPace(), p.getBoosterThreshold() };
+		for (int i=0; i < v.length; i++) {
+			v[i] += (float) random.nextGaussian() * step[i];
+			if (v[i] < MIN[i]) v[i] = MIN[i];
+			if (v[i] > MAX[i]) v[i] = MAX[i];
+		}
+		return new AIParameters(v[0], v[1], v[2], v[3]);
+	}
+	
+	/** Sorts the candidates with the best score first. */
+	private static void sort(ArrayList<Candidate> candidates) {
+		for (int i=1; i < candidates.size(); i++) {
+			Candidate c = candidates.get(i);
+			int j = i - 1;
+			while (j >= 0 && candidates.get(j).score > c.score) {
+				candidates.set(j + 1, candidates.get(j));
+				j--;
+			}
+			candidates.set(j + 1, c);
+		}
+	}
+	
+	/**
+	 * Prints the parameters of a candidate and the distribution of its lap times on every track.
+	 */
+	private static void print(String label, Candidate c, File[] files) {
+		System.out.println(label + ": " + c.params);
+		System.out.println(String.format("  finished after %.1f s on average, %d did not finish",
+				c.score / TickClock.TICKS_PER_SECOND, c.dnf));
+		for (int t=0; t < files.length; t++) {
+			float[] laps = c.lapTimes[t];
+			if (laps.length == 0) continue;
+			double sum = 0;
+			for (int i=0; i < laps.length; i++) {
+				sum += laps[i];
+			}
+			double mean = sum / laps.length;
+			double var = 0;
+			for (int i=0; i < laps.length; i++) {
+				var += (laps[i] - mean) * (laps[i] - mean);
+			}
+			System.out.println(String.format("  %s: %d laps, mean %.2f s, sd %.2f, min %.2f, "
+					+ "p10 %.2f, median %.2f, p90 %.2f, max %.2f", files[t].getName(),
+					laps.length, mean, Math.sqrt(var / laps.length), laps[0], percentile(laps, 0.1),
+					percentile(laps, 0.5), percentile(laps, 0.9), laps[laps.length - 1]));
+		}
+	}
+	
+	private static float percentile(float[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))];
+	}
+}
@@ -0,0 +1,147 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import com.racer.sim.AIcontroller;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.JobPool;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Checks that the simulation doesn't allocate any memory once a race is
+ * running. Two whole races are first run so that every list and pool has
+ * grown to its final size and the JIT compiler is done with the simulation.
+ * The race is then restarted and the memory allocated by the simulating
+ * thread and the threads of the JobPool is measured for every tick of the
+ * next race. A single tick that allocates fails the race. Since the JIT
+ * compiler can still allocate now and then, a race that fails is run again,
+ * and the check only fails and exits with an error if every try allocated.
+ * <p>
+ * The race on more than one thread has enough cars for the JobPool to split
+ * every job over the threads, so that the worker threads are measured too.
+ * <p>
+ * Usage: AllocationCheck [track files...]
+ */
+public class AllocationCheck {
+	private static final int CARS = 8;
+	// A JobPool splits the cars over two threads from 16 cars per thread.
+	private static final int THREADED_CARS = 32;
+	// The longest a warm-up race is allowed to take.
+	private static final int MAX_WARM_UP_TICKS = 30000;
+	private static final int WARM_UP_RACES = 2;
+	private static final int TICKS = 20000;
+	// How many times the measured race is run before the check gives up.
+	private static final int MEASURED_RACES = 3;
+	
+	public static void main(String[] args) {
+		com.sun.management.ThreadMXBean bean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			System.err.println("This JVM can't measure allocated memory.");
+			System.exit(2);
+		}
+		bean.setThreadAllocatedMemoryEnabled(true);
+		
+		String[] files = args;
+		if (files.length == 0) {
+			files = new String[] { "tracks/Test Track.track", "tracks/HighwayToHell.track" };
+		}
+		
+		boolean failed = false;
+		for (String file : files) {
+			Track track = TrackLoader.loadTrack(new File(file));
+			for (int threads = 1; threads <= 2; threads++) {
+				int cars = (threads == 1) ? CARS : THREADED_CARS;
+				AIcontroller.setSeed(0);
+				HeadlessRace race = new HeadlessRace(track, cars);
+				JobPool jobs = new JobPool(threads);
+				race.getSimulation().setJobPool(jobs);
+				long[] ids = threadIds(jobs);
+				for (int r=0; r < WARM_UP_RACES; r++) {
+					for (int i=0; i < MAX_WARM_UP_TICKS; i++) {
+						if (race.getRace().getCarsInGoal().size() == cars) break;
+						race.step(1);
+					}
+					race.getRace().restart();
+				}
+				
+				// The JIT compiler can still allocate once in a while when it
+				// changes its mind about a method. That doesn't happen again
+				// the next time the race is run, but code that allocates does.
+				boolean clean = false;
+				for (int r=0; r < MEASURED_RACES && !clean; r++) {
+					if (r > 0) race.getRace().restart();
+					clean = measure(bean, ids, race);
+					if (!clean && r < MEASURED_RACES - 1) System.out.println("  Running it again");
+				}
+				jobs.dispose();
+				System.out.println(new File(file).getName() + ", " + cars + " cars, " + threads + " thread(s): "
+						+ (clean ? "no allocations" : "allocated every time"));
+				if (!clean) failed = true;
+			}
+		}
+		if (failed) {
+			System.err.println("The simulation allocated memory after warming up.");
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Measures how much memory every tick of a race allocates.
+	 * @param ids The threads that the race runs on, the calling thread first.
+	 * @return True if no tick allocated anything.
+	 */
+	private static boolean measure(com.sun.management.ThreadMXBean bean, long[] ids, HeadlessRace race) {
+		// Measuring allocates a little by itself, which is subtracted.
+		// Reading what another thread has allocated allocates on the
+		// calling thread, so the workers are only measured for the
+		// whole race, and the calling thread for every tick.
+		long thread = ids[0];
+		long workersBefore = allocated(bean, ids);
+		long base = bean.getThreadAllocatedBytes(thread);
+		long overhead = bean.getThreadAllocatedBytes(thread) - base;
+		long bytes = 0;
+		int allocatingTicks = 0;
+		for (int i=0; i < TICKS; i++) {
+			long start = bean.getThreadAllocatedBytes(thread);
+			race.step(1);
+			long tickBytes = bean.getThreadAllocatedBytes(thread) - start - overhead;
+			if (tickBytes > 0) {
+				bytes += tickBytes;
+				allocatingTicks++;
+			}
+		}
+		long workerBytes = allocated(bean, ids) - workersBefore;
+		System.out.println("  " + allocatingTicks + " of " + TICKS + " ticks allocated, " + bytes + " bytes, "
+				+ workerBytes + " bytes on the workers");
+		return allocatingTicks == 0 && workerBytes == 0;
+	}
+	
+	/**
+	 * Returns the ids of the threads that a JobPool runs jobs on, the
+	 * calling thread first. Every thread is given one item of a job.
+	 */
+	private static long[] threadIds(JobPool jobs) {
+		final long[] ids = new long[jobs.threads()];
+		jobs.run(new JobPool.Job() {
+			@Override
+			public void run(int worker, int from, int to) {
+				for (int i=from; i < to; i++) {
+					ids[i] = Thread.currentThread().getId();
+				}
+			}
+		}, ids.length, 1);
+		return ids;
+	}
+	
+	/** Returns how much memory the worker threads have allocated in total. */
+	private static long allocated(com.sun.management.ThreadMXBean bean, long[] ids) {
+		long bytes = 0;
+		for (int i=1; i < ids.length; i++) {
+			bytes += bean.getThreadAllocatedBytes(ids[i]);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,142 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.racer.track.Track;
+import com.racer.track.TrackCatalog;
+import com.racer.track.TrackLoader;
+
+/**
+ * Measures how long it takes to open a TrackCatalog of many tracks: the first
+ * time when every track has to be indexed, again when nothing has changed and
+ * after one track has been changed. For comparison it also loads every track,
+ * which is what listing them would take without the catalog. Half of the
+ * tracks are copies of the track files and the other half are in a pack.
+ * <p>
+ * It fails if what the catalog says about a track doesn't match the track,
+ * or if a packed track can't be loaded from where it is unpacked.
+ * <p>
+ * Usage: CatalogBenchmark [tracks]
+ */
+public class CatalogBenchmark {
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		ArrayList<byte[]> sources = new ArrayList<byte[]>();
+		for (File f : new File("tracks").listFiles()) {
+			if (f.getName().endsWith(".track")) sources.add(read(f));
+		}
+		
+		File dir = new File(System.getProperty("java.io.tmpdir"), "racer-catalog-" + System.nanoTime());
+		dir.mkdirs();
+		try {
+			run(dir, sources, count);
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	private static void run(File dir, ArrayList<byte[]> sources, int count) throws IOException {
+		ZipOutputStream pack = new ZipOutputStream(new FileOutputStream(new File(dir, "Pack.zip")));
+		for (int i=0; i < count; i++) {
+			byte[] bytes = sources.get(i % sources.size());
+			String name = String.format("Track %04d.track", i);
+			if (i % 2 == 0) {
+				write(new File(dir, name), bytes);
+			} else {
+				pack.putNextEntry(new ZipEntry(name));
+				pack.write(bytes);
+				pack.closeEntry();
+			}
+		}
+		pack.close();
+		
+		long start = System.nanoTime();
+		TrackCatalog catalog = TrackCatalog.open(dir);
+		long first = System.nanoTime() - start;
+		
+		long unchanged = Long.MAX_VALUE;
+		for (int r=0; r < ROUNDS; r++) {
+			start = System.nanoTime();
+			catalog = TrackCatalog.open(dir);
+			unchanged = Math.min(unchanged, System.nanoTime() - start);
+		}
+		
+		// Change one of the track files by adding a lap to it.
+		File changed = new File(dir, "Track 0000.track");
+		String text = new String(read(changed), "UTF-8").trim();
+		int space = text.indexOf(' ');
+		text = (Integer.parseInt(text.substring(0, space)) + 1) + text.substring(space);
+		write(changed, text.getBytes("UTF-8"));
+		changed.setLastModified(changed.lastModified() + 2000);
+		start = System.nanoTime();
+		catalog = TrackCatalog.open(dir);
+		long oneChanged = System.nanoTime() - start;
+		
+		long loadAll = Long.MAX_VALUE;
+		for (int r=0; r < ROUNDS; r++) {
+			start = System.nanoTime();
+			for (int i=0; i < catalog.size(); i++) {
+				TrackLoader.loadTrack(catalog.getFile(i));
+			}
+			loadAll = Math.min(loadAll, System.nanoTime() - start);
+		}
+		
+		boolean failed = catalog.size() != count;
+		for (int i=0; i < catalog.size(); i++) {
+			TrackCatalog.Entry e = catalog.get(i);
+			Track track = TrackLoader.loadTrack(catalog.getFile(i));
+			if (track == null || track.laps != e.laps || track.nodes.size() != e.segments) {
+				System.err.println(e.name + ": the catalog doesn't match the track");
+				failed = true;
+			}
+		}
+		
+		System.out.println(String.format("%d tracks, %d KB index", catalog.size(),
+				new File(dir, TrackCatalog.INDEX_NAME).length() / 1024));
+		System.out.println(String.format("  first open %.1f ms, unchanged %.2f ms, one track changed %.2f ms",
+				first / 1e6, unchanged / 1e6, oneChanged / 1e6));
+		System.out.println(String.format("  loading every track %.1f ms", loadAll / 1e6));
+		if (failed) System.exit(1);
+	}
+	
+	private static byte[] read(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] bytes = new byte[(int) file.length()];
+			int n = 0;
+			while (n < bytes.length) {
+				int r = in.read(bytes, n, bytes.length - n);
+				if (r < 0) throw new IOException("Unexpected end of " + file);
+				n += r;
+			}
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static void write(File file, byte[] bytes) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+	
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File c : children) delete(c);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,29 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.racer.track.Track;
+import com.racer.track.TrackGenerator;
+import com.racer.track.TrackLoader;
+
+/**
+ * Writes a track made by the TrackGenerator to the tracks folder, where the
+ * game lists it like any other track and the benchmarks can be given it.
+ * <p>
+ * Usage: GenerateTrack [seed] [nodes] [min width] [max width] [turns]
+ */
+public class GenerateTrack {
+	public static void main(String[] args) throws IOException {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+		int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int minWidth = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		int maxWidth = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+		float turns = args.length > 4 ? Float.parseFloat(args[4]) : 0.5f;
+		
+		Track track = new TrackGenerator(nodes, minWidth, maxWidth, turns).generate(seed);
+		File file = new File("tracks", "Generated " + seed + "-" + nodes + ".track");
+		TrackLoader.writeTrack(track, file);
+		System.out.println("Wrote " + file + " with " + track.nodes.size() + " nodes");
+	}
+}
@@ -0,0 +1,123 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import com.racer.sim.AIcontroller;
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.Driver;
+import com.racer.sim.Ghost;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.InputRecorder;
+import com.racer.sim.InputRecording;
+import com.racer.sim.SimCar;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Checks that a ghost drives a recorded lap exactly like the car that drove it.
+ * A single AI car races alone, so that it never touches another car, and every
+ * lap it drives is recorded together with where the car was when it ended. The
+ * laps are then replayed by a ghost on a car of its own, which has to end up at
+ * exactly the same position, velocity and angle. It also prints how much memory
+ * a lap takes and how long a ghost takes to replay it.
+ * <p>
+ * The same is then done with a full race, where the InputRecorder has to drop
+ * the laps where a car was pushed by another car, so that every lap that is
+ * handed on replays exactly.
+ * <p>
+ * Usage: GhostCheck [track files...]
+ */
+public class GhostCheck {
+	private static final int MAX_TICKS = 30000;
+	private static final int[] CARS = { 1, 8 };
+	
+	public static void main(String[] args) {
+		String[] files = args;
+		if (files.length == 0) {
+			files = new String[] { "tracks/Test Track.track", "tracks/HighwayToHell.track" };
+		}
+		
+		boolean failed = false;
+		for (String file : files) {
+			Track track = TrackLoader.loadTrack(new File(file));
+			for (int cars : CARS) {
+				failed |= !check(new File(file).getName(), track, cars);
+			}
+		}
+		System.exit(failed ? 1 : 0);
+	}
+	
+	/**
+	 * Races a number of cars and replays the laps that are recorded.
+	 * @return True if every lap was replayed exactly.
+	 */
+	private static boolean check(String name, Track track, int cars) {
+		AIcontroller.setSeed(0);
+		final HeadlessRace race = new HeadlessRace(track, cars);
+		
+		// Record every lap and the state the car had at the end of it.
+		final ArrayList<InputRecording> laps = new ArrayList<InputRecording>();
+		final ArrayList<float[]> ends = new ArrayList<float[]>();
+		int completed = 0;
+		InputRecorder recorder = new InputRecorder() {
+			@Override
+			protected void lapRecorded(Driver driver, InputRecording lap) {
+				SimCar c = driver.getCar();
+				laps.add(lap.copy());
+				ends.add(new float[] { c.getPosition2().x, c.getPosition2().y,
+						c.getVelocity().x, c.getVelocity().y, c.getAngle(), c.getIndex() });
+			}
+		};
+		recorder.setUp(race.getDrivers());
+		race.getSimulation().setRecorder(recorder);
+		for (int i=0; i < MAX_TICKS && race.getRace().getCarsInGoal().size() < cars; i++) {
+			race.step(1);
+			for (int c=0; c < cars; c++) {
+				if (race.getCars().get(c).completedLap()) completed++;
+			}
+		}
+		
+		// Replay the laps with a ghost.
+		boolean failed = false;
+		SimCar car = new SimCar(new CarStateBuffer(1));
+		car.setTrack(race.getTrack());
+		Ghost ghost = new Ghost(car);
+		for (int l=0; l < laps.size(); l++) {
+			InputRecording lap = laps.get(l);
+			ghost.setLap(lap);
+			ghost.start();
+			long start = System.nanoTime();
+			for (int i=0; i < lap.length(); i++) {
+				ghost.tick();
+			}
+			long time = System.nanoTime() - start;
+			
+			float[] end = ends.get(l);
+			boolean exact = same(car.getPosition2().x, end[0]) && same(car.getPosition2().y, end[1])
+					&& same(car.getVelocity().x, end[2]) && same(car.getVelocity().y, end[3])
+					&& same(car.getAngle(), end[4]);
+			failed |= !exact;
+			if (cars > 1 && exact) continue;
+			String which = (cars == 1) ? "lap " + (l+2) : cars + " cars, car " + (int) end[5];
+			System.out.println(name + ", " + which + ": " + lap.length()
+					+ " ticks, " + lap.length() + " bytes, replayed in " + (time / 1000) + " us, "
+					+ (exact ? "exact" : "DIFFERENT"));
+		}
+		if (cars > 1) {
+			// The first lap of every car, from the grid, is never recorded.
+			System.out.println(name + ", " + cars + " cars: " + laps.size() + " laps handed on and replayed "
+					+ (failed ? "with differences" : "exactly") + ", "
+					+ (completed - laps.size() - cars) + " laps dropped");
+		}
+		if (laps.isEmpty()) {
+			System.out.println(name + ", " + cars + " car(s): no laps were recorded");
+			failed = true;
+		}
+		return !failed;
+	}
+	
+	private static boolean same(float a, float b) {
+		return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+	}
+}
@@ -0,0 +1,168 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.badlogic.gdx.math.Vector2;
+import com.racer.item.ItemBoxGrid;
+import com.racer.item.ItemBoxGroup;
+import com.racer.item.ItemManager;
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.SimCar;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Measures what it costs to test a car against the item boxes with the
+ * ItemBoxGrid, for a track with the rows of its track file and for the same
+ * track with a row on every segment. For comparison it also measures testing
+ * every group, first against a circle around the group and then against its
+ * boxes, which is how the boxes were tested before the grid. Cars are placed
+ * at random on the road.
+ * <p>
+ * Usage: ItemBoxBenchmark [track files...]
+ */
+public class ItemBoxBenchmark {
+	private static final int POSITIONS = 200000;
+	private static final int ROUNDS = 5;
+	// The grid is timed in chunks, and the boxes respawn between them.
+	private static final int CHUNK = 1000;
+	private static final int RESPAWN_TICKS = 161;
+	private static final float REACH2 = SimCar.RADIUS_SQRD + ItemBoxGroup.BOX_SIZE * ItemBoxGroup.BOX_SIZE * 0.2f;
+	
+	public static void main(String[] args) {
+		ArrayList<File> files = new ArrayList<File>();
+		if (args.length == 0) {
+			for (File f : new File("tracks").listFiles()) {
+				if (f.getName().endsWith(".track")) files.add(f);
+			}
+		} else {
+			for (String s : args) files.add(new File(s));
+		}
+		
+		for (File f : files) {
+			Track track = TrackLoader.loadTrack(f);
+			System.out.println(f.getName() + ":");
+			run(new TrackData(track));
+			
+			// The same track with a row of boxes halfway along every segment.
+			for (int s=0; s < track.nodes.size(); s++) {
+				track.addBoxRow(s, 50, 6);
+			}
+			run(new TrackData(track));
+		}
+	}
+	
+	private static void run(TrackData data) {
+		ArrayList<ItemBoxGroup> groups = data.getBoxes();
+		ItemBoxGrid grid = data.getBoxGrid();
+		float[] positions = createPositions(data, new Random(0));
+		
+		// The boxes give items to the car, so they need a manager. The car is
+		// given an item first so that it keeps the same one through the runs.
+		SimCar car = new SimCar(new CarStateBuffer(1));
+		ItemManager items = new ItemManager();
+		items.setUp(groups, 1);
+		items.giveItemTo(car);
+		
+		long linearTime = Long.MAX_VALUE;
+		long gridTime = Long.MAX_VALUE;
+		int gridHits = 0;
+		int near = 0;
+		// Run both a few times and keep the best, which leaves out warm-up.
+		for (int r=0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			near = testLinear(groups, positions);
+			linearTime = Math.min(linearTime, System.nanoTime() - start);
+			
+			gridHits = 0;
+			long time = 0;
+			for (int i=0; i < POSITIONS; i += CHUNK) {
+				// Let every box that was hit come back before the next chunk.
+				for (int t=0; t < RESPAWN_TICKS; t++) {
+					items.update();
+				}
+				start = System.nanoTime();
+				for (int j=i; j < i + CHUNK; j++) {
+					if (grid.hitTest(positions[j*2], positions[j*2+1], car)) gridHits++;
+				}
+				time += System.nanoTime() - start;
+			}
+			gridTime = Math.min(gridTime, time);
+		}
+		
+		int boxes = 0;
+		for (int g=0; g < groups.size(); g++) {
+			boxes += groups.get(g).size();
+		}
+		System.out.println(String.format("  %3d rows, %4d boxes, %5d cells: every group %6.1f ns/car, grid %5.1f ns/car"
+				+ " (%d near a box, %d hits)", groups.size(), boxes, grid.cells(),
+				(double) linearTime / POSITIONS, (double) gridTime / POSITIONS, near, gridHits));
+	}
+	
+	/** Creates random positions on the road, two floats each. */
+	private static float[] createPositions(TrackData data, Random rand) {
+		ArrayList<Vector2> segs = data.segments;
+		float[] positions = new float[POSITIONS*2];
+		Vector2 pos = new Vector2();
+		Vector2 next = new Vector2();
+		for (int i=0; i < POSITIONS; i++) {
+			// Somewhere between two of the lines across the road.
+			int k = rand.nextInt(segs.size()/2);
+			int n = (k + 1) % (segs.size()/2);
+			float across = rand.nextFloat();
+			pos.set(segs.get(k*2)).lerp(segs.get(k*2+1), across);
+			next.set(segs.get(n*2)).lerp(segs.get(n*2+1), across);
+			pos.lerp(next, rand.nextFloat());
+			positions[i*2] = pos.x;
+			positions[i*2+1] = pos.y;
+		}
+		return positions;
+	}
+	
+	/**
+	 * Tests every position against every group, only looking at the boxes of
+	 * the groups whose bounding circle it is in.
+	 * @return How many positions were close enough to a box to hit it.
+	 */
+	private static int testLinear(ArrayList<ItemBoxGroup> groups, float[] positions) {
+		int count = groups.size();
+		float[] centerX = new float[count];
+		float[] centerY = new float[count];
+		float[] radius2 = new float[count];
+		for (int g=0; g < count; g++) {
+			ItemBoxGroup group = groups.get(g);
+			Vector2 first = group.getBoxPosition(0);
+			Vector2 last = group.getBoxPosition(group.size()-1);
+			centerX[g] = (first.x + last.x) / 2;
+			centerY[g] = (first.y + last.y) / 2;
+			float r = first.dst(last) / 2 + ItemBoxGroup.BOX_SIZE + SimCar.RADIUS;
+			radius2[g] = r * r;
+		}
+		
+		int near = 0;
+		for (int i=0; i < POSITIONS; i++) {
+			float x = positions[i*2];
+			float y = positions[i*2+1];
+			for (int g=0; g < count; g++) {
+				float dx = x - centerX[g];
+				float dy = y - centerY[g];
+				if (dx*dx + dy*dy > radius2[g]) continue;
+				
+				ItemBoxGroup group = groups.get(g);
+				for (int b=0; b < group.size(); b++) {
+					Vector2 box = group.getBoxPosition(b);
+					dx = x - box.x;
+					dy = y - box.y;
+					if (dx*dx + dy*dy <= REACH2) {
+						near++;
+						break;
+					}
+				}
+			}
+		}
+		return near;
+	}
+}
@@ -0,0 +1,104 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import com.racer.net.LoopbackTransport;
+import com.racer.net.Packet;
+import com.racer.net.RaceClient;
+import com.racer.net.RaceServer;
+import com.racer.net.SnapshotHistory;
+import com.racer.sim.AIcontroller;
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.SimCar;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Load tests a RaceServer with many clients in the same process. Every client
+ * is a bot that steers the car in its latest snapshot with an AIcontroller and
+ * sends those keys to the server, like a player would. It prints how long the
+ * server takes per tick and how many bytes it sends, compared to what it would
+ * send if every snapshot was sent whole.
+ * <p>
+ * Usage: NetLoadTest [track file] [clients] [ticks]
+ */
+public class NetLoadTest {
+	public static void main(String[] args) {
+		File file = new File(args.length > 0 ? args[0] : "tracks/Test Track.track");
+		int numClients = args.length > 1 ? Integer.parseInt(args[1]) : 48;
+		int maxTicks = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		
+		Track t = TrackLoader.loadTrack(file);
+		TrackData track = new TrackData(t);
+		AIcontroller.setSeed(0);
+		RaceServer server = new RaceServer(track, t.laps, numClients);
+		
+		RaceClient[] clients = new RaceClient[numClients];
+		AIcontroller[] bots = new AIcontroller[numClients];
+		for (int i=0; i < numClients; i++) {
+			LoopbackTransport link = LoopbackTransport.create();
+			clients[i] = new RaceClient(link, track);
+			server.connect(link.getPeer());
+		}
+		
+		// Let the clients join before the race starts.
+		for (int i=0; i < numClients; i++) {
+			clients[i].update();
+		}
+		server.update();
+		for (int i=0; i < numClients; i++) {
+			clients[i].update();
+			SimCar car = clients[i].getCar();
+			bots[i] = new AIcontroller(car, track);
+		}
+		server.start();
+		
+		// Used to measure how big a snapshot is when it is sent whole.
+		SnapshotHistory full = new SnapshotHistory(numClients);
+		Packet packet = new Packet();
+		long fullBytes = 0;
+		
+		long serverTime = 0;
+		int ticks = 0;
+		while (ticks < maxTicks && !server.getRace().finished()) {
+			for (int i=0; i < numClients; i++) {
+				RaceClient c = clients[i];
+				SimCar car = c.getCar();
+				car.updateSegment();
+				boolean[] keys = bots[i].useBrain();
+				int bits = 0;
+				if (keys[0]) bits |= CarStateBuffer.UP;
+				if (keys[1]) bits |= CarStateBuffer.DOWN;
+				if (keys[2]) bits |= CarStateBuffer.LEFT;
+				if (keys[3]) bits |= CarStateBuffer.RIGHT;
+				c.setInput(bits);
+				c.update();
+			}
+			
+			long start = System.nanoTime();
+			server.update();
+			serverTime += System.nanoTime() - start;
+			ticks++;
+			
+			ArrayList<? extends SimCar> cars = server.getSimulation().getCars();
+			full.capture(ticks, cars);
+			packet.begin(Packet.SNAPSHOT);
+			packet.writeVarInt(ticks);
+			packet.writeVarInt(0);
+			packet.writeVarInt(ticks);
+			full.writeDelta(packet, ticks, -1);
+			fullBytes += packet.length() * numClients;
+		}
+		
+		long sent = server.getBytesSent();
+		System.out.println(file.getName() + ": " + numClients + " clients, " + ticks + " ticks, "
+				+ server.getRace().getCarsInGoal().size() + " cars in goal");
+		System.out.println("Server: " + (serverTime / ticks / 1000.0) + " us per tick");
+		System.out.println("Sent: " + (sent / ticks / numClients) + " bytes per client per tick, "
+				+ (sent * 100 / fullBytes) + "% of whole snapshots ("
+				+ (fullBytes / ticks / numClients) + " bytes)");
+		System.exit(0);
+	}
+}
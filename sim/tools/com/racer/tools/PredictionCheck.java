@@ -0,0 +1,158 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Vector2;
+import com.racer.net.LoopbackTransport;
+import com.racer.net.RaceClient;
+import com.racer.net.RaceServer;
+import com.racer.sim.AIcontroller;
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.SimCar;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Measures how well the clients of a RaceServer predict their own cars when
+ * the network is slow. A race is run with bot clients over loopback links that
+ * hold back every message, once for every latency in LATENCIES. For each it
+ * prints how often a snapshot didn't match the predicted car, how far off the
+ * prediction was and how long it took to replay the inputs afterwards.
+ * <p>
+ * It also prints how smoothly the other cars move on the clients. Jerk is how
+ * much the distance a car moves in a tick changes from one tick to the next,
+ * so a car that stops and jumps when a snapshot is late has a high jerk.
+ * <p>
+ * Usage: PredictionCheck [track file] [clients] [packet loss in percent]
+ */
+public class PredictionCheck {
+	// One way latencies to test, in ticks. 6 ticks is 100 ms.
+	private static final int[] LATENCIES = { 0, 3, 6, 12, 24 };
+	private static final int MAX_TICKS = 20000;
+	
+	public static void main(String[] args) {
+		File file = new File(args.length > 0 ? args[0] : "tracks/Test Track.track");
+		int numClients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		float loss = args.length > 2 ? Float.parseFloat(args[2]) / 100 : 0;
+		
+		Track t = TrackLoader.loadTrack(file);
+		TrackData track = new TrackData(t);
+		System.out.println(file.getName() + ", " + numClients + " clients, "
+				+ (loss * 100) + "% loss");
+		
+		for (int l=0; l < LATENCIES.length; l++) {
+			run(track, t.laps, numClients, LATENCIES[l], loss);
+		}
+		System.exit(0);
+	}
+	
+	private static void run(TrackData track, int laps, int numClients, int latency, float loss) {
+		AIcontroller.setSeed(0);
+		RaceServer server = new RaceServer(track, laps, numClients);
+		RaceClient[] clients = new RaceClient[numClients];
+		LoopbackTransport[] links = new LoopbackTransport[numClients];
+		AIcontroller[] bots = new AIcontroller[numClients];
+		for (int i=0; i < numClients; i++) {
+			links[i] = LoopbackTransport.create();
+			links[i].setLatency(latency, latency / 3);
+			links[i].setLoss(loss);
+			clients[i] = new RaceClient(links[i], track);
+			server.connect(links[i].getPeer());
+		}
+		
+		// Every client watches how the other cars move on its screen.
+		Vector2[][] lastPos = new Vector2[numClients][numClients];
+		Vector2[][] lastMove = new Vector2[numClients][numClients];
+		for (int i=0; i < numClients; i++) {
+			for (int j=0; j < numClients; j++) {
+				lastPos[i][j] = new Vector2();
+				lastMove[i][j] = new Vector2();
+			}
+		}
+		Vector2 move = new Vector2();
+		double jerkSum = 0;
+		float maxJerk = 0;
+		long jerkSamples = 0;
+		
+		long clientUpdates = 0;
+		int ticks = 0;
+		while (ticks < MAX_TICKS && !(server.getRace() != null && server.getRace().finished())) {
+			for (int i=0; i < numClients; i++) {
+				RaceClient c = clients[i];
+				SimCar car = c.getCar();
+				if (car != null && bots[i] == null) {
+					bots[i] = new AIcontroller(car, track);
+				}
+				if (bots[i] != null && c.getSnapshotTick() >= 0) {
+					boolean[] keys = bots[i].useBrain();
+					int bits = 0;
+					if (keys[0]) bits |= CarStateBuffer.UP;
+					if (keys[1]) bits |= CarStateBuffer.DOWN;
+					if (keys[2]) bits |= CarStateBuffer.LEFT;
+					if (keys[3]) bits |= CarStateBuffer.RIGHT;
+					c.setInput(bits);
+				}
+				c.update();
+				clientUpdates++;
+				
+				if (c.getSnapshotTick() < 0) continue;
+				ArrayList<SimCar> cars = c.getCars();
+				for (int j=0; j < numClients; j++) {
+					if (j == c.getSeat()) continue;
+					Vector2 pos = cars.get(j).getPosition2();
+					move.set(pos).sub(lastPos[i][j]);
+					float jerk = move.dst(lastMove[i][j]);
+					// The start of the race and the first snapshot aren't counted.
+					if (ticks > 300) {
+						jerkSum += jerk;
+						jerkSamples++;
+						if (jerk > maxJerk) maxJerk = jerk;
+					}
+					lastMove[i][j].set(move);
+					lastPos[i][j].set(pos);
+				}
+			}
+			
+			// Wait for every client to get a seat before the race starts.
+			if (ticks == 2 * latency + 10) server.start();
+			server.update();
+			for (int i=0; i < numClients; i++) {
+				links[i].tick();
+			}
+			ticks++;
+		}
+		
+		int checked = 0;
+		int corrections = 0;
+		float distance = 0;
+		long replayed = 0;
+		long nanos = 0;
+		long maxNanos = 0;
+		for (int i=0; i < numClients; i++) {
+			RaceClient c = clients[i];
+			checked += c.getCheckedSnapshots();
+			corrections += c.getCorrections();
+			distance += c.getCorrectionDistance();
+			replayed += c.getReplayedTicks();
+			nanos += c.getReplayNanos();
+			maxNanos = Math.max(maxNanos, c.getMaxReplayNanos());
+		}
+		int inGoal = server.getRace().getCarsInGoal().size();
+		System.out.println("Latency " + latency + "+" + (latency / 3) + " ticks: "
+				+ ticks + " ticks, " + inGoal + " cars in goal");
+		System.out.println("  Corrections: " + corrections + " of " + checked + " snapshots ("
+				+ percent(corrections, checked) + "), "
+				+ (corrections == 0 ? 0 : distance / corrections) + " units off on average");
+		System.out.println("  Replay: " + (corrections == 0 ? 0 : replayed / corrections)
+				+ " ticks per correction, " + (nanos / clientUpdates / 1000.0) + " us per client tick, "
+				+ (maxNanos / 1000.0) + " us at most");
+		System.out.println("  Other cars: " + (jerkSamples == 0 ? 0 : jerkSum / jerkSamples)
+				+ " mean jerk, " + maxJerk + " max jerk");
+	}
+	
+	private static String percent(int part, int whole) {
+		return (whole == 0) ? "0%" : (Math.round(part * 1000.0 / whole) / 10.0) + "%";
+	}
+}
@@ -0,0 +1,75 @@
+package com.racer.tools;
+
+import java.io.File;
+
+import com.racer.sim.AIcontroller;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.RewindBuffer;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Checks that a race that is rewound with a RewindBuffer plays out exactly like
+ * it did the first time. A whole race is run while the state hash of every tick
+ * is kept. Every CHECK_EVERY ticks it is rewound ten seconds and simulated up to
+ * the same tick again, where every tick has to give the same hash as before.
+ * It also prints how long it takes to take a snapshot.
+ * <p>
+ * Usage: RewindCheck [track files...]
+ */
+public class RewindCheck {
+	private static final int CARS = 8;
+	private static final int MAX_TICKS = 30000;
+	private static final int INTERVAL = 6;
+	private static final int REWIND_TICKS = 10 * 60;
+	private static final int CHECK_EVERY = 500;
+	
+	public static void main(String[] args) {
+		String[] files = args;
+		if (files.length == 0) {
+			files = new String[] { "tracks/Test Track.track", "tracks/HighwayToHell.track" };
+		}
+		
+		boolean failed = false;
+		for (String file : files) {
+			Track track = TrackLoader.loadTrack(new File(file));
+			AIcontroller.setSeed(0);
+			HeadlessRace race = new HeadlessRace(track, CARS);
+			RewindBuffer rewind = new RewindBuffer(race.getSimulation(), 10, INTERVAL);
+			
+			int[] hashes = new int[MAX_TICKS + 1];
+			int checks = 0;
+			int mismatches = 0;
+			int tick = 0;
+			while (tick < MAX_TICKS && race.getRace().getCarsInGoal().size() < CARS) {
+				race.step(1);
+				rewind.update();
+				tick++;
+				hashes[tick] = race.stateHash();
+				
+				if (tick % CHECK_EVERY != 0) continue;
+				int back = rewind.rewind(REWIND_TICKS);
+				for (int t=tick - back + 1; t <= tick; t++) {
+					race.step(1);
+					rewind.update();
+					if (race.stateHash() != hashes[t]) mismatches++;
+				}
+				checks++;
+			}
+			
+			// Measure how long a snapshot takes, once the JIT has warmed up.
+			int saves = 10000;
+			long start = System.nanoTime();
+			for (int i=0; i < saves; i++) {
+				rewind.save();
+			}
+			long time = System.nanoTime() - start;
+			
+			failed |= mismatches > 0 || checks == 0;
+			System.out.println(new File(file).getName() + ": " + checks + " rewinds, "
+					+ mismatches + " ticks differed, " + race.getSimulation().stateSize() + " bytes per snapshot, "
+					+ (rewind.memorySize() / 1024) + " KB buffer, " + (time / saves / 1000.0) + " us per snapshot");
+		}
+		System.exit(failed ? 1 : 0);
+	}
+}
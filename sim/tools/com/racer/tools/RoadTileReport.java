@@ -0,0 +1,63 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import com.racer.sim.RoadTiles;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Prints how many tiles the road of every track covers at a few tile sizes,
+ * and how much memory the tiles take as RGBA8888 compared to drawing the road
+ * on one pixmap of the whole ground. It also prints how long it takes to find
+ * the tiles, which is done every time a tiled road is prepared.
+ * <p>
+ * Usage: RoadTileReport [track files...]
+ */
+public class RoadTileReport {
+	private static final int[] TILE_SIZES = { 128, 256, 512 };
+	private static final int ROUNDS = 10;
+	
+	public static void main(String[] args) {
+		ArrayList<File> files = new ArrayList<File>();
+		if (args.length == 0) {
+			for (File f : new File("tracks").listFiles()) {
+				if (f.getName().endsWith(".track")) files.add(f);
+			}
+		} else {
+			for (String s : args) files.add(new File(s));
+		}
+		
+		long whole = 4L * TrackData.PIXMAP_SIZE * TrackData.PIXMAP_SIZE;
+		System.out.println(String.format("One pixmap of the whole ground: %.1f MB", whole / 1048576.0));
+		for (File f : files) {
+			Track track = TrackLoader.loadTrack(f);
+			TrackData data = new TrackData(track);
+			System.out.println(String.format("%s: %d segments, %d road triangles", f.getName(),
+					track.nodes.size(), data.roadTriangles()));
+			
+			for (int size : TILE_SIZES) {
+				RoadTiles tiles = null;
+				long time = Long.MAX_VALUE;
+				// Keep the fastest of a few rounds, which leaves out warm-up.
+				for (int r=0; r < ROUNDS; r++) {
+					long start = System.nanoTime();
+					tiles = new RoadTiles(data, size);
+					time = Math.min(time, System.nanoTime() - start);
+				}
+				
+				int pairs = 0;
+				for (int t=0; t < tiles.size(); t++) {
+					pairs += tiles.triangles(t);
+				}
+				long bytes = 4L * size * size * tiles.size();
+				System.out.println(String.format("  %3d px tiles: %4d of %5d tiles around the road, %5.1f MB (%4.1f%%), "
+						+ "%.1f triangles per tile, found in %.2f ms", size, tiles.size(),
+						tiles.getColumns() * tiles.getRows(), bytes / 1048576.0,
+						100.0 * bytes / whole, (float) pairs / tiles.size(), time / 1e6));
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.racer.tools;
+
+import java.io.File;
+
+import com.racer.net.LoopbackTransport;
+import com.racer.net.RaceClient;
+import com.racer.net.RaceServer;
+import com.racer.sim.AIcontroller;
+import com.racer.sim.CarStateBuffer;
+import com.racer.sim.SimCar;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Checks that a RaceServer ends its race when some of the seats have no
+ * client. A race is run with no clients, with one bot client that stays to
+ * the end and with two bot clients where one leaves halfway. The race has to
+ * finish, and not before the clients that stayed are in goal.
+ * <p>
+ * Usage: ServerFinishCheck [track files...]
+ */
+public class ServerFinishCheck {
+	private static final int SEATS = 4;
+	private static final int TICKS = 60000;
+	private static final int LEAVE_TICK = 1500;
+	
+	public static void main(String[] args) {
+		String[] files = args;
+		if (files.length == 0) {
+			files = new String[] { "tracks/Test Track.track", "tracks/HighwayToHell.track" };
+		}
+		
+		boolean failed = false;
+		for (String name : files) {
+			File file = new File(name);
+			Track t = TrackLoader.loadTrack(file);
+			TrackData track = new TrackData(t);
+			failed |= !check(file.getName() + ", no clients", track, t.laps, 0, false);
+			failed |= !check(file.getName() + ", 1 client", track, t.laps, 1, false);
+			failed |= !check(file.getName() + ", 1 of 2 clients leaves", track, t.laps, 2, true);
+		}
+		System.exit(failed ? 1 : 0);
+	}
+	
+	/**
+	 * Runs one race and prints how it went.
+	 * @param numClients How many bot clients take a seat.
+	 * @param leave If the first client should stop racing at LEAVE_TICK.
+	 * @return If the race finished after every client that stayed was in goal.
+	 */
+	private static boolean check(String name, TrackData track, int laps, int numClients, boolean leave) {
+		AIcontroller.setSeed(0);
+		RaceServer server = new RaceServer(track, laps, SEATS);
+		
+		RaceClient[] clients = new RaceClient[numClients];
+		AIcontroller[] bots = new AIcontroller[numClients];
+		for (int i=0; i < numClients; i++) {
+			LoopbackTransport link = LoopbackTransport.create();
+			clients[i] = new RaceClient(link, track);
+			server.connect(link.getPeer());
+		}
+		for (int i=0; i < numClients; i++) {
+			clients[i].update();
+		}
+		server.update();
+		for (int i=0; i < numClients; i++) {
+			clients[i].update();
+			bots[i] = new AIcontroller(clients[i].getCar(), track);
+		}
+		server.start();
+		
+		int ticks = 0;
+		while (ticks < TICKS && !server.getRace().finished()) {
+			for (int i=0; i < numClients; i++) {
+				if (leave && i == 0 && ticks >= LEAVE_TICK) continue;
+				RaceClient c = clients[i];
+				SimCar car = c.getCar();
+				car.updateSegment();
+				boolean[] keys = bots[i].useBrain();
+				int bits = 0;
+				if (keys[0]) bits |= CarStateBuffer.UP;
+				if (keys[1]) bits |= CarStateBuffer.DOWN;
+				if (keys[2]) bits |= CarStateBuffer.LEFT;
+				if (keys[3]) bits |= CarStateBuffer.RIGHT;
+				c.setInput(bits);
+				c.update();
+			}
+			server.update();
+			ticks++;
+		}
+		
+		boolean finished = server.getRace().finished();
+		int waiting = 0;
+		for (int i=(leave ? 1 : 0); i < numClients; i++) {
+			SimCar car = server.getSimulation().getCars().get(clients[i].getSeat());
+			if (!server.getRace().getCarsInGoal().contains(car)) waiting++;
+		}
+		boolean ok = finished && waiting == 0;
+		System.out.println(name + ": " + (finished ? "finished after " + ticks + " ticks" : "not finished after " + ticks + " ticks")
+				+ ", " + server.getRace().getCarsInGoal().size() + " cars in goal"
+				+ (waiting > 0 ? ", " + waiting + " clients not in goal" : "")
+				+ (ok ? "" : " FAILED"));
+		return ok;
+	}
+}
@@ -0,0 +1,87 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.racer.sim.AIcontroller;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackCache;
+import com.racer.track.TrackLoader;
+
+/**
+ * Checks that a track read from a TrackCache races exactly like the track it
+ * was generated from. Every track is generated, written to a temporary cache
+ * and read back, and then the same AI race is run on both. It also prints how
+ * long it takes to generate the track and to read it from the cache.
+ * <p>
+ * Only the data of the simulation is checked, the graphics that the game
+ * writes to the cache need a window.
+ * <p>
+ * Usage: TrackCacheCheck [track files...]
+ */
+public class TrackCacheCheck {
+	private static final int CARS = 8;
+	private static final int TICKS = 20000;
+	private static final int ROUNDS = 10;
+	
+	public static void main(String[] args) throws IOException {
+		String[] files = args;
+		if (files.length == 0) {
+			files = new String[] { "tracks/Test Track.track", "tracks/HighwayToHell.track" };
+		}
+		
+		boolean failed = false;
+		for (String name : files) {
+			File file = new File(name);
+			File cacheFile = File.createTempFile("track", TrackCache.EXTENSION);
+			cacheFile.deleteOnExit();
+			
+			Track track = TrackLoader.loadTrack(file);
+			TrackData generated = new TrackData(track);
+			TrackCache.Writer out = new TrackCache.Writer(file);
+			out.putTrack(track);
+			generated.write(out);
+			out.write(cacheFile);
+			
+			// Time both a few times and keep the fastest, which leaves out warm-up.
+			long generateTime = Long.MAX_VALUE;
+			long readTime = Long.MAX_VALUE;
+			TrackData read = null;
+			Track cachedTrack = null;
+			for (int r=0; r < ROUNDS; r++) {
+				long start = System.nanoTime();
+				new TrackData(TrackLoader.loadTrack(file));
+				generateTime = Math.min(generateTime, System.nanoTime() - start);
+				
+				start = System.nanoTime();
+				TrackCache cache = TrackCache.open(file, cacheFile);
+				if (cache == null) {
+					System.err.println(file.getName() + ": the cache that was just written could not be opened");
+					System.exit(1);
+				}
+				cachedTrack = cache.readTrack();
+				read = new TrackData(cachedTrack, cache);
+				readTime = Math.min(readTime, System.nanoTime() - start);
+			}
+			
+			int expected = race(generated, track.laps);
+			int actual = race(read, cachedTrack.laps);
+			boolean same = expected == actual;
+			System.out.println(String.format("%s: %d KB cache, generated in %.2f ms, read in %.2f ms, %s",
+					file.getName(), cacheFile.length() / 1024, generateTime / 1e6, readTime / 1e6,
+					same ? "races the same" : "races differently"));
+			if (!same) failed = true;
+		}
+		if (failed) System.exit(1);
+	}
+	
+	/** Runs an AI race on a track and returns the state hash at the end. */
+	private static int race(TrackData track, int laps) {
+		AIcontroller.setSeed(0);
+		HeadlessRace race = new HeadlessRace(track, laps, CARS);
+		race.step(TICKS);
+		return race.stateHash();
+	}
+}
@@ -0,0 +1,62 @@
+package com.racer.tools;
+
+import com.racer.sim.AIcontroller;
+import com.racer.sim.HeadlessRace;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackGenerator;
+
+/**
+ * Measures how the cost of a track grows with its size, on tracks made by the
+ * TrackGenerator with the same seed. For every size it times generating the
+ * TrackData, which includes the wall grid, the segment lines and the racing
+ * line, and an AI race on it, which is mostly wall collisions and keeping
+ * track of which segment every car is on. The results are printed as comma
+ * separated values, to be plotted against the size.
+ * <p>
+ * Usage: TrackScaling [seed] [node counts...]
+ */
+public class TrackScaling {
+	private static final int[] SIZES = { 50, 100, 300, 1000, 3000, 5000 };
+	private static final int CARS = 8;
+	private static final int TICKS = 5000;
+	private static final int ROUNDS = 3;
+	
+	public static void main(String[] args) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+		int[] sizes = SIZES;
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i=1; i < args.length; i++) {
+				sizes[i-1] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		System.out.println("nodes,road triangles,wall segments,generate track ms,track data ms,tick us");
+		for (int nodes : sizes) {
+			long generateTime = Long.MAX_VALUE;
+			long dataTime = Long.MAX_VALUE;
+			long raceTime = Long.MAX_VALUE;
+			TrackData data = null;
+			// Keep the fastest of a few rounds, which leaves out warm-up.
+			for (int r=0; r < ROUNDS; r++) {
+				long start = System.nanoTime();
+				Track track = new TrackGenerator(nodes, 20, 50, 0.5f).generate(seed);
+				generateTime = Math.min(generateTime, System.nanoTime() - start);
+				
+				start = System.nanoTime();
+				data = new TrackData(track);
+				dataTime = Math.min(dataTime, System.nanoTime() - start);
+				
+				AIcontroller.setSeed(0);
+				HeadlessRace race = new HeadlessRace(data, track.laps, CARS);
+				start = System.nanoTime();
+				race.step(TICKS);
+				raceTime = Math.min(raceTime, System.nanoTime() - start);
+			}
+			System.out.println(String.format("%d,%d,%d,%.2f,%.2f,%.2f", nodes, data.roadTriangles(),
+					data.getLeft().size() + data.getRight().size(), generateTime / 1e6, dataTime / 1e6,
+					raceTime / 1e3 / TICKS));
+		}
+	}
+}
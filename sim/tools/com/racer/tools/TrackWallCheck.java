@@ -0,0 +1,92 @@
+package com.racer.tools;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.Vector2;
+import com.racer.sim.TrackData;
+import com.racer.track.Track;
+import com.racer.track.TrackGenerator;
+
+/**
+ * Checks that the walls of generated tracks never cross, neither each other
+ * nor themselves. Tracks of several sizes and widths are generated from many
+ * seeds, and every line of the walls of TrackData is tested against all the
+ * others. Sizes that TrackGenerator turns down are skipped.
+ * <p>
+ * Usage: TrackWallCheck [seeds]
+ */
+public class TrackWallCheck {
+	private static final int[] NODES = { 8, 9, 12, 20, 50, 100, 1000 };
+	private static final int[][] WIDTHS = { { 20, 50 }, { 40, 80 } };
+	
+	public static void main(String[] args) {
+		int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		
+		boolean failed = false;
+		for (int w=0; w < WIDTHS.length; w++) {
+			int minWidth = WIDTHS[w][0];
+			int maxWidth = WIDTHS[w][1];
+			for (int n=0; n < NODES.length; n++) {
+				int nodes = NODES[n];
+				TrackGenerator generator;
+				try {
+					generator = new TrackGenerator(nodes, minWidth, maxWidth, 1);
+				} catch (IllegalArgumentException e) {
+					System.out.println(nodes + " nodes, " + minWidth + "-" + maxWidth + " wide: skipped, " + e.getMessage());
+					continue;
+				}
+				// The big tracks take a while to check.
+				int count = (nodes >= 1000) ? Math.max(1, seeds / 5) : seeds;
+				int crossed = 0;
+				for (int seed=0; seed < count; seed++) {
+					Track track = generator.generate(seed);
+					TrackData data = new TrackData(track);
+					if (crosses(data.getLeft(), data.getRight())) {
+						System.out.println("Seed " + seed + ": the walls cross");
+						crossed++;
+					}
+				}
+				System.out.println(nodes + " nodes, " + minWidth + "-" + maxWidth + " wide: "
+						+ crossed + " of " + count + " tracks crossed" + (crossed > 0 ? " FAILED" : ""));
+				failed |= crossed > 0;
+			}
+		}
+		System.exit(failed ? 1 : 0);
+	}
+	
+	/**
+	 * Returns true if any line of the walls crosses or touches another one,
+	 * other than the lines next to it on the same wall. The last point of a
+	 * wall is the same as the first.
+	 */
+	private static boolean crosses(ArrayList<Vector2> left, ArrayList<Vector2> right) {
+		ArrayList<ArrayList<Vector2>> walls = new ArrayList<ArrayList<Vector2>>();
+		walls.add(left);
+		walls.add(right);
+		for (int a=0; a < walls.size(); a++) {
+			ArrayList<Vector2> wall = walls.get(a);
+			int lines = wall.size() - 1;
+			for (int i=0; i < lines; i++) {
+				Vector2 p1 = wall.get(i);
+				Vector2 p2 = wall.get(i+1);
+				for (int b=a; b < walls.size(); b++) {
+					ArrayList<Vector2> other = walls.get(b);
+					int otherLines = other.size() - 1;
+					for (int j=(a == b ? i + 2 : 0); j < otherLines; j++) {
+						// The first and the last line of a wall meet.
+						if (a == b && i == 0 && j == lines - 1) continue;
+						Vector2 p3 = other.get(j);
+						Vector2 p4 = other.get(j+1);
+						if (Math.max(p1.x, p2.x) < Math.min(p3.x, p4.x) || Math.min(p1.x, p2.x) > Math.max(p3.x, p4.x)
+								|| Math.max(p1.y, p2.y) < Math.min(p3.y, p4.y) || Math.min(p1.y, p2.y) > Math.max(p3.y, p4.y)) {
+							continue;
+						}
+						if (Intersector.intersectSegments(p1, p2, p3, p4, null)) return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+}
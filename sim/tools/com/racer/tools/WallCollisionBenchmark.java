@@ -0,0 +1,144 @@
+package com.racer.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+import com.racer.sim.TrackData;
+import com.racer.sim.WallGrid;
+import com.racer.track.Track;
+import com.racer.track.TrackLoader;
+
+/**
+ * Compares testing every wall segment against testing only the segments
+ * found with the WallGrid. Cars are placed at random on the road and move
+ * about as far as a car at full speed does in one tick. Both ways have to
+ * find exactly the same walls for the result to count.
+ * <p>
+ * Usage: WallCollisionBenchmark [track files...]
+ */
+public class WallCollisionBenchmark {
+	private static final int[] CAR_COUNTS = { 8, 64, 512 };
+	private static final int TICKS = 2000;
+	private static final int ROUNDS = 5;
+	private static final float MAX_MOVE = 0.6f;
+	
+	public static void main(String[] args) {
+		ArrayList<File> files = new ArrayList<File>();
+		if (args.length == 0) {
+			for (File f : new File("tracks").listFiles()) {
+				if (f.getName().endsWith(".track")) files.add(f);
+			}
+		} else {
+			for (String s : args) files.add(new File(s));
+		}
+		
+		for (File f : files) {
+			Track track = TrackLoader.loadTrack(f);
+			TrackData data = new TrackData(track);
+			System.out.println(f.getName() + ": " + (data.getLeft().size() + data.getRight().size())
+					+ " wall segments, " + data.getWallGrid().cells() + " cells");
+			for (int cars : CAR_COUNTS) {
+				run(data, cars);
+			}
+		}
+	}
+	
+	private static void run(TrackData data, int cars) {
+		int moves = cars * TICKS;
+		float[] lines = createMoves(data, moves, new Random(cars));
+		int[] linear = new int[moves*2];
+		int[] grid = new int[moves*2];
+		
+		long linearTime = Long.MAX_VALUE;
+		long gridTime = Long.MAX_VALUE;
+		// Run both a few times and keep the best, which leaves out warm-up.
+		for (int r=0; r < ROUNDS; r++) {
+			long start = System.nanoTime();
+			testLinear(data, lines, linear);
+			linearTime = Math.min(linearTime, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			testGrid(data, lines, grid);
+			gridTime = Math.min(gridTime, System.nanoTime() - start);
+		}
+		
+		int hits = 0;
+		for (int i=0; i < linear.length; i++) {
+			if (linear[i] != grid[i]) {
+				throw new IllegalStateException("Move " + i/2 + " hit wall " + grid[i]
+						+ " with the grid but " + linear[i] + " without it");
+			}
+			if (linear[i] != 0) hits++;
+		}
+		System.out.println(String.format("  %3d cars: linear %8.1f us/tick, grid %6.1f us/tick, %5.1fx faster (%d hits)",
+				cars, linearTime / 1000.0 / TICKS, gridTime / 1000.0 / TICKS,
+				(double) linearTime / gridTime, hits));
+	}
+	
+	/**
+	 * Creates random moves on the road. Every move is four floats: from x, from y, to x, to y.
+	 */
+	private static float[] createMoves(TrackData data, int moves, Random rand) {
+		ArrayList<Vector2> segs = data.segments;
+		float[] lines = new float[moves*4];
+		Vector2 from = new Vector2();
+		for (int i=0; i < moves; i++) {
+			// The segments list holds the two ends of every line across the road.
+			int k = rand.nextInt(segs.size()/2) * 2;
+			from.set(segs.get(k)).lerp(segs.get(k+1), rand.nextFloat());
+			double a = rand.nextDouble() * Math.PI * 2;
+			float len = rand.nextFloat() * MAX_MOVE;
+			lines[i*4] = from.x;
+			lines[i*4+1] = from.y;
+			lines[i*4+2] = from.x + (float) Math.cos(a) * len;
+			lines[i*4+3] = from.y + (float) Math.sin(a) * len;
+		}
+		return lines;
+	}
+	
+	/** Finds the first wall hit on each side by testing every wall segment. */
+	private static void testLinear(TrackData data, float[] lines, int[] out) {
+		Vector2 from = new Vector2(), to = new Vector2(), hit = new Vector2();
+		for (int i=0; i < out.length/2; i++) {
+			from.set(lines[i*4], lines[i*4+1]);
+			to.set(lines[i*4+2], lines[i*4+3]);
+			for (int w=0; w < 2; w++) {
+				ArrayList<Vector2> list = (w == 0) ? data.getLeft() : data.getRight();
+				out[i*2 + w] = 0;
+				for (int j=1; j < list.size(); j++) {
+					if (Intersector.intersectSegments(list.get(j-1), list.get(j), from, to, hit)) {
+						out[i*2 + w] = j;
+						break;
+					}
+				}
+			}
+		}
+	}
+	
+	/** Finds the first wall hit on each side by testing the walls the grid finds. */
+	private static void testGrid(TrackData data, float[] lines, int[] out) {
+		Vector2 from = new Vector2(), to = new Vector2(), hit = new Vector2();
+		WallGrid grid = data.getWallGrid();
+		IntArray near = new IntArray();
+		for (int i=0; i < out.length/2; i++) {
+			from.set(lines[i*4], lines[i*4+1]);
+			to.set(lines[i*4+2], lines[i*4+3]);
+			for (int w=0; w < 2; w++) {
+				ArrayList<Vector2> list = (w == 0) ? data.getLeft() : data.getRight();
+				out[i*2 + w] = 0;
+				grid.query(w, from, to, near);
+				for (int k=0; k < near.size; k++) {
+					int j = near.get(k);
+					if (Intersector.intersectSegments(list.get(j-1), list.get(j), from, to, hit)) {
+						out[i*2 + w] = j;
+						break;
+					}
+				}
+			}
+		}
+	}
+}